@@ -41,6 +41,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -79,6 +80,7 @@ protected CatreUniverse 	for_universe;
 protected Map<String,CatreDevice> device_map;
 protected String		bridge_id;
 protected boolean               is_registered;
+private Executor                update_mailbox;
 
 
 
@@ -96,6 +98,7 @@ protected CatbridgeBase()
    known_instances = new HashMap<>();
    bridge_id = null;
    is_registered = false;
+   update_mailbox = null;
 }
 
 
@@ -107,10 +110,12 @@ protected CatbridgeBase(CatbridgeBase base,CatreUniverse cu)
    known_instances = null;
    bridge_id = CatreUtil.randomString(24);
    is_registered = false;
+   // program updates talk to the bridge server; keep them off the update path
+   update_mailbox = cu.getCatre().createMailbox();
    
    if (cu.getProgram() != null) {
       CatreLog.logD("CATBRIDGE","Add program listener for " + getName() + " " + bridge_id);
-      cu.getProgram().addProgramListener(this);
+      cu.getProgram().addProgramListener(this,update_mailbox);
     }
    else {
       CatreLog.logD("CATBRIDGE","Add universe listener for " + getName() + " " + bridge_id);
@@ -271,7 +276,7 @@ protected synchronized JSONObject sendCedesMessage(String cmd,Object... data)
          " " + for_universe.getProgram());
    
    if (for_universe != null && for_universe.getProgram() != null) {
-      for_universe.getProgram().addProgramListener(this);
+      for_universe.getProgram().addProgramListener(this,update_mailbox);
       for_universe.removeUniverseListener(this);
       programUpdated();
     }
@@ -363,7 +368,7 @@ protected boolean useCedes()                    { return true; }
 protected void handleEvent(JSONObject evt)
 { 
    EventHandler hdlr = new EventHandler(evt);
-   for_universe.getCatre().submit(hdlr);
+   for_universe.getMailbox().execute(hdlr);
 }
 
 
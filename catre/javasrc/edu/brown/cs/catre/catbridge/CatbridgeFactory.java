@@ -56,6 +56,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -80,6 +81,7 @@ public class CatbridgeFactory implements CatbridgeConstants
 
 private List<CatbridgeBase> template_bridges;
 private Map<String,CatbridgeBase> actual_bridges;
+private Map<String,DormantBridge> dormant_bridges;
 private CatreController catre_control;
 private Set<String> active_keys;
 
@@ -98,7 +100,8 @@ public CatbridgeFactory(CatreController cc)
 {
    catre_control = cc;
    template_bridges = new ArrayList<>();
-   actual_bridges = new HashMap<>();
+   actual_bridges = new ConcurrentHashMap<>();
+   dormant_bridges = new ConcurrentHashMap<>();
    active_keys = new HashSet<>();
 
    template_bridges.add(new CatbridgeGeneric(cc));
@@ -209,6 +212,61 @@ public void setupForUser(CatreUser cu)
 
 
 
+/**
+ *      Remove the bridges for a user whose universe is being unloaded.  Their
+ *      ids are remembered so that a later event for one of them reloads the
+ *      universe.
+ **/
+
+public void removeForUser(CatreUser cu)
+{
+   CatreUniverse univ = cu.getUniverse();
+   if (univ == null) return;
+
+   for (CatbridgeBase cb : new ArrayList<>(actual_bridges.values())) {
+      if (cb.getUniverse() != univ) continue;
+      actual_bridges.remove(cb.getBridgeId(),cb);
+      dormant_bridges.put(cb.getBridgeId(),new DormantBridge(cu.getDataUID(),cb.getName()));
+    }
+}
+
+
+
+/**
+ *      Forget the bridges of a user that is being deleted, including any
+ *      remembered for an unloaded universe.
+ **/
+
+public void discardForUser(CatreUser cu)
+{
+   String uid = cu.getDataUID();
+   dormant_bridges.values().removeIf((db) -> uid.equals(db.getUserId()));
+}
+
+
+
+private CatbridgeBase findBridge(String bid)
+{
+   CatbridgeBase cb = actual_bridges.get(bid);
+   if (cb != null) return cb;
+
+   DormantBridge db = dormant_bridges.get(bid);
+   if (db == null) return null;
+
+   // reload the universe; this creates new bridges for it
+   CatreUser cu = (CatreUser) catre_control.getDatabase().loadObject(db.getUserId());
+   CatreUniverse univ = catre_control.getUniverse(cu);
+   if (univ == null) return null;
+   dormant_bridges.remove(bid);
+   for (CatbridgeBase ncb : actual_bridges.values()) {
+      if (ncb.getUniverse() == univ && ncb.getName().equals(db.getBridgeName())) return ncb;
+    }
+
+   return null;
+}
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Handle talking to server						*/
@@ -374,7 +432,7 @@ private class ClientThread extends Thread {
          CatbridgeBase bridge = null;
          String bid = argobj.optString("bid",null);
          if (bid != null) {
-            bridge = actual_bridges.get(bid);
+            bridge = findBridge(bid);
           }
          CatreOauth oauth = null;
          if (cmd.startsWith("OAUTH_")) {
@@ -397,7 +455,9 @@ private class ClientThread extends Thread {
             case "DEVICES" :
                if (bridge != null) {
                   JSONArray devs = argobj.getJSONArray("devices");
-                  bridge.handleDevicesFound(devs);
+                  // device changes are made on the universe's mailbox
+                  CatbridgeBase fbridge = bridge;
+                  bridge.getUniverse().getMailbox().execute(() -> fbridge.handleDevicesFound(devs));
                 }
                break;
             case "EVENT" :
@@ -459,6 +519,29 @@ private class ClientThread extends Thread {
 
 
 
+/********************************************************************************/
+/*										*/
+/*	Bridge of an unloaded universe						*/
+/*										*/
+/********************************************************************************/
+
+private static final class DormantBridge {
+
+   private String user_id;
+   private String bridge_name;
+
+   DormantBridge(String uid,String name) {
+      user_id = uid;
+      bridge_name = name;
+    }
+
+   String getUserId()				{ return user_id; }
+   String getBridgeName()			{ return bridge_name; }
+
+}	// end of inner class DormantBridge
+
+
+
 }	// end of class CatbridgeFactory
 
 
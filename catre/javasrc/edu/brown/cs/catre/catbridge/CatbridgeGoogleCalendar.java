@@ -51,7 +51,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TimerTask;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -86,6 +85,7 @@ import edu.brown.cs.catre.catre.CatreDevice;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreParameter;
 import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTimer;
 import edu.brown.cs.catre.catre.CatreUniverse;
 
 /**
@@ -619,8 +619,11 @@ private class CalEvent implements CatreCalendarEvent {
 
 private static class GoogleCalendarDevice extends CatdevDevice {
 
+   private CatreTimer check_timer;
+
    GoogleCalendarDevice(CatbridgeGoogleCalendar bridge) {
       super(bridge.getUniverse(),bridge);
+      check_timer = null;
    
       setName("GoogleCalendar_" + getUniverse().getUser().getUserName());
       setLabel("Google Calendar for " + getUniverse().getUser().getUserName());
@@ -636,6 +639,7 @@ private static class GoogleCalendarDevice extends CatdevDevice {
 
    GoogleCalendarDevice(CatbridgeBase bridge,CatreStore cs,Map<String,Object> map) {
       super(bridge.getUniverse(),bridge);
+      check_timer = null;
       fromJson(cs,map);
    
       CatreParameter cp = getUniverse().createEventsParameter("EVENTS");
@@ -643,6 +647,8 @@ private static class GoogleCalendarDevice extends CatdevDevice {
     }
 
    @Override public boolean isCalendarDevice()		{ return true; }
+   
+   @Override public boolean isPolled()                  { return check_timer != null; }
 
    private CatbridgeGoogleCalendar getCalBridge() {
       return (CatbridgeGoogleCalendar) getBridge();
@@ -651,6 +657,11 @@ private static class GoogleCalendarDevice extends CatdevDevice {
    @Override protected void localStartDevice() {
       setTime();
     }
+
+   @Override protected void localStopDevice() {
+      if (check_timer != null) check_timer.cancel();
+      check_timer = null;
+    }
    
    void setTime() {
       long delay = T_HOUR;		// check at least each hour to allow new events
@@ -672,7 +683,8 @@ private static class GoogleCalendarDevice extends CatdevDevice {
       CatreLog.logD("CATBRIDGE","Schedule Calendar check for " + getUniverse().getName() +
             " " + delay + " at " + (new Date(now+delay).toString()));
    
-      getUniverse().getCatre().schedule(new CheckTimer(this),delay);
+      if (check_timer != null) check_timer.cancel();
+      check_timer = getUniverse().getCatre().scheduleTimer(new CheckTimer(this),delay);
    
       CatreParameter cp = findParameter("EVENTS");
       Object val = getParameterValue(cp);
@@ -698,7 +710,7 @@ private static class GoogleCalendarDevice extends CatdevDevice {
 /*										*/
 /********************************************************************************/
 
-private static class CheckTimer extends TimerTask {
+private static class CheckTimer implements Runnable {
 
    private GoogleCalendarDevice for_device;
 
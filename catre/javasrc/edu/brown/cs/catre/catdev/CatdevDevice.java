@@ -44,6 +44,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONObject;
 
@@ -52,6 +53,7 @@ import edu.brown.cs.catre.catre.CatreBridge;
 import edu.brown.cs.catre.catre.CatreDescribableBase;
 import edu.brown.cs.catre.catre.CatreDevice;
 import edu.brown.cs.catre.catre.CatreDeviceListener;
+import edu.brown.cs.catre.catre.CatreEventBus;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreParameter;
 import edu.brown.cs.catre.catre.CatreReferenceListener;
@@ -59,7 +61,6 @@ import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreTransition;
 import edu.brown.cs.catre.catre.CatreUniverse;
 import edu.brown.cs.catre.catre.CatreUtil;
-import edu.brown.cs.ivy.swing.SwingEventListenerList;
 
 
 
@@ -77,9 +78,12 @@ public abstract class CatdevDevice extends CatreDescribableBase implements Catre
 
 protected CatreUniverse for_universe;
 private Boolean 	is_enabled;
-private SwingEventListenerList<CatreDeviceListener> device_handlers;
+private CatreEventBus<CatreDeviceListener> device_handlers;
 private List<CatreParameter> parameter_set;
 private List<CatreTransition> transition_set;
+private Map<String,CatreParameter> parameter_names;
+private Map<String,CatreParameter> parameter_labels;
+private Map<String,CatreTransition> transition_names;
 private CatreBridge	for_bridge;
 private String		device_uid;
 
@@ -113,12 +117,15 @@ protected CatdevDevice(CatreUniverse uu,CatreBridge bridge)
 private void initialize(CatreUniverse uu)
 {
    for_universe = uu;
-   device_handlers = new SwingEventListenerList<>(CatreDeviceListener.class);
+   device_handlers = new CatreEventBus<>(CatreDeviceListener.class);
 
    device_uid = CatreUtil.randomString(24);
    is_enabled = true;
    parameter_set = new ArrayList<>();
    transition_set = new ArrayList<>();
+   parameter_names = new ConcurrentHashMap<>();
+   parameter_labels = new ConcurrentHashMap<>();
+   transition_names = new ConcurrentHashMap<>();
    for_bridge = null;
 }
 
@@ -184,6 +191,7 @@ private void initialize(CatreUniverse uu)
     }
    // want to use original parameters here
    parameter_set = nset;
+   indexParameters();
    
    List<CatreTransition> ntrn = new ArrayList<>(cd.getTransitions());
    for (ListIterator<CatreTransition> it = ntrn.listIterator(); it.hasNext(); ) {
@@ -199,6 +207,7 @@ private void initialize(CatreUniverse uu)
       chng = true;
     }
    transition_set = ntrn;
+   indexTransitions();
    
    if (cd.isEnabled() != isEnabled()) {
       chng = true;
@@ -254,9 +263,17 @@ protected void setDeviceId(String did)		{ device_uid = did; }
 {
    if (id == null) return null;
 
-   for (CatreParameter up : parameter_set) {
-      if (up.getName().equals(id)) return up;
-      if (up.getLabel().equals(id)) return up;
+   CatreParameter up = parameter_names.get(id);
+   if (up != null) return up;
+   up = parameter_labels.get(id);
+   if (up != null && id.equals(up.getLabel())) return up;
+   
+   // labels can be changed by parameter updates; rebuild if stale
+   for (CatreParameter cp : parameter_set) {
+      if (id.equals(cp.getLabel())) {
+         indexParameters();
+         return cp;
+       }
     }
 
    return null;
@@ -265,23 +282,49 @@ protected void setDeviceId(String did)		{ device_uid = did; }
 
 @Override public CatreTransition findTransition(String id)
 {
+   if (id == null) return null;
+   
+   return transition_names.get(id);
+}
+
+
+private boolean hasParameter(CatreParameter p)
+{
+   return parameter_names.get(p.getName()) == p;
+}
+
+
+private void indexParameters()
+{
+   Map<String,CatreParameter> names = new ConcurrentHashMap<>();
+   Map<String,CatreParameter> labels = new ConcurrentHashMap<>();
+   for (CatreParameter cp : parameter_set) {
+      names.putIfAbsent(cp.getName(),cp);
+      if (cp.getLabel() != null) labels.putIfAbsent(cp.getLabel(),cp);
+    }
+   parameter_names = names;
+   parameter_labels = labels;
+}
+
+
+private void indexTransitions()
+{
+   Map<String,CatreTransition> names = new ConcurrentHashMap<>();
    for (CatreTransition ct : transition_set) {
-      if (ct.getName().equals(id))
-	 return ct;
+      names.putIfAbsent(ct.getName(),ct);
     }
-   return null;
+   transition_names = names;
 }
 
 
 
 public CatreParameter addParameter(CatreParameter p)
 {
-   for (CatreParameter up : parameter_set) {
-      if (up.getName().equals(p.getName())) {
-         CatreLog.logI("CATDEV","Map parameter by name " + p.getName() +
-               " " + up.hashCode() + " " + p.hashCode());
-         return up;
-       }
+   CatreParameter up = parameter_names.get(p.getName());
+   if (up != null) {
+      CatreLog.logI("CATDEV","Map parameter by name " + p.getName() +
+            " " + up.hashCode() + " " + p.hashCode());
+      return up;
     }
    
    if (p.getName().startsWith("Samsung.")) {
@@ -293,6 +336,10 @@ public CatreParameter addParameter(CatreParameter p)
          p.getName() + " " + p.hashCode());
 
    parameter_set.add(p);
+   parameter_names.put(p.getName(),p);
+   if (p.getLabel() != null) parameter_labels.putIfAbsent(p.getLabel(),p);
+   
+   fireUpdated();
 
    return p;
 }
@@ -310,12 +357,16 @@ public CatreTransition addTransition(CatreTransition t)
       if (ct.getName().equals(t.getName())) {
 	 it.remove();
 	 transition_set.add(idx,t);
+	 transition_names.put(t.getName(),t);
+	 fireUpdated();
 	 return t;
        }
       ++idx;
     }
 
    transition_set.add(t);
+   transition_names.putIfAbsent(t.getName(),t);
+   fireUpdated();
    return t;
 }
 
@@ -391,14 +442,7 @@ protected void fireChanged(CatreParameter p)
    
    for_universe.startUpdate();
    try {
-      for (CatreDeviceListener hdlr : device_handlers) {
-	 try {
-	    hdlr.stateChanged(p);
-	  }
-	 catch (Throwable t) {
-	    CatreLog.logE("CATMODEL","Problem with device handler",t);
-	  }
-       }
+      device_handlers.fire((hdlr) -> hdlr.stateChanged(p));
     }
    finally {
       for_universe.endUpdate();
@@ -409,27 +453,14 @@ protected void fireChanged(CatreParameter p)
 
 protected void fireEnabled()
 {
-   for (CatreDeviceListener hdlr : device_handlers) {
-      try {
-	 hdlr.deviceEnabled(this,is_enabled);
-       }
-      catch (Throwable t) {
-	 CatreLog.logE("CATMODEL","Problem with device handler",t);
-       }
-    }
+   boolean fg = is_enabled;
+   device_handlers.fire((hdlr) -> hdlr.deviceEnabled(this,fg));
 }
 
 
 protected void fireUpdated()
 {
-   for (CatreDeviceListener hdlr : device_handlers) {
-      try {
-	 hdlr.deviceUpdated(this);
-       }
-      catch (Throwable t) {
-	 CatreLog.logE("CATMODEL","Problem with device handler",t);
-       }
-    }
+   device_handlers.fire((hdlr) -> hdlr.deviceUpdated(this));
 }
 
 
@@ -446,6 +477,12 @@ protected void fireUpdated()
    setEnabled(isDeviceValid());
 }
 
+@Override public final void stopDevice()
+{
+   if (is_enabled != null && is_enabled) localStopDevice();
+}
+
+
 protected boolean isDeviceValid()			{ return true; }
 
 protected void localStartDevice()			{ }
@@ -460,7 +497,7 @@ protected void localStopDevice()			{ }
 
    checkCurrentState();
    
-   if (!parameter_set.contains(p)) {
+   if (!hasParameter(p)) {
       p = addParameter(p);
       if (p == null) return null;
     }
@@ -483,7 +520,7 @@ protected void localStopDevice()			{ }
    
    if (!isEnabled()) return;
    
-   if (!parameter_set.contains(p)) {
+   if (!hasParameter(p)) {
       CatreLog.logD("CATDEV","Attempt to set invalid parameter");
       p = addParameter(p);
       if (p == null) return;
@@ -592,6 +629,7 @@ protected void updateCurrentState()		{ }
 
    transition_set = getSavedSubobjectList(cs,map,"TRANSITIONS",
 	 this::createTransition,transition_set);
+   indexTransitions();
 }
 
 
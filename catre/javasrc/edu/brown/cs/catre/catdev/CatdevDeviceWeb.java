@@ -178,6 +178,12 @@ protected abstract void handleContents(String cnts);
 }
 
 
+@Override public synchronized boolean isPolled()
+{
+   return timer_task != null;
+}
+
+
 public synchronized void setPolling(long time)
 {
    if (poll_rate == time && timer_task != null) return;
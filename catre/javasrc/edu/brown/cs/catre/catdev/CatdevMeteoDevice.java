@@ -131,7 +131,8 @@ CatdevMeteoDevice(CatreUniverse cu,CatreStore cs,Map<String,Object> map)
    fromJson(cs,map);
 
    if (cu.getProgram() != null){
-      cu.getProgram().addProgramListener(this);
+      // devices built and then discarded should not stay on the program
+      cu.getProgram().addWeakProgramListener(this);
     }
 
    initialize();
@@ -166,8 +167,6 @@ private void initialize()
    addParameter(pp1);
    // might want to add other weather conditions
    //		humidity, wind speed and direction
-
-   addMeteoDevice(this);
 }
 
 @Override public boolean validateDevice()
@@ -292,6 +291,19 @@ private double convertTemperature(double v,String unit)
 /*										*/
 /********************************************************************************/
 
+@Override public boolean isPolled()			{ return true; }
+
+@Override protected void localStartDevice()
+{
+   addMeteoDevice(this);
+}
+
+@Override protected void localStopDevice()
+{
+   removeMeteoDevice(this);
+}
+
+
 private static synchronized void addMeteoDevice(CatdevMeteoDevice md)
 {
    if (known_locations == null) {
@@ -299,11 +311,19 @@ private static synchronized void addMeteoDevice(CatdevMeteoDevice md)
       timer_task = new Updater();
       md.getCatre().schedule(timer_task,POLL_RATE,POLL_RATE);
     }
+   if (known_locations.contains(md)) return;
    known_locations.add(md);
    updateData(List.of(md));
 }
 
 
+private static synchronized void removeMeteoDevice(CatdevMeteoDevice md)
+{
+   if (known_locations == null) return;
+   known_locations.remove(md);
+}
+
+
 
 private static void updateData(List<CatdevMeteoDevice> devs)
 {
@@ -37,6 +37,7 @@
 package edu.brown.cs.catre.catdev;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 import edu.brown.cs.catre.catre.CatreActionException;
@@ -64,6 +65,8 @@ public class CatdevTransition extends CatreDescribableBase
 
 private CatreParameterSet	default_parameters;
 private CatreDevice		for_device;
+private Map<String,Object>	effect_values;
+private boolean 		always_send;
 
 
 
@@ -80,6 +83,8 @@ CatdevTransition(CatreDevice cd,CatreStore cs,Map<String,Object> map)
    
    for_device = cd;
    default_parameters = cd.getUniverse().createParameterSet();
+   effect_values = null;
+   always_send = false;
 
    fromJson(cs,map);
 }
@@ -139,6 +144,8 @@ public void setDescription(String desc) 	{ super.setDescription(desc); }
 
 @Override public CatreParameter getEntityParameter()	{ return null; }
 
+@Override public boolean isAlwaysSent() 		{ return always_send; }
+
 
 @Override public CatreParameter findParameter(String nm)
 {
@@ -175,6 +182,23 @@ public void setDescription(String desc) 	{ super.setDescription(desc); }
    CatreLog.logD("CATDEV","Start transition " + getName() + " " +
          params + " " + props + " " + default_parameters);
 
+   CatreActionValues avals = computeValues(params,props);
+   
+   try {
+      device.apply(this,avals);
+    }
+   catch (CatreActionException ex) {
+      throw ex;
+    }
+   catch (Throwable t) {
+      throw new CatreActionException("Action aborted",t);
+    }
+}
+
+
+
+private CatreActionValues computeValues(CatreParameterSet params,CatrePropertySet props)
+{
    CatreActionValues avals = getUniverse().createActionValues(default_parameters);
    if (params != null) {
       for (CatreParameter cp : params.getValidParameters()) {
@@ -193,15 +217,41 @@ public void setDescription(String desc) 	{ super.setDescription(desc); }
     }
    CatreLog.logD("CATDEV","Transition final values " + avals);
    
-   try {
-      device.apply(this,avals);
-    }
-   catch (CatreActionException ex) {
-      throw ex;
-    }
-   catch (Throwable t) {
-      throw new CatreActionException("Action aborted",t);
+   return avals;
+}
+
+
+
+/**
+ *      Compute the device parameter values this transition would set.  These
+ *      come only from an explicit EFFECTS map (device parameter to transition
+ *      parameter or constant) in the device definition.  Without one the
+ *      effects are unknown, so toggles and relative or momentary commands
+ *      are never suppressed.
+ **/
+
+@Override public Map<CatreParameter,Object> getEffects(CatreParameterSet params,
+      CatrePropertySet props)
+{
+   if (effect_values == null) return null;
+   
+   CatreActionValues avals = computeValues(params,props);
+   Map<CatreParameter,Object> rslt = new HashMap<>();
+   
+   for (Map.Entry<String,Object> ent : effect_values.entrySet()) {
+      CatreParameter dp = for_device.findParameter(ent.getKey());
+      if (dp == null) return null;
+      Object v = ent.getValue();
+      if (v instanceof String) {
+         CatreParameter tp = findParameter((String) v);
+         if (tp != null) v = avals.get(tp.getName());
+       }
+      rslt.put(dp,v);
     }
+   
+   if (rslt.isEmpty()) return null;
+   
+   return rslt;
 }
 
 
@@ -217,6 +267,8 @@ public void setDescription(String desc) 	{ super.setDescription(desc); }
    Map<String,Object> rslt = super.toJson();
 
    rslt.put("DEFAULTS",default_parameters.toJson());
+   if (effect_values != null) rslt.put("EFFECTS",effect_values);
+   if (always_send) rslt.put("ALWAYSSEND",true);
 
    return rslt;
 }
@@ -229,6 +281,9 @@ public void setDescription(String desc) 	{ super.setDescription(desc); }
    default_parameters = getSavedSubobject(cs,map,"DEFAULTS",
 	 getUniverse()::createSavedParameterSet,default_parameters);
 
+   effect_values = getSavedJson(map,"EFFECTS",effect_values);
+   always_send = getSavedBool(map,"ALWAYSSEND",always_send);
+
    CatreLog.logD("CATDEV","Transition parameters " + default_parameters);
 
 }
@@ -241,6 +296,8 @@ public void setDescription(String desc) 	{ super.setDescription(desc); }
    
    // might want to update the parameters one by one
    default_parameters = ct.default_parameters;
+   effect_values = ct.effect_values;
+   always_send = ct.always_send;
    
    return chng;
 }
@@ -43,6 +43,17 @@ public interface CatmainConstants
 
 int     THREAD_POOL_SIZE = 32;
 
+long    TIMER_TICK = 50;                // timer wheel resolution in ms
+
+int     MAILBOX_BATCH = 32;             // tasks run per turn of a universe mailbox
+
+long    T_MINUTE = 60 * 1000;
+
+long    HIBERNATE_TIME = 60 * T_MINUTE; // default idle time before unloading
+long    HIBERNATE_CHECK = 5 * T_MINUTE; // how often to check for idle universes
+long    WAKE_LEAD = T_MINUTE;           // reload this long before the next timer
+int     STARTUP_BATCH = 100;            // universes prefetched together at startup
+
 
 
 }       // end of interface CatmainConstants
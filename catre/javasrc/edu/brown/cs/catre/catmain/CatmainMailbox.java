@@ -0,0 +1,241 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatmainMailbox.java                                             */
+/*                                                                              */
+/*      Serial executor for the work of a single universe                       */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catmain;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreTimer;
+
+/**
+ *      Mailbox for a universe.  Tasks submitted to the mailbox run one at a
+ *      time in submission order.  The mailbox itself is run on a shared pool
+ *      of worker threads; it runs at most MAILBOX_BATCH tasks before giving
+ *      its worker back so that a busy universe does not starve the others.
+ *      The mailbox also tracks when it was last used and the timers that
+ *      will deliver tasks to it so that an idle universe can be unloaded
+ *      and reloaded in time for its next timer.
+ **/
+
+class CatmainMailbox implements Executor, Runnable, CatmainConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private Executor        worker_pool;
+private Queue<Runnable> pending_tasks;
+private AtomicBoolean   is_scheduled;
+private volatile long   last_active;
+private Set<MailboxTimer> pending_timers;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+CatmainMailbox(Executor pool)
+{
+   worker_pool = pool;
+   pending_tasks = new ConcurrentLinkedQueue<>();
+   is_scheduled = new AtomicBoolean(false);
+   last_active = System.currentTimeMillis();
+   pending_timers = ConcurrentHashMap.newKeySet();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+long getLastActive()                            { return last_active; }
+
+boolean isIdle()
+{
+   return pending_tasks.isEmpty() && !is_scheduled.get();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Execution methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public void execute(Runnable task)
+{
+   last_active = System.currentTimeMillis();
+   pending_tasks.add(task);
+   schedule();
+}
+
+
+private void schedule()
+{
+   if (is_scheduled.compareAndSet(false,true)) {
+      worker_pool.execute(this);
+    }
+}
+
+
+@Override public void run()
+{
+   try {
+      for (int i = 0; i < MAILBOX_BATCH; ++i) {
+         Runnable task = pending_tasks.poll();
+         if (task == null) break;
+         try {
+            task.run();
+          }
+         catch (Throwable t) {
+            CatreLog.logE("CATMAIN","Problem running mailbox task",t);
+          }
+       }
+    }
+   finally {
+      is_scheduled.set(false);
+      // pick up anything added after the last poll
+      if (!pending_tasks.isEmpty()) schedule();
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Timer methods                                                           */
+/*                                                                              */
+/********************************************************************************/
+
+CatreTimer scheduleTimer(CatmainTimerWheel wheel,Runnable task,long delay)
+{
+   MailboxTimer mt = new MailboxTimer(task);
+   pending_timers.add(mt);
+   mt.setBase(wheel.schedule(mt,delay,this));
+
+   return mt;
+}
+
+
+/**
+ *      Return the earliest time of a pending timer, or -1 if there are none
+ **/
+
+long getNextDeadline()
+{
+   long rslt = -1;
+   for (MailboxTimer mt : pending_timers) {
+      long t = mt.getScheduledTime();
+      if (t > 0 && (rslt < 0 || t < rslt)) rslt = t;
+    }
+
+   return rslt;
+}
+
+
+void cancelTimers()
+{
+   for (MailboxTimer mt : new ArrayList<>(pending_timers)) {
+      mt.cancel();
+    }
+}
+
+
+
+private final class MailboxTimer implements CatreTimer, Runnable {
+
+   private Runnable timer_task;
+   private volatile CatreTimer base_timer;
+
+   MailboxTimer(Runnable task) {
+      timer_task = task;
+      base_timer = null;
+    }
+
+   void setBase(CatreTimer t) {
+      base_timer = t;
+    }
+
+   @Override public void run() {
+      pending_timers.remove(this);
+      timer_task.run();
+    }
+
+   @Override public boolean cancel() {
+      pending_timers.remove(this);
+      CatreTimer bt = base_timer;
+      return bt != null && bt.cancel();
+    }
+
+   @Override public boolean isCancelled() {
+      CatreTimer bt = base_timer;
+      return bt != null && bt.isCancelled();
+    }
+
+   @Override public long getScheduledTime() {
+      CatreTimer bt = base_timer;
+      return (bt == null ? 0 : bt.getScheduledTime());
+    }
+
+}       // end of inner class MailboxTimer
+
+
+
+}       // end of class CatmainMailbox
+
+
+
+
+/* end of CatmainMailbox.java */
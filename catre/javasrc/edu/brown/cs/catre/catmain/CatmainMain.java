@@ -39,13 +39,18 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.brown.cs.catre.catbridge.CatbridgeFactory;
 import edu.brown.cs.catre.catmodel.CatmodelFactory;
@@ -55,6 +60,7 @@ import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreServer;
 import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreTable;
+import edu.brown.cs.catre.catre.CatreTimer;
 import edu.brown.cs.catre.catre.CatreUniverse;
 import edu.brown.cs.catre.catre.CatreUser;
 import edu.brown.cs.catre.catserve.CatserveBowerServer;
@@ -87,10 +93,13 @@ public static void main(String [] args)
 /********************************************************************************/
 
 private ScheduledThreadPoolExecutor	thread_pool;
+private ThreadPoolExecutor      mailbox_pool;
+private CatmainTimerWheel       timer_wheel;
 private CatreServer rest_server;
 private CatreStore     data_store;
 private CatmodelFactory model_factory;
 private CatbridgeFactory bridge_factory;
+private CatmainUniverseManager universe_manager;
 private Properties      catre_properties;
 private String          catre_mode;
 
@@ -112,12 +121,16 @@ private CatmainMain(String [] args)
    scanArgs(args);
    
    thread_pool = new TimerThreadPool();
+   int nproc = Runtime.getRuntime().availableProcessors();
+   mailbox_pool = new ThreadPoolExecutor(nproc,nproc,0,TimeUnit.MILLISECONDS,
+         new LinkedBlockingQueue<>(),new TimerThreadFactory("CatreMbox_"));
+   timer_wheel = new CatmainTimerWheel(thread_pool);
+   thread_pool.scheduleAtFixedRate(timer_wheel::tick,TIMER_TICK,TIMER_TICK,
+         TimeUnit.MILLISECONDS);
 
    CatstoreFactory cf = new CatstoreFactory(this);
    data_store = cf.getStore();
 
-   CatreLog.logD("CATMAIN","data_store " + data_store.findAllUsers().size());
-
    model_factory = new CatmodelFactory(this);
    
    CatreLog.logD("CATMAIN","Model factory setup done");
@@ -127,6 +140,7 @@ private CatmainMain(String [] args)
    CatreLog.logD("CATMAIN","Server setup done");
 
    bridge_factory = new CatbridgeFactory(this);
+   universe_manager = new CatmainUniverseManager(this,bridge_factory);
    
    CatreLog.logD("CATMAIN","Bridge Setup done");
 }
@@ -299,6 +313,25 @@ public ScheduledFuture<?> schedule(Runnable task,long delay,long period)
 }
 
 
+@Override
+public CatreTimer scheduleTimer(Runnable task,long delay)
+{
+   return timer_wheel.schedule(task,delay);
+}
+
+
+@Override
+public CatreTimer scheduleTimer(Runnable task,long delay,Executor exec)
+{
+   if (exec instanceof CatmainMailbox) {
+      // let the mailbox track its timers
+      return ((CatmainMailbox) exec).scheduleTimer(timer_wheel,task,delay);
+    }
+
+   return timer_wheel.schedule(task,delay,exec);
+}
+
+
 @Override
 public Future<?> submit(Runnable task)
 {
@@ -318,6 +351,27 @@ public <T> Future<T> submit(Callable<T> task)
 }
 
 
+@Override
+public Executor createMailbox()
+{
+   return new CatmainMailbox(mailbox_pool);
+}
+
+
+@Override
+public CatreUniverse getUniverse(CatreUser cu)
+{
+   return universe_manager.getUniverse(cu);
+}
+
+
+@Override
+public void removeUniverse(CatreUser cu)
+{
+   universe_manager.removeUniverse(cu);
+}
+
+
 
 /********************************************************************************/
 /*										*/
@@ -396,19 +450,6 @@ private static boolean isBaseDirectory(File dir) {
 /********************************************************************************/
 
 private void start() {
-   for (CatreUser cu : data_store.findAllUsers()) {
-      CatreUniverse universe = cu.getUniverse();
-      CatreLog.logD("CATMAIN","START universe " + universe.getName());
-      universe.start();
-      // update program for this universe to handle missing devices
-      // start program for this user/universe
-    }
-   
-   for (CatreUser cu : data_store.findAllUsers()) {
-      CatreLog.logD("CATMAIN","START bridges " + cu.getUserName());
-      bridge_factory.setupForUser(cu);
-    }
-   
    try {
       rest_server.start();
     }
@@ -416,6 +457,14 @@ private void start() {
       // handle failure to start
     }
    
+   // universes (and their bridges) are started in the background or as needed
+   long t0 = System.currentTimeMillis();
+   List<CatreUser> users = data_store.findAllUsers();
+   long t1 = System.currentTimeMillis();
+   universe_manager.addUsers(users);
+   CatreLog.logI("CATMAIN","Startup: " + users.size() + " users in " + (t1-t0) +
+	 "ms; store " + data_store.getStatistics().opt("LOAD"));
+   
    // RERUN PROGRAMS HEREWORK 
 }
 
@@ -430,7 +479,7 @@ private void start() {
 private class TimerThreadPool extends ScheduledThreadPoolExecutor {
 
    TimerThreadPool() {
-      super(THREAD_POOL_SIZE,new TimerThreadFactory());
+      super(THREAD_POOL_SIZE,new TimerThreadFactory("CatreExec_"));
     }
 
 }	// end of inner class TimerThreadPool
@@ -438,14 +487,16 @@ private class TimerThreadPool extends ScheduledThreadPoolExecutor {
 
 private static class TimerThreadFactory implements ThreadFactory {
 
-   private int thread_counter;
+   private String thread_prefix;
+
+   private static AtomicInteger thread_counter = new AtomicInteger();
 
-   TimerThreadFactory() {
-      thread_counter = 0;
+   TimerThreadFactory(String pfx) {
+      thread_prefix = pfx;
     }
 
    @Override public Thread newThread(Runnable r) {
-      return new TimerThread(++thread_counter,r);
+      return new TimerThread(thread_prefix,thread_counter.incrementAndGet(),r);
     }
 
 }	// end of inner class TimerThreadFactory
@@ -455,8 +506,8 @@ private static class TimerThread extends Thread implements CatreLog.LoggerThread
 
    private int thread_count;
 
-   TimerThread(int ct,Runnable r) {
-      super(r,"CatreExec_" + ct);
+   TimerThread(String pfx,int ct,Runnable r) {
+      super(r,pfx + ct);
       thread_count = ct;
     }
 
@@ -0,0 +1,321 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatmainTimerWheel.java                                          */
+/*                                                                              */
+/*      Hashed hierarchical timing wheel for one-shot timers                    */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.catmain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreTimer;
+
+/**
+ *      Timer service for the many one-shot timers created by conditions and
+ *      devices.  Timers are kept in a hashed hierarchical timing wheel
+ *      (as in the Linux kernel) rather than in the executor's delay queue.
+ *      Insertion and cancellation are O(1); a cancelled timer is unlinked
+ *      from its slot immediately.  The wheel is advanced by a single
+ *      periodic tick task and expired timers are handed to the executor.
+ **/
+
+class CatmainTimerWheel implements CatmainConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private WheelTimer [][] wheel_slots;
+private long            current_tick;
+private long            start_time;
+private Executor        task_executor;
+private int             timer_count;
+
+private static final int [] LEVEL_BITS = { 8, 6, 6, 6 };
+private static final int [] LEVEL_SHIFT = { 0, 8, 14, 20 };
+private static final long MAX_TICKS = (1L << 26) - 1;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+CatmainTimerWheel(Executor exec)
+{
+   task_executor = exec;
+   wheel_slots = new WheelTimer[LEVEL_BITS.length][];
+   for (int i = 0; i < LEVEL_BITS.length; ++i) {
+      wheel_slots[i] = new WheelTimer[1 << LEVEL_BITS[i]];
+    }
+   start_time = System.currentTimeMillis();
+   current_tick = 0;
+   timer_count = 0;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+synchronized int getTimerCount()                { return timer_count; }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Scheduling methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+CatreTimer schedule(Runnable task,long delay)
+{
+   return schedule(task,delay,task_executor);
+}
+
+
+CatreTimer schedule(Runnable task,long delay,Executor exec)
+{
+   long now = System.currentTimeMillis();
+   if (delay < 0) delay = 0;
+   WheelTimer wt = new WheelTimer(task,now + delay,exec);
+
+   synchronized (this) {
+      // round up so that the task never runs early
+      long ticks = (now + delay - start_time + TIMER_TICK - 1) / TIMER_TICK;
+      wt.expire_tick = Math.max(ticks,current_tick);
+      insert(wt);
+      ++timer_count;
+    }
+
+   return wt;
+}
+
+
+private synchronized boolean cancel(WheelTimer wt)
+{
+   if (wt.is_done) return false;
+   wt.is_done = true;
+   wt.is_cancelled = true;
+   unlink(wt);
+   --timer_count;
+   return true;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Tick processing                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+void tick()
+{
+   List<WheelTimer> expired = new ArrayList<>();
+
+   synchronized (this) {
+      long target = (System.currentTimeMillis() - start_time) / TIMER_TICK;
+      while (current_tick <= target) {
+         int idx = (int) (current_tick & (wheel_slots[0].length - 1));
+         if (idx == 0) {
+            for (int lvl = 1; lvl < LEVEL_BITS.length; ++lvl) {
+               if (cascade(lvl) != 0) break;
+             }
+          }
+         WheelTimer wt = wheel_slots[0][idx];
+         wheel_slots[0][idx] = null;
+         while (wt != null) {
+            WheelTimer nxt = wt.next_timer;
+            wt.next_timer = null;
+            wt.prev_timer = null;
+            wt.slot_level = -1;
+            if (wt.expire_tick > current_tick) {
+               // clamped timer that is still too far in the future
+               insert(wt);
+             }
+            else {
+               wt.is_done = true;
+               --timer_count;
+               expired.add(wt);
+             }
+            wt = nxt;
+          }
+         ++current_tick;
+       }
+    }
+
+   for (WheelTimer wt : expired) {
+      try {
+         wt.timer_executor.execute(wt.timer_task);
+       }
+      catch (Throwable t) {
+         CatreLog.logE("CATMAIN","Problem running timer task",t);
+       }
+    }
+}
+
+
+private int cascade(int lvl)
+{
+   int idx = (int) ((current_tick >> LEVEL_SHIFT[lvl]) & (wheel_slots[lvl].length - 1));
+   WheelTimer wt = wheel_slots[lvl][idx];
+   wheel_slots[lvl][idx] = null;
+   while (wt != null) {
+      WheelTimer nxt = wt.next_timer;
+      wt.next_timer = null;
+      wt.prev_timer = null;
+      insert(wt);
+      wt = nxt;
+    }
+   return idx;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Slot management                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private void insert(WheelTimer wt)
+{
+   long exp = wt.expire_tick;
+   long delta = exp - current_tick;
+   int lvl = 0;
+
+   if (delta < 0) {
+      exp = current_tick;
+    }
+   else if (delta > MAX_TICKS) {
+      exp = current_tick + MAX_TICKS;
+      lvl = LEVEL_BITS.length - 1;
+    }
+   else {
+      while (lvl < LEVEL_BITS.length - 1 &&
+            delta >= (1L << (LEVEL_SHIFT[lvl] + LEVEL_BITS[lvl]))) {
+         ++lvl;
+       }
+    }
+
+   int idx = (int) ((exp >> LEVEL_SHIFT[lvl]) & (wheel_slots[lvl].length - 1));
+   WheelTimer head = wheel_slots[lvl][idx];
+   wt.slot_level = lvl;
+   wt.slot_index = idx;
+   wt.prev_timer = null;
+   wt.next_timer = head;
+   if (head != null) head.prev_timer = wt;
+   wheel_slots[lvl][idx] = wt;
+}
+
+
+private void unlink(WheelTimer wt)
+{
+   if (wt.slot_level < 0) return;
+
+   if (wt.prev_timer != null) wt.prev_timer.next_timer = wt.next_timer;
+   else wheel_slots[wt.slot_level][wt.slot_index] = wt.next_timer;
+   if (wt.next_timer != null) wt.next_timer.prev_timer = wt.prev_timer;
+
+   wt.prev_timer = null;
+   wt.next_timer = null;
+   wt.slot_level = -1;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Timer entry                                                             */
+/*                                                                              */
+/********************************************************************************/
+
+private final class WheelTimer implements CatreTimer {
+
+   private Runnable timer_task;
+   private Executor timer_executor;
+   private long scheduled_time;
+   private long expire_tick;
+   private int slot_level;
+   private int slot_index;
+   private WheelTimer next_timer;
+   private WheelTimer prev_timer;
+   private boolean is_done;
+   private boolean is_cancelled;
+
+   WheelTimer(Runnable task,long when,Executor exec) {
+      timer_task = task;
+      timer_executor = exec;
+      scheduled_time = when;
+      expire_tick = 0;
+      slot_level = -1;
+      slot_index = 0;
+      next_timer = null;
+      prev_timer = null;
+      is_done = false;
+      is_cancelled = false;
+    }
+
+   @Override public boolean cancel()            { return CatmainTimerWheel.this.cancel(this); }
+
+   @Override public boolean isCancelled() {
+      synchronized (CatmainTimerWheel.this) {
+         return is_cancelled;
+       }
+    }
+
+   @Override public long getScheduledTime()     { return scheduled_time; }
+
+}       // end of inner class WheelTimer
+
+
+
+}       // end of class CatmainTimerWheel
+
+
+
+
+/* end of CatmainTimerWheel.java */
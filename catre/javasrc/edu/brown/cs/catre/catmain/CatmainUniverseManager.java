@@ -0,0 +1,466 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatmainUniverseManager.java                                     */
+/*                                                                              */
+/*      Load universes on demand and unload idle ones                           */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catmain;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import edu.brown.cs.catre.catbridge.CatbridgeFactory;
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTimer;
+import edu.brown.cs.catre.catre.CatreUniverse;
+import edu.brown.cs.catre.catre.CatreUser;
+
+/**
+ *      Keep track of the active universes.  A universe is loaded and started
+ *      when it is first needed (by a REST request, a bridge event or a wake
+ *      up timer).  A universe that has been idle for the hibernate time is
+ *      saved, stopped and dropped from memory.  Before it is dropped the time
+ *      of its next pending timer is saved with the user and a wake up timer
+ *      is set so that time-based rules still run.
+ **/
+
+class CatmainUniverseManager implements CatmainConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private CatmainMain     catre_main;
+private CatbridgeFactory bridge_factory;
+private Map<String,ActiveUniverse> active_universes;
+private Map<String,ActiveUniverse> hibernating_universes;
+private Map<String,CatreTimer> wake_timers;
+private long            hibernate_time;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+CatmainUniverseManager(CatmainMain cm,CatbridgeFactory bf)
+{
+   catre_main = cm;
+   bridge_factory = bf;
+   active_universes = new ConcurrentHashMap<>();
+   hibernating_universes = new ConcurrentHashMap<>();
+   wake_timers = new ConcurrentHashMap<>();
+
+   hibernate_time = HIBERNATE_TIME;
+   String ht = cm.getProperties().getProperty("hibernate_time");
+   if (ht != null && !ht.isEmpty()) {
+      try {
+         hibernate_time = Long.parseLong(ht.trim()) * T_MINUTE;
+       }
+      catch (NumberFormatException e) {
+         CatreLog.logE("CATMAIN","Bad hibernate_time property " + ht);
+       }
+    }
+
+   if (hibernate_time > 0) {
+      cm.schedule(this::checkIdle,HIBERNATE_CHECK,HIBERNATE_CHECK);
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Startup methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Add the users known at startup.  Users with a later wake time just
+ *      get a timer.  The universes that have to start now are fetched in
+ *      the background in batches so the store can load them in bulk
+ *      without holding up the server.
+ **/
+
+void addUsers(List<CatreUser> users)
+{
+   long now = System.currentTimeMillis();
+   List<CatreUser> batch = new ArrayList<>();
+   for (CatreUser cu : users) {
+      if (cu.getWakeTime() > now + WAKE_LEAD || cu.getUniverseId() == null) {
+         addUser(cu);
+         continue;
+       }
+      batch.add(cu);
+      if (batch.size() >= STARTUP_BATCH) {
+         List<CatreUser> todo = batch;
+         catre_main.submit(() -> startUsers(todo));
+         batch = new ArrayList<>();
+       }
+    }
+   if (!batch.isEmpty()) {
+      List<CatreUser> todo = batch;
+      catre_main.submit(() -> startUsers(todo));
+    }
+}
+
+
+private void startUsers(List<CatreUser> users)
+{
+   List<String> ids = new ArrayList<>();
+   for (CatreUser cu : users) {
+      ids.add(cu.getUniverseId());
+    }
+   try {
+      catre_main.getDatabase().loadObjects(ids);
+    }
+   catch (Throwable t) {
+      CatreLog.logE("CATMAIN","Problem prefetching universes",t);
+    }
+
+   for (CatreUser cu : users) {
+      addUser(cu);
+    }
+}
+
+
+/**
+ *      Handle a user at startup.  Universes that were unloaded with a known
+ *      wake time just get a wake up timer; others are loaded in the background.
+ **/
+
+void addUser(CatreUser cu)
+{
+   long wake = cu.getWakeTime();
+   long now = System.currentTimeMillis();
+
+   if (wake == Long.MAX_VALUE) return;
+   if (wake > now + WAKE_LEAD) {
+      scheduleWake(cu,wake);
+      return;
+    }
+
+   catre_main.submit(() -> getUniverse(cu));
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Activation methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+CatreUniverse getUniverse(CatreUser cu)
+{
+   if (cu == null) return null;
+
+   for ( ; ; ) {
+      ActiveUniverse au = active_universes.get(cu.getDataUID());
+      if (au != null) {
+         au.touch();
+         return au.getUniverse();
+       }
+
+      CatreUniverse universe = activate(cu);
+      if (universe != null) return universe;
+
+      // a universe being saved by hibernate can only be reloaded afterwards
+      ActiveUniverse hu = hibernating_universes.get(cu.getDataUID());
+      if (hu == null || !hu.isStopped()) return null;
+      hu.waitForUnload();
+    }
+}
+
+
+private synchronized CatreUniverse activate(CatreUser cu)
+{
+   String uid = cu.getDataUID();
+   ActiveUniverse au = active_universes.get(uid);
+   if (au != null) return au.getUniverse();
+
+   ActiveUniverse hu = hibernating_universes.get(uid);
+   if (hu != null) {
+      if (hu.isStopped()) return null;
+      // hibernation has not started yet, so the universe is still running
+      hibernating_universes.remove(uid,hu);
+      hu.touch();
+      active_universes.put(uid,hu);
+      return hu.getUniverse();
+    }
+
+   CatreUniverse universe = cu.getUniverse();
+   if (universe == null) return null;
+
+   CatreTimer wt = wake_timers.remove(uid);
+   if (wt != null) wt.cancel();
+
+   CatreLog.logD("CATMAIN","START universe " + universe.getName());
+   universe.start();
+   active_universes.put(uid,new ActiveUniverse(cu,universe));
+
+   CatreLog.logD("CATMAIN","START bridges " + cu.getUserName());
+   bridge_factory.setupForUser(cu);
+
+   if (cu.getWakeTime() != 0) {
+      // wake time is only valid while the universe is unloaded
+      cu.setWakeTime(0);
+      catre_main.getDatabase().saveObject(cu);
+    }
+
+   return universe;
+}
+
+
+
+/**
+ *      Shut down the universe of a user that is being removed.  Its wake
+ *      timer is cancelled and its bridges are dropped.  An unloaded
+ *      universe is not loaded for this.
+ **/
+
+synchronized void removeUniverse(CatreUser cu)
+{
+   String uid = cu.getDataUID();
+   CatreTimer wt = wake_timers.remove(uid);
+   if (wt != null) wt.cancel();
+
+   ActiveUniverse au = active_universes.remove(uid);
+   // a queued hibernate must not save the universe after it is deleted
+   ActiveUniverse hu = hibernating_universes.remove(uid);
+   if (au == null && hu != null && !hu.isStopped()) au = hu;
+   if (au != null) {
+      CatreUniverse universe = au.getUniverse();
+      CatreLog.logD("CATMAIN","STOP universe " + universe.getName());
+      CatmainMailbox mb = (CatmainMailbox) universe.getMailbox();
+      mb.cancelTimers();
+      universe.stop();
+      bridge_factory.removeForUser(cu);
+    }
+   bridge_factory.discardForUser(cu);
+   cu.unloadUniverse();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Hibernation methods                                                     */
+/*                                                                              */
+/********************************************************************************/
+
+private void checkIdle()
+{
+   long now = System.currentTimeMillis();
+
+   for (ActiveUniverse au : new ArrayList<>(active_universes.values())) {
+      if (now - au.getLastUsed() < hibernate_time) continue;
+      CatreUniverse cu = au.getUniverse();
+      if (cu.isUpdating()) continue;
+      CatmainMailbox mb = (CatmainMailbox) cu.getMailbox();
+      if (!mb.isIdle()) continue;
+      String uid = au.getUser().getDataUID();
+      // move it under the monitor so activate always finds it in one map
+      synchronized (this) {
+         if (!active_universes.remove(uid,au)) continue;
+         hibernating_universes.put(uid,au);
+       }
+      // run in the mailbox so nothing else for the universe is running
+      mb.execute(() -> hibernate(au));
+    }
+}
+
+
+/**
+ *      Stop an idle universe and unload it.  The universe is stopped under
+ *      the manager monitor, but saved outside it so that activation of other
+ *      universes does not wait on the store.  Activation of this universe
+ *      waits until it is unloaded and then reloads it.
+ **/
+
+private void hibernate(ActiveUniverse au)
+{
+   CatreUser user = au.getUser();
+   String uid = user.getDataUID();
+   CatreUniverse universe = au.getUniverse();
+   CatmainMailbox mb = (CatmainMailbox) universe.getMailbox();
+   CatreStore store = catre_main.getDatabase();
+   long next;
+   long wake;
+
+   synchronized (this) {
+      // skip if it was removed or used again while this was waiting in the mailbox
+      if (hibernating_universes.get(uid) != au) return;
+
+      if (universe.hasPolledDevices()) {
+         // polling is not a mailbox timer, so there is no wake time to use
+         hibernating_universes.remove(uid,au);
+         au.touch();
+         active_universes.putIfAbsent(uid,au);
+         return;
+       }
+
+      next = mb.getNextDeadline();
+      wake = (next < 0 ? Long.MAX_VALUE : next);
+      try {
+         mb.cancelTimers();
+         universe.stop();
+         bridge_factory.removeForUser(user);
+       }
+      catch (Throwable t) {
+         CatreLog.logE("CATMAIN","Problem stopping universe " + universe.getName(),t);
+       }
+      user.setWakeTime(wake);
+      au.setStopped();
+    }
+
+   try {
+      store.saveObject(universe);
+      store.saveObject(user);
+    }
+   catch (Throwable t) {
+      CatreLog.logE("CATMAIN","Problem saving universe " + universe.getName(),t);
+      // leave it loaded; the next use restarts it
+      hibernating_universes.remove(uid,au);
+      au.noteUnloaded();
+      return;
+    }
+
+   synchronized (this) {
+      // skip if it was removed while saving
+      if (hibernating_universes.remove(uid,au)) {
+         user.unloadUniverse();
+         scheduleWake(user,wake);
+         CatreLog.logI("CATMAIN","Unloaded idle universe " + universe.getName() +
+               (next < 0 ? "" : " until " + new Date(next)));
+       }
+    }
+   au.noteUnloaded();
+}
+
+
+private void scheduleWake(CatreUser cu,long when)
+{
+   if (when == Long.MAX_VALUE) return;
+
+   // wake early so the universe can set up its own timer for the deadline
+   long delay = when - WAKE_LEAD - System.currentTimeMillis();
+   CatreTimer t = catre_main.scheduleTimer(() -> wakeUp(cu),Math.max(delay,0));
+   CatreTimer ot = wake_timers.put(cu.getDataUID(),t);
+   if (ot != null) ot.cancel();
+}
+
+
+private void wakeUp(CatreUser cu)
+{
+   wake_timers.remove(cu.getDataUID());
+   CatreLog.logD("CATMAIN","Wake universe for " + cu.getUserName());
+   getUniverse(cu);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Information about an active universe                                    */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class ActiveUniverse {
+
+   private CatreUser for_user;
+   private CatreUniverse for_universe;
+   private volatile long last_used;
+   private volatile boolean is_stopped;
+   private CountDownLatch unload_done;
+
+   ActiveUniverse(CatreUser cu,CatreUniverse u) {
+      for_user = cu;
+      for_universe = u;
+      last_used = System.currentTimeMillis();
+      is_stopped = false;
+      unload_done = new CountDownLatch(1);
+    }
+
+   CatreUser getUser()                          { return for_user; }
+   CatreUniverse getUniverse()                  { return for_universe; }
+   boolean isStopped()                          { return is_stopped; }
+
+   void setStopped() {
+      is_stopped = true;
+    }
+
+   void noteUnloaded() {
+      unload_done.countDown();
+    }
+
+   void waitForUnload() {
+      while (unload_done.getCount() > 0) {
+         try {
+            unload_done.await();
+          }
+         catch (InterruptedException e) { }
+       }
+    }
+
+   void touch() {
+      last_used = System.currentTimeMillis();
+    }
+
+   long getLastUsed() {
+      CatmainMailbox mb = (CatmainMailbox) for_universe.getMailbox();
+      return Math.max(last_used,mb.getLastActive());
+    }
+
+}       // end of inner class ActiveUniverse
+
+
+
+}       // end of class CatmainUniverseManager
+
+
+
+
+/* end of CatmainUniverseManager.java */
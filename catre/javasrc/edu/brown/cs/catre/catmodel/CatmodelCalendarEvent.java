@@ -37,12 +37,19 @@ package edu.brown.cs.catre.catmodel;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.WeekFields;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -70,6 +77,13 @@ private BitSet		day_set;
 private int		repeat_interval;
 private Set<Calendar>	exclude_dates;
 private boolean         all_day;
+private ZoneId          event_zone;
+private LocalDate       from_date;
+private LocalTime       from_time;
+private LocalDate       to_date;
+private LocalTime       to_time;
+private Set<LocalDate>  exclude_days;
+private volatile CatmodelTimeSlots slot_table;
 
 private static DateFormat date_format = DateFormat.getDateInstance(DateFormat.SHORT);
 private static DateFormat time_format = new SimpleDateFormat("h:mm a");
@@ -152,75 +166,24 @@ String getDays()
 @Override public List<Calendar> getSlots(Calendar from,Calendar to)
 {
    List<Calendar> rslt = new ArrayList<Calendar>();
-   if (from.after(to_datetime)) return rslt;
-   if (to.before(from_datetime)) return rslt;
+   long f0 = from.getTimeInMillis();
+   long t0 = to.getTimeInMillis();
+   if (f0 > to_datetime.getTimeInMillis()) return rslt;
+   if (t0 < from_datetime.getTimeInMillis()) return rslt;
    
-   Calendar fday = CatreTimeSlotEvent.startOfDay(from);
-   Calendar tday = CatreTimeSlotEvent.startOfNextDay(to);
-   
-   boolean usetimes = false;
-   if (day_set != null && !day_set.isEmpty()) usetimes = true;
-   else if (repeat_interval > 0) usetimes = true;
-   else if (exclude_dates != null) usetimes = true;
-   
-   for (Calendar day = fday; day.before(tday); day.add(Calendar.DAY_OF_YEAR,1)) {
-      if (!isDayRelevant(day)) continue;
-      if (day.before(from_datetime)) continue;
-      if (!day.before(to_datetime)) continue;
-      // the day is relevant and in range at this point
-      // compute the start and stop time on this day
-      Calendar start = null;
-      Calendar end = null;
-      if (sameDay(from,day)) start = setDateAndTime(day,from);
-      else start = CatreTimeSlotEvent.startOfDay(day);
-      if (sameDay(to,day)) {
-         end = setDateAndTime(day,to);
-         if (end.compareTo(start) <= 0) {
-//          CatreLog.logD("CATMODEL","End before start -- move to next day " +
-//                end + " " + CatreTimeSlotEvent.startOfNextDay(day));
-            end = CatreTimeSlotEvent.startOfNextDay(day);
-          }
-       }
-      else {
-         end = CatreTimeSlotEvent.startOfNextDay(day);
-       }
-      
-      boolean usefromtime = usetimes;
-      if (sameDay(from_datetime,day)) usefromtime = true;
-      Calendar estart = setDateAndTime(day,from_datetime);
-      if (usefromtime) {
-         if (estart.after(start)) {
-//          CatreLog.logD("CATMODEL","New start time " + estart.toInstant() + " " +
-//                start.toInstant());
-            start = estart;
-          }
-       }
-      
-      boolean usetotime = usetimes;
-      if (isNextDay(day,to_datetime)) usetotime = true;
-      if (usetotime) {
-         Calendar endt = setDateAndTime(day,to_datetime);
-         if (endt.before(estart)) {
-            endt.add(Calendar.DAY_OF_YEAR,1);
-//          CatreLog.logD("CATMODEL","New end time " + endt.toInstant() + " " + end.toInstant());
-            end = endt;
-          }
-         else if (endt.before(end) && endt.after(start)) {
-//          CatreLog.logD("CATMODEL","Replace current end time " + endt.toInstant() + " " + 
-//                end.toInstant());
-            end = endt;
-          }
-       }
-      
-      if (end.compareTo(start) <= 0) {
-         CatreLog.logD("CATMODEL","End time " + end.toInstant() + " before " + start.toInstant() + 
-               " " + usetimes + " " + usefromtime + " " + usetotime + " " + sameDay(to,day) + " " +
-               CatreTimeSlotEvent.startOfNextDay(day).toInstant() + " " + 
-               start.toInstant() + " " + end.toInstant());
-         continue;
-       }
-      rslt.add(start);
-      rslt.add(end);
+   CatmodelTimeSlots tbl = getSlotTable(f0,t0);
+   for (int i = tbl.findFirstEnding(f0); i < tbl.size(); ++i) {
+      long start = tbl.getStart(i);
+      if (start > t0) break;
+      long end = Math.min(tbl.getEnd(i),t0);
+      start = Math.max(start,f0);
+      if (end <= start) continue;
+      Calendar c0 = (Calendar) from.clone();
+      c0.setTimeInMillis(start);
+      Calendar c1 = (Calendar) from.clone();
+      c1.setTimeInMillis(end);
+      rslt.add(c0);
+      rslt.add(c1);
     }
    
    return rslt;
@@ -230,148 +193,128 @@ String getDays()
 
 @Override public boolean isActive(long when)
 {
-   CatreLog.logD("CATMODEL","Check time active: " +
-         when + " " + to_datetime.getTimeInMillis() + " " + 
-         from_datetime.getTimeInMillis() + " " +
-         day_set + " " + repeat_interval);
+   if (when > to_datetime.getTimeInMillis()) return false;
+   if (when < from_datetime.getTimeInMillis()) return false;
    
+   boolean fg = getSlotTable(when,when).isActive(when);
    
-   Calendar cal = Calendar.getInstance();
-   cal.setTimeInMillis(when);
-   if (cal.after(to_datetime)) {
-      CatreLog.logD("CATMODEL","After end date");
-      return false;
-    }
-   if (cal.before(from_datetime)) {
-      CatreLog.logD("CATMODEL","Before start date");
-      return false;
-    }
-   Calendar day = CatreTimeSlotEvent.startOfDay(cal);
-   if (!isDayRelevant(day)) {
-      CatreLog.logD("CATMODEL","Day not relevant");
-      return false;
-    }
-   Calendar dstart = day;
-   Calendar dend = CatreTimeSlotEvent.startOfNextDay(day);
+   CatreLog.logD("CATMODEL","Check time active: " + when + " " + fg + " " + this);
+   
+   return fg;
+}
+
+
+
+@Override public long getNextBoundary(long when)
+{
+   if (when >= to_datetime.getTimeInMillis()) return -1;
+   
+   return getSlotTable(when,when).getNextBoundary(when);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Slot expansion								*/
+/*										*/
+/********************************************************************************/
+
+private CatmodelTimeSlots getSlotTable(long from,long to)
+{
+   CatmodelTimeSlots tbl = slot_table;
+   if (tbl != null && tbl.covers(from,to)) return tbl;
+   
+   tbl = expandSlots(from - SLOT_LOOKBACK,Math.max(to,from + SLOT_HORIZON));
+   slot_table = tbl;
+   
+   return tbl;
+}
+
+
+private CatmodelTimeSlots expandSlots(long from,long to)
+{
+   CatmodelTimeSlots.Builder bldr = new CatmodelTimeSlots.Builder(from,to);
    
-   boolean addday = false;
-   Calendar cx0 = setDateAndTime(day,from_datetime);
-   Calendar cx1 = setDateAndTime(day,to_datetime);
-   if (!cx1.after(cx0)) addday = true;
+   long emin = from_datetime.getTimeInMillis();
+   long emax = to_datetime.getTimeInMillis();
+   long lo = Math.max(from,emin);
+   long hi = Math.min(to,emax);
+   if (lo > hi) return bldr.build();
+   
+   // start a day early to pick up slots that run past midnight
+   LocalDate day = Instant.ofEpochMilli(lo).atZone(event_zone).toLocalDate().minusDays(1);
+   LocalDate last = Instant.ofEpochMilli(hi).atZone(event_zone).toLocalDate();
    
    boolean usetimes = false;
    if (day_set != null && !day_set.isEmpty()) usetimes = true;
    if (repeat_interval > 0) usetimes = true;
-   if (exclude_dates != null) usetimes = true;	
-   boolean usefromtime = usetimes;
-   if (sameDay(from_datetime,day)) usefromtime = true;
-   if (usefromtime) {
-      dstart = setDateAndTime(day,from_datetime);
-    }
-   boolean usetotime = usetimes;
-   if (isNextDay(day,to_datetime)) usetotime = true;
-   if (usetotime) {
-      Calendar endt = setDateAndTime(day,to_datetime);
-      if (addday || !endt.after(dstart)) {
-         endt.add(Calendar.DAY_OF_YEAR,1);
-         dend = endt;
-       }
-      else if (endt.before(dend)) dend = endt;
-    }
-   
-   CatreLog.logD("CATMODEL","Check times " + dend.toInstant() + " " +
-         dstart.toInstant() + " " + cal.toInstant() + " " +
-         from_datetime.getTimeInMillis() + " " + when + " " +
-         from_datetime.toInstant() + " " +
-         to_datetime.toInstant() + " " + 
-         usetimes + " " + usefromtime + " " + usetotime + " " + addday);
+   if (exclude_dates != null) usetimes = true;
+   boolean addday = !to_time.isAfter(from_time);
    
-   if (dend.compareTo(dstart) <= 0) {
-      CatreLog.logD("CATMODEL","End time before start time");
-      return false;
-    }
-   if (cal.before(dstart)) {
-      CatreLog.logD("CATMODEL","Current time before start time");
-      return false;
-    }
-   if (cal.after(dend)) {
-      CatreLog.logD("CATMODEL","Current time after end time");
-      return false;
+   for ( ; !day.isAfter(last); day = day.plusDays(1)) {
+      long dstart = toMillis(day,LocalTime.MIDNIGHT);
+      if (!isDayRelevant(day,dstart)) continue;
+      LocalDate next = day.plusDays(1);
+      long dend = toMillis(next,LocalTime.MIDNIGHT);
+      
+      if (usetimes || day.equals(from_date)) {
+         dstart = toMillis(day,from_time);
+       }
+      if (usetimes || next.equals(to_date)) {
+         long endt = toMillis(day,to_time);
+         if (addday || endt <= dstart) dend = toMillis(next,to_time);
+         else if (endt < dend) dend = endt;
+       }
+      
+      bldr.addSlot(Math.max(dstart,emin),Math.min(dend,emax));
     }
    
-   return true;
+   return bldr.build();
 }
 
 
 
-private boolean isDayRelevant(Calendar day)
+private boolean isDayRelevant(LocalDate day,long daystart)
 {
-   // assume that day has time cleared
-   
    if (day_set != null) {
-      int dow = day.get(Calendar.DAY_OF_WEEK);
+      // BitSet is indexed by java.util.Calendar day numbers (SUNDAY = 1)
+      int dow = day.getDayOfWeek().getValue() % 7 + 1;
       if (!day_set.get(dow)) return false;
     }
    
    if (repeat_interval > 0) {
       long d0 = from_datetime.getTimeInMillis();
-      long d1 = day.getTimeInMillis();
-      long delta = (d1-d0 + 12*T_HOUR);
+      long delta = (daystart-d0 + 12*T_HOUR);
       delta /= T_DAY;
       if (day_set != null) delta = (delta / 7) * 7;
       if ((delta % repeat_interval) != 0) return false;
     }
    else if (repeat_interval < 0) {
       if (day_set != null) {
-	 if (day.get(Calendar.WEEK_OF_MONTH) != from_datetime.get(Calendar.WEEK_OF_MONTH))
+         WeekFields wf = WeekFields.of(Locale.getDefault(Locale.Category.FORMAT));
+	 if (day.get(wf.weekOfMonth()) != from_date.get(wf.weekOfMonth()))
 	    return false;
        }
       else {
-	 if (day.get(Calendar.DAY_OF_MONTH) != from_datetime.get(Calendar.DAY_OF_MONTH))
+	 if (day.getDayOfMonth() != from_date.getDayOfMonth())
 	    return false;
        }
     }
    
-   if (exclude_dates != null) {
-      if (exclude_dates.contains(day)) return false;
+   if (exclude_days != null) {
+      if (exclude_days.contains(day)) return false;
     }
    
    return true;
 }
 
 
-
-/********************************************************************************/
-/*										*/
-/*	Utility methods 							*/
-/*										*/
-/********************************************************************************/
-
-private Calendar setDateAndTime(Calendar date,Calendar time)
+private long toMillis(LocalDate day,LocalTime time)
 {
-   Calendar c1 = (Calendar) date.clone();
-   c1.set(Calendar.HOUR_OF_DAY,time.get(Calendar.HOUR_OF_DAY));
-   c1.set(Calendar.MINUTE,time.get(Calendar.MINUTE));
-   c1.set(Calendar.SECOND,time.get(Calendar.SECOND));
-   c1.set(Calendar.MILLISECOND,time.get(Calendar.MILLISECOND));
-   return c1;
+   return ZonedDateTime.of(day,time,event_zone).toInstant().toEpochMilli();
 }
 
-private boolean sameDay(Calendar c0,Calendar c1)
-{
-   return c0.get(Calendar.YEAR) == c1.get(Calendar.YEAR) &&
-      c0.get(Calendar.DAY_OF_YEAR) == c1.get(Calendar.DAY_OF_YEAR);
-}
-
-
-private boolean isNextDay(Calendar c0,Calendar c1)
-{
-   Calendar c0a = CatreTimeSlotEvent.startOfNextDay(c0);
-   Calendar c1a = CatreTimeSlotEvent.startOfDay(c1);
-   return c0a.equals(c1a);
-}
-
-
 
 
 /********************************************************************************/
@@ -458,6 +401,7 @@ private boolean isNextDay(Calendar c0,Calendar c1)
     }
    
    normalizeTimes();
+   setupSlotFields();
 }
 
 
@@ -475,6 +419,33 @@ private void normalizeTimes()
 }
 
 
+/**
+ *      Derive the java.time form of the event definition used to expand
+ *      slots.  This discards any previously expanded slots.
+ **/
+
+private void setupSlotFields()
+{
+   event_zone = from_datetime.getTimeZone().toZoneId();
+   ZonedDateTime fz = Instant.ofEpochMilli(from_datetime.getTimeInMillis()).atZone(event_zone);
+   ZonedDateTime tz = Instant.ofEpochMilli(to_datetime.getTimeInMillis()).atZone(event_zone);
+   from_date = fz.toLocalDate();
+   from_time = fz.toLocalTime();
+   to_date = tz.toLocalDate();
+   to_time = tz.toLocalTime();
+   
+   exclude_days = null;
+   if (exclude_dates != null) {
+      exclude_days = new HashSet<>();
+      for (Calendar c : exclude_dates) {
+         exclude_days.add(Instant.ofEpochMilli(c.getTimeInMillis()).atZone(event_zone).toLocalDate());
+       }
+    }
+   
+   slot_table = null;
+}
+
+
 private BitSet getDaySet(String days)
 {
    if (days == null || days.length() == 0) return null;
@@ -45,6 +45,19 @@ String UNIVERSE_PREFIX = "UNIV_";
 
 
 
+/********************************************************************************/
+/*										*/
+/*	Parameter value slot kinds						*/
+/*										*/
+/********************************************************************************/
+
+byte SLOT_EMPTY = 0;			// no value stored
+byte SLOT_LONG = 1;			// integer, boolean or enum ordinal
+byte SLOT_DOUBLE = 2;			// real value
+byte SLOT_OBJECT = 3;			// anything else
+
+
+
 
 /********************************************************************************/
 /*										*/
@@ -59,6 +72,49 @@ long T_DAY = 24 * T_HOUR;
 
 
 
+/********************************************************************************/
+/*										*/
+/*	Parameter history constants						*/
+/*										*/
+/********************************************************************************/
+
+int HISTORY_INITIAL_SIZE = 32;		// initial changes kept per parameter
+int HISTORY_SIZE = 1024;		// maximum changes kept per parameter
+int HISTORY_MAX_BUCKETS = 500;		// maximum buckets when downsampling
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Property set constants							*/
+/*										*/
+/********************************************************************************/
+
+int PROPERTY_KEY_TABLE_SIZE = 4096;	// maximum interned property names
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Update constants							*/
+/*										*/
+/********************************************************************************/
+
+long QUIESCE_RECHECK = 5;		// ms between checks for end of update
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Time slot constants							*/
+/*										*/
+/********************************************************************************/
+
+long SLOT_HORIZON = 400 * T_DAY;	// range of precomputed event slots
+long SLOT_LOOKBACK = 2 * T_DAY; 	// precomputed range before a query
+
+
+
 
 /********************************************************************************/
 /*										*/
@@ -75,6 +131,20 @@ interface CalendarEvent {
 }	// end of inner interface CalendarEvent
 
 
+
+/********************************************************************************/
+/*										*/
+/*	Model reference 							*/
+/*										*/
+/********************************************************************************/
+
+interface ModelReference {
+
+   void revalidate();
+
+}	// end of inner interface ModelReference
+
+
 }	// end of interface CatmodelConstants
 
 
@@ -41,6 +41,7 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -51,6 +52,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -87,6 +89,7 @@ private Set<String> all_units;
 protected CatreParameterRef range_ref;
 private String parameter_data;
 private boolean is_volatile;
+private int value_slot;
 
 
 private static final DateFormat [] DATE_FORMATS = new DateFormat [] {
@@ -267,6 +270,7 @@ protected CatmodelParameter(CatreUniverse cu,String name)
    default_unit = null;
    range_ref = null;
    parameter_data = null;
+   value_slot = -1;
 }
 
 
@@ -352,6 +356,29 @@ protected String externalString(Object v)
 
 
 
+/********************************************************************************/
+/*										*/
+/*	Slot storage methods							*/
+/*										*/
+/*	These let a slotted parameter set keep values in primitive arrays.	*/
+/*	Types that don't support this are stored as objects.			*/
+/*										*/
+/********************************************************************************/
+
+int getValueSlot()				{ return value_slot; }
+
+void setValueSlot(int slot)			{ value_slot = slot; }
+
+byte getSlotKind()				{ return SLOT_OBJECT; }
+
+long normalizeLong(Object v)			{ return 0; }
+
+double normalizeDouble(Object v)		{ return 0; }
+
+Object decodeLong(long v)			{ return null; }
+
+
+
 /********************************************************************************/
 /*										*/
 /*	I/O methods								*/
@@ -565,6 +592,21 @@ private static class BooleanParameter extends CatmodelParameter {
 
    @Override public Object normalize(Object o) {
       if (o != null && o instanceof Boolean) return o;
+      return Boolean.valueOf(booleanValue(o));
+    }
+
+   @Override byte getSlotKind() 		{ return SLOT_LONG; }
+
+   @Override long normalizeLong(Object o) {
+      if (o instanceof Boolean) return ((Boolean) o) ? 1 : 0;
+      return booleanValue(o) ? 1 : 0;
+    }
+
+   @Override Object decodeLong(long v) {
+      return Boolean.valueOf(v != 0);
+    }
+
+   private boolean booleanValue(Object o) {
       boolean bvl = false;
       if (o == null) ;
       else if (o instanceof Number) {
@@ -579,7 +621,7 @@ private static class BooleanParameter extends CatmodelParameter {
 	    bvl = true;
        }
       else bvl = true;
-      return Boolean.valueOf(bvl);
+      return bvl;
     }
 
    @Override public ParameterType getParameterType() {
@@ -709,6 +751,20 @@ private static class IntParameter extends NumberParameter {
    
    @Override public Object normalize(Object value) {
       if (value == null) return null;
+      return Integer.valueOf(intValue(value));
+    }
+
+   @Override byte getSlotKind() 		{ return SLOT_LONG; }
+
+   @Override long normalizeLong(Object value) {
+      return intValue(value);
+    }
+
+   @Override Object decodeLong(long v) {
+      return Integer.valueOf((int) v);
+    }
+
+   private int intValue(Object value) {
       int ivl = 0;
       if (value instanceof Number) {
 	 Number n = (Number) value;
@@ -723,7 +779,7 @@ private static class IntParameter extends NumberParameter {
        }
       if (min_value != null && ivl < min_value.intValue()) ivl = min_value.intValue();
       if (max_value != null && ivl > max_value.intValue()) ivl = max_value.intValue();
-      return Integer.valueOf(ivl);
+      return ivl;
     }
 
 }	// end of inner class IntParameter
@@ -764,6 +820,12 @@ private static class RealParameter extends NumberParameter {
 
    @Override public Object normalize(Object value) {
       if (value == null) return null;
+      return Double.valueOf(normalizeDouble(value));
+    }
+
+   @Override byte getSlotKind() 		{ return SLOT_DOUBLE; }
+
+   @Override double normalizeDouble(Object value) {
       double dvl = 0;
       if (value instanceof Number) {
 	 Number n = (Number) value;
@@ -782,7 +844,7 @@ private static class RealParameter extends NumberParameter {
       if (max_value != null && dvl > max_value.doubleValue()) {
          dvl = max_value.doubleValue();
        }
-      return Double.valueOf(dvl);
+      return dvl;
     }
 
 }	// end of inner class RealParameter
@@ -1052,16 +1114,22 @@ private static class EnumParameter extends CatmodelParameter {
 
    private List<String> value_set;
    private boolean is_sorted;
+   private volatile String [] enum_symbols;
+   private Map<String,Integer> symbol_index;
 
    EnumParameter(CatreUniverse cu,String nm) {
       super(cu,nm);
       value_set = new ArrayList<>();
       is_sorted = false;
+      enum_symbols = new String[0];
+      symbol_index = new ConcurrentHashMap<>();
     }
 
    EnumParameter(CatreUniverse cu,String nm,Enum<?> e) {
       super(cu,nm);
       is_sorted = false;
+      enum_symbols = new String[0];
+      symbol_index = new ConcurrentHashMap<>();
       value_set = new ArrayList<>();
       for (Enum<?> x : e.getClass().getEnumConstants()) {
          value_set.add(x.toString().intern());
@@ -1071,6 +1139,8 @@ private static class EnumParameter extends CatmodelParameter {
 
    EnumParameter(CatreUniverse cu,String nm,Iterable<String> vals,boolean sorted) {
       super(cu,nm);
+      enum_symbols = new String[0];
+      symbol_index = new ConcurrentHashMap<>();
       value_set = new ArrayList<>();
       is_sorted = sorted;
       for (String s : vals) value_set.add(s.intern());
@@ -1079,6 +1149,8 @@ private static class EnumParameter extends CatmodelParameter {
 
    EnumParameter(CatreUniverse cu,String nm,String [] vals,boolean sorted) {
       super(cu,nm);
+      enum_symbols = new String[0];
+      symbol_index = new ConcurrentHashMap<>();
       value_set = new ArrayList<>();
       is_sorted = sorted;
       for (String s : vals) value_set.add(s.intern());
@@ -1175,6 +1247,33 @@ private static class EnumParameter extends CatmodelParameter {
       return s;
     }
    
+   // ordinals index an append-only symbol table so they stay valid when
+   // the value set changes
+   
+   @Override byte getSlotKind() 		{ return SLOT_LONG; }
+   
+   @Override long normalizeLong(Object o) {
+      Integer idx = symbol_index.get(o.toString());
+      if (idx != null) return idx;
+      return addSymbol((String) normalize(o));
+    }
+   
+   @Override Object decodeLong(long v) {
+      String [] syms = enum_symbols;
+      if (v < 0 || v >= syms.length) return null;
+      return syms[(int) v];
+    }
+   
+   private synchronized int addSymbol(String s) {
+      Integer idx = symbol_index.get(s);
+      if (idx != null) return idx;
+      String [] syms = Arrays.copyOf(enum_symbols,enum_symbols.length+1);
+      syms[syms.length-1] = s;
+      enum_symbols = syms;
+      symbol_index.put(s,syms.length-1);
+      return syms.length-1;
+    }
+   
    private void handleSort() {
       if (is_sorted && value_set != null) {
          Collections.sort(value_set);
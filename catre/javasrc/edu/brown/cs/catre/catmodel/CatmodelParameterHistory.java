@@ -0,0 +1,415 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatmodelParameterHistory.java                                   */
+/*                                                                              */
+/*      Ring buffer holding the recent values of a parameter                    */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catmodel;
+
+import java.util.Objects;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreParameter;
+import edu.brown.cs.catre.catre.CatreParameterHistory;
+
+class CatmodelParameterHistory implements CatreParameterHistory, CatmodelConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatmodelParameter for_parameter;
+private long [] 	change_times;
+private double []	change_values;		// NaN for unknown
+private Object []	change_objects; 	// only for non-primitive parameters
+private int		first_index;
+private int		num_changes;
+private boolean 	is_numeric;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatmodelParameterHistory(CatmodelParameter p)
+{
+   for_parameter = p;
+   change_times = new long[HISTORY_INITIAL_SIZE];
+   change_values = new double[HISTORY_INITIAL_SIZE];
+   change_objects = null;
+   if (p.getSlotKind() == SLOT_OBJECT) change_objects = new Object[HISTORY_INITIAL_SIZE];
+   first_index = 0;
+   num_changes = 0;
+
+   switch (p.getParameterType()) {
+      case BOOLEAN :
+      case INTEGER :
+      case REAL :
+	 is_numeric = true;
+	 break;
+      default :
+	 is_numeric = false;
+	 break;
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public CatreParameter getParameter()		{ return for_parameter; }
+
+@Override public synchronized int size()		{ return num_changes; }
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Recording methods							*/
+/*										*/
+/********************************************************************************/
+
+synchronized void record(long when,Object value)
+{
+   double dv = encodeValue(value);
+   Object ov = null;
+   if (change_objects != null && value != null) ov = for_parameter.normalize(value);
+
+   if (num_changes > 0) {
+      int last = physical(num_changes-1);
+      if (sameValue(last,dv,ov)) return;
+      // keep times monotonic so searches remain valid if the clock is reset
+      if (when < change_times[last]) when = change_times[last];
+    }
+
+   if (num_changes == change_times.length) {
+      if (num_changes < HISTORY_SIZE) growBuffer();
+      else {
+	 first_index = (first_index + 1) % change_times.length;
+	 --num_changes;
+       }
+    }
+
+   int idx = physical(num_changes++);
+   change_times[idx] = when;
+   change_values[idx] = dv;
+   if (change_objects != null) change_objects[idx] = ov;
+}
+
+
+
+private double encodeValue(Object value)
+{
+   if (value == null) return Double.NaN;
+
+   switch (for_parameter.getSlotKind()) {
+      case SLOT_LONG :
+	 return for_parameter.normalizeLong(value);
+      case SLOT_DOUBLE :
+	 return for_parameter.normalizeDouble(value);
+      default :
+	 return 0;
+    }
+}
+
+
+private boolean sameValue(int idx,double dv,Object ov)
+{
+   if (change_objects != null) return Objects.equals(change_objects[idx],ov);
+
+   return Double.compare(change_values[idx],dv) == 0;
+}
+
+
+private void growBuffer()
+{
+   int osz = change_times.length;
+   int nsz = Math.min(osz*2,HISTORY_SIZE);
+
+   long [] ntimes = new long[nsz];
+   double [] nvalues = new double[nsz];
+   Object [] nobjects = (change_objects == null ? null : new Object[nsz]);
+   for (int i = 0; i < num_changes; ++i) {
+      int idx = physical(i);
+      ntimes[i] = change_times[idx];
+      nvalues[i] = change_values[idx];
+      if (nobjects != null) nobjects[i] = change_objects[idx];
+    }
+
+   change_times = ntimes;
+   change_values = nvalues;
+   change_objects = nobjects;
+   first_index = 0;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Query methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public synchronized Object getValueAt(long when)
+{
+   int i = findIndex(when);
+   if (i < 0) return null;
+
+   return decodeValue(physical(i));
+}
+
+
+@Override public synchronized long getLastChange(long from,long to)
+{
+   int i = findIndex(to);
+   if (i < 0) return -1;
+
+   long t = change_times[physical(i)];
+   if (t < from) return -1;
+
+   return t;
+}
+
+
+@Override public synchronized boolean hadValue(Object value,long from,long to)
+{
+   double dv = encodeValue(value);
+   Object ov = null;
+   if (change_objects != null && value != null) ov = for_parameter.normalize(value);
+
+   for (int i = Math.max(findIndex(from),0); i < num_changes; ++i) {
+      int idx = physical(i);
+      if (change_times[idx] > to) break;
+      if (sameValue(idx,dv,ov)) return true;
+    }
+
+   return false;
+}
+
+
+@Override public double getMinimum(long from,long to)
+{
+   return aggregate(from,to)[0];
+}
+
+
+@Override public double getMaximum(long from,long to)
+{
+   return aggregate(from,to)[1];
+}
+
+
+@Override public double getAverage(long from,long to)
+{
+   return aggregate(from,to)[2];
+}
+
+
+
+/**
+ *	Compute minimum, maximum and time-weighted average over a window.
+ *	Each value holds until the next change.
+ **/
+
+private synchronized double [] aggregate(long from,long to)
+{
+   double [] rslt = { Double.NaN, Double.NaN, Double.NaN };
+   if (!is_numeric || to < from) return rslt;
+
+   double min = Double.POSITIVE_INFINITY;
+   double max = Double.NEGATIVE_INFINITY;
+   double sum = 0;
+   double lastv = Double.NaN;
+   long total = 0;
+
+   for (int i = Math.max(findIndex(from),0); i < num_changes; ++i) {
+      int idx = physical(i);
+      long start = Math.max(change_times[idx],from);
+      if (start > to) break;
+      long end = to;
+      if (i+1 < num_changes) end = Math.min(to,change_times[physical(i+1)]);
+      double v = change_values[idx];
+      if (Double.isNaN(v)) continue;
+      min = Math.min(min,v);
+      max = Math.max(max,v);
+      sum += v * (end - start);
+      total += end - start;
+      lastv = v;
+    }
+
+   if (min <= max) {
+      rslt[0] = min;
+      rslt[1] = max;
+      rslt[2] = (total > 0 ? sum / total : lastv);
+    }
+
+   return rslt;
+}
+
+
+
+/**
+ *	Find the logical index of the last change at or before the given time
+ **/
+
+private int findIndex(long when)
+{
+   int lo = 0;
+   int hi = num_changes-1;
+   int rslt = -1;
+   while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (change_times[physical(mid)] <= when) {
+	 rslt = mid;
+	 lo = mid+1;
+       }
+      else hi = mid-1;
+    }
+
+   return rslt;
+}
+
+
+private int physical(int i)
+{
+   return (first_index + i) % change_times.length;
+}
+
+
+private Object decodeValue(int idx)
+{
+   if (change_objects != null) return change_objects[idx];
+
+   double v = change_values[idx];
+   if (Double.isNaN(v)) return null;
+
+   if (for_parameter.getSlotKind() == SLOT_LONG) {
+      return for_parameter.decodeLong((long) v);
+    }
+
+   return Double.valueOf(v);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Output methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public synchronized JSONObject toJson(long from,long to,long step)
+{
+   JSONObject rslt = new JSONObject();
+   rslt.put("PARAMETER",for_parameter.getName());
+   rslt.put("FROM",from);
+   rslt.put("TO",to);
+   rslt.put("COUNT",num_changes);
+   putNumbers(rslt,aggregate(from,to));
+
+   JSONArray data = new JSONArray();
+   if (step <= 0) {
+      for (int i = Math.max(findIndex(from),0); i < num_changes; ++i) {
+	 int idx = physical(i);
+	 if (change_times[idx] > to) break;
+	 JSONObject pt = new JSONObject();
+	 pt.put("TIME",change_times[idx]);
+	 pt.put("VALUE",for_parameter.unnormalize(decodeValue(idx)));
+	 data.put(pt);
+       }
+    }
+   else {
+      long span = to - from;
+      if (span / step >= HISTORY_MAX_BUCKETS) step = (span + HISTORY_MAX_BUCKETS - 1) / HISTORY_MAX_BUCKETS;
+      for (long t = from; t < to; t += step) {
+	 long end = Math.min(t+step,to);
+	 JSONObject pt = new JSONObject();
+	 pt.put("TIME",t);
+	 if (is_numeric) {
+	    double [] agg = aggregate(t,end);
+	    if (Double.isNaN(agg[2])) continue;
+	    putNumbers(pt,agg);
+	  }
+	 else {
+	    Object v = getValueAt(end);
+	    if (v == null) continue;
+	    pt.put("VALUE",for_parameter.unnormalize(v));
+	  }
+	 data.put(pt);
+       }
+    }
+   rslt.put("STEP",Math.max(step,0));
+   rslt.put("DATA",data);
+
+   return rslt;
+}
+
+
+private void putNumbers(JSONObject obj,double [] agg)
+{
+   // JSON cannot represent NaN, so unknown statistics are omitted
+   if (Double.isNaN(agg[2])) return;
+
+   obj.put("MINIMUM",agg[0]);
+   obj.put("MAXIMUM",agg[1]);
+   obj.put("AVERAGE",agg[2]);
+}
+
+
+@Override public String toString()
+{
+   return "HISTORY[" + for_parameter.getName() + ":" + num_changes + "]";
+}
+
+
+
+}	// end of class CatmodelParameterHistory
+
+
+
+
+/* end of CatmodelParameterHistory.java */
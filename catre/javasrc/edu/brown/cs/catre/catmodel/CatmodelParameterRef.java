@@ -37,13 +37,10 @@
 package edu.brown.cs.catre.catmodel;
 
 import edu.brown.cs.catre.catre.CatreSubSavableBase;
-import edu.brown.cs.catre.catre.CatreUniverse;
-import edu.brown.cs.catre.catre.CatreUniverseListener;
 
 import java.util.Map;
 
 import edu.brown.cs.catre.catre.CatreDevice;
-import edu.brown.cs.catre.catre.CatreDeviceListener;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreParameter;
 import edu.brown.cs.catre.catre.CatreParameterRef;
@@ -51,8 +48,7 @@ import edu.brown.cs.catre.catre.CatreReferenceListener;
 import edu.brown.cs.catre.catre.CatreStore;
 
 class CatmodelParameterRef extends CatreSubSavableBase 
-      implements CatmodelConstants, CatreParameterRef, 
-      CatreDeviceListener, CatreUniverseListener
+      implements CatmodelConstants, CatreParameterRef, CatmodelConstants.ModelReference
 { 
 
 
@@ -62,7 +58,7 @@ class CatmodelParameterRef extends CatreSubSavableBase
 /*                                                                              */
 /********************************************************************************/
 
-private CatreUniverse for_universe;
+private CatmodelUniverse for_universe;
 private CatreReferenceListener ref_listener;
 
 private String  device_id;
@@ -71,6 +67,7 @@ private CatreDevice for_device;
 private CatreParameter for_parameter;
 private String ref_label;
 private boolean is_valid;
+private volatile long resolved_epoch;
 
 
 
@@ -80,7 +77,7 @@ private boolean is_valid;
 /*                                                                              */
 /********************************************************************************/
 
-CatmodelParameterRef(CatreUniverse cu,CatreReferenceListener rl,String devid,String parameter)
+CatmodelParameterRef(CatmodelUniverse cu,CatreReferenceListener rl,String devid,String parameter)
 {
    super(null);
    
@@ -94,13 +91,14 @@ CatmodelParameterRef(CatreUniverse cu,CatreReferenceListener rl,String devid,Str
    is_valid = false;
    for_device = null;
    for_parameter = null;
+   resolved_epoch = -1;
    validate();
    
-   for_universe.addUniverseListener(this);
+   for_universe.addModelReference(this);
 }
 
 
-CatmodelParameterRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,Map<String,Object> map)
+CatmodelParameterRef(CatmodelUniverse cu,CatreReferenceListener rl,CatreStore cs,Map<String,Object> map)
 {
    super(null);
    
@@ -112,10 +110,11 @@ CatmodelParameterRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,Ma
    is_valid = false;
    for_device = null;
    for_parameter = null;
+   resolved_epoch = -1;
    
    ref_listener = rl;
    
-   for_universe.addUniverseListener(this);
+   for_universe.addModelReference(this);
 }
 
 
@@ -130,7 +129,7 @@ CatmodelParameterRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,Ma
 
 @Override public CatreDevice getDevice()                
 {
-   if (!is_valid) validate();
+   validate();
    
    if (!is_valid) return null;
    
@@ -139,7 +138,7 @@ CatmodelParameterRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,Ma
 
 @Override public CatreParameter getParameter()          
 { 
-   if (!is_valid) validate(); 
+   validate(); 
    
    if (!is_valid) return null;
    
@@ -154,6 +153,12 @@ CatmodelParameterRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,Ma
 {
    validate();
 }
+
+
+@Override public void revalidate()
+{
+   validate();
+}
  
 
 
@@ -163,61 +168,43 @@ CatmodelParameterRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,Ma
 /*                                                                              */
 /********************************************************************************/
 
+/**
+ *      Resolve the device and parameter.  The result is kept until the
+ *      universe's model epoch changes.  The epoch is recorded only after
+ *      the resolved fields are set so a reader that sees the new epoch
+ *      also sees the matching device and parameter.
+ **/
+
 private void validate()
 {
-   CatreLog.logD("CATMODEL","Validate parameter " + device_id + "." + parameter_name);
+   long epoch = for_universe.getModelEpoch();
+   if (epoch == resolved_epoch) return;
    
-   if (for_device == null) {
-      for_device = for_universe.findDevice(device_id);
-      if (for_device != null) {
-         for_device.addDeviceListener(this);
-         device_id = for_device.getDeviceId();
-       }
-    }
+   CatreLog.logD("CATMODEL","Validate parameter " + device_id + "." + parameter_name);
    
-   if (for_device != null && for_parameter == null) {
-      for_parameter = for_device.findParameter(parameter_name);
+   CatreDevice cd = for_universe.findDevice(device_id);
+   CatreParameter cp = null;
+   if (cd != null) {
+      cp = cd.findParameter(parameter_name);
     }
+   boolean valid = (cd != null && cp != null && cd.isEnabled());
    
-   if (ref_label == null && for_device != null) {
-      ref_label = for_device.getLabel() + "." + parameter_name;
+   boolean chng = false;
+   synchronized (this) {
+      if (cd != null) {
+         device_id = cd.getDeviceId();
+         if (ref_label == null) ref_label = cd.getLabel() + "." + parameter_name;
+       }
+      for_device = cd;
+      for_parameter = cp;
+      if (valid != is_valid) {
+         is_valid = valid;
+         chng = true;
+       }
+      resolved_epoch = epoch;
     }
    
-   boolean valid = (for_device != null && for_parameter != null && for_device.isEnabled());
-   
-   if (valid != is_valid) {
-      is_valid = valid;
-      if (ref_listener != null) ref_listener.referenceValid(is_valid);
-    }
-}
-
-
-
-/********************************************************************************/
-/*                                                                              */
-/*      Callback methods to update the reference                                */
-/*                                                                              */
-/********************************************************************************/
-
-@Override public void deviceEnabled(CatreDevice d,boolean enable)
-{
-   validate();
-}
-
-
-@Override public void deviceAdded(CatreDevice d)
-{
-   if (d.getDeviceId().equals(device_id)) validate();
-}
-
-
-@Override public void deviceRemoved(CatreDevice d)
-{
-   if (for_device == d) {
-      for_device = null;
-      for_parameter = null;
-      validate();
-    }
+   if (chng && ref_listener != null) ref_listener.referenceValid(valid);
 }
 
 
@@ -250,6 +237,7 @@ private void validate()
    ref_label = getSavedString(map,"LABEL",ref_label);
    for_device = null;
    for_parameter = null;
+   resolved_epoch = -1;
 }
 
 
@@ -37,6 +37,7 @@
 package edu.brown.cs.catre.catmodel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -50,6 +51,16 @@ import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreSubSavable;
 import edu.brown.cs.catre.catre.CatreUniverse;
 
+/**
+ *	Set of parameters and their values.  Most sets are small and keep
+ *	values in a map.  The universe's value set is slotted: each parameter
+ *	gets a dense slot from the universe and values are kept unboxed in
+ *	primitive arrays indexed by slot, with an object array for the types
+ *	(strings, calendars, events, ...) that have no primitive form.  The
+ *	arrays are held together in a SlotTable that is replaced as a whole
+ *	when it grows so unsynchronized readers always see matching arrays.
+ **/
+
 class CatmodelParameterSet implements CatreSubSavable, CatreParameterSet, CatmodelConstants
 {
 
@@ -62,8 +73,14 @@ class CatmodelParameterSet implements CatreSubSavable, CatreParameterSet, Catmod
 
 private Map<CatreParameter,Object> parameter_values;
 private Set<CatreParameter>	valid_parameters;
+private Map<String,CatreParameter> name_index;
 private CatmodelUniverse	for_universe;
 
+private boolean 		use_slots;
+private volatile SlotTable	slot_table;
+
+private static final int	INITIAL_SLOTS = 64;
+
 
 
 /********************************************************************************/
@@ -76,7 +93,20 @@ CatmodelParameterSet(CatreUniverse cu)
 {
    valid_parameters = new HashSet<>();
    parameter_values = new HashMap<>();
+   name_index = null;
    for_universe = (CatmodelUniverse) cu;
+   use_slots = false;
+}
+
+
+CatmodelParameterSet(CatmodelUniverse cu,boolean slots)
+{
+   this(cu);
+
+   if (slots) {
+      use_slots = true;
+      slot_table = new SlotTable(INITIAL_SLOTS);
+    }
 }
 
 
@@ -94,7 +124,15 @@ CatmodelParameterSet(CatmodelUniverse cu,CatreParameterSet ps)
 
    if (ps != null) {
       CatmodelParameterSet cps = (CatmodelParameterSet) ps;
-      parameter_values.putAll(cps.parameter_values);
+      if (cps.use_slots) {
+         for (CatreParameter cp : cps.valid_parameters) {
+            Object v = cps.getValue(cp);
+            if (v != null) parameter_values.put(cp,v);
+          }
+       }
+      else {
+         parameter_values.putAll(cps.parameter_values);
+       }
       valid_parameters = new HashSet<CatreParameter>(ps.getValidParameters());
     }
 }
@@ -115,13 +153,15 @@ CatmodelParameterSet(CatmodelUniverse cu,CatreParameterSet ps)
 
 @Override public void addParameter(CatreParameter up)
 {
-   valid_parameters.add(up);
+   if (valid_parameters.add(up) && name_index != null) {
+      name_index.put(up.getName(),up);
+    }
 }
 
 
 public void addParameters(Collection<CatreParameter> ups)
 {
-   valid_parameters.addAll(ups);
+   for (CatreParameter up : ups) addParameter(up);
 }
 
 
@@ -129,6 +169,10 @@ public void addParameters(Collection<CatreParameter> ups)
 {
    if (up == null) return null;
    
+   if (use_slots) {
+      return putSlotValue(up,o);
+    }
+   
    addParameter(up);
    o = up.normalize(o);
    return parameter_values.put(up,o);
@@ -137,43 +181,74 @@ public void addParameters(Collection<CatreParameter> ups)
 @Override public void putValues(CatreParameterSet ps)
 {
    CatmodelParameterSet cps = (CatmodelParameterSet) ps;
-   for (Map.Entry<CatreParameter,Object> ent : cps.parameter_values.entrySet()) {
-      putValue(ent.getKey(),ent.getValue());
+   if (cps.use_slots) {
+      for (CatreParameter cp : cps.valid_parameters) {
+         Object v = cps.getValue(cp);
+         if (v != null) putValue(cp,v);
+       }
+    }
+   else {
+      for (Map.Entry<CatreParameter,Object> ent : cps.parameter_values.entrySet()) {
+         putValue(ent.getKey(),ent.getValue());
+       }
     }
 }
 
 @Override public Object putValue(String pname,Object o)
 {
-   for (CatreParameter cp : parameter_values.keySet()) {
-      if (cp.getName().equals(pname)) {
-	 Object oval = parameter_values.get(cp);
-	 if (o instanceof String) {
-	    o = cp.normalize(o);
-	  }
-	 putValue(cp,o);
-	 return oval;
-       }
+   CatreParameter cp = findParameter(pname);
+   if (cp == null) return null;
+   
+   Object oval = getValue(cp);
+   if (oval == null && !hasValue(cp)) return null;
+   if (o instanceof String) {
+      o = cp.normalize(o);
     }
-
-   return null;
+   putValue(cp,o);
+   
+   return oval;
 }
 
 
 @Override public void clearValues()
 {
    parameter_values.clear();
+   
+   if (use_slots) {
+      synchronized (this) {
+         SlotTable st = slot_table;
+         Arrays.fill(st.slot_kinds,SLOT_EMPTY);
+         Arrays.fill(st.object_values,null);
+       }
+    }
 }
 
 
 @Override public Object getValue(CatreParameter p)
 {
-   return parameter_values.get(p);
+   if (!use_slots) return parameter_values.get(p);
+   
+   SlotTable st = slot_table;
+   int slot = findSlot(st,p);
+   if (slot < 0) return parameter_values.get(p);
+   
+   CatmodelParameter cmp = (CatmodelParameter) p;
+   switch (st.slot_kinds[slot]) {
+      case SLOT_LONG :
+         return cmp.decodeLong(st.long_values[slot]);
+      case SLOT_DOUBLE :
+         return Double.valueOf(st.double_values[slot]);
+      case SLOT_OBJECT :
+         return st.object_values[slot];
+      default :
+         return null;
+    }
 }
 
 
 @Override public String getStringValue(CatreParameter p)
 {
-   Object v = parameter_values.get(p);
+   Object v = getValue(p);
    if (v == null) return null;
 
    return p.unnormalize(v);
@@ -182,19 +257,23 @@ public void addParameters(Collection<CatreParameter> ups)
 
 @Override public void setParameter(String nm,Object val)
 {
-   CatreParameter parm = null;
-   for (CatreParameter up : getValidParameters()) {
-      if (up.getName().equals(nm)) {
-	 parm = up;
-	 break;
-       }
-    }
+   CatreParameter parm = findParameter(nm);
    if (parm == null) {
       return;
     }
 
    if (val == null) {
       parameter_values.remove(parm);
+      if (use_slots) {
+         synchronized (this) {
+            SlotTable st = slot_table;
+            int slot = findSlot(st,parm);
+            if (slot >= 0) {
+               st.slot_kinds[slot] = SLOT_EMPTY;
+               st.object_values[slot] = null;
+             }
+          }
+       }
       return;
     }
 
@@ -202,6 +281,142 @@ public void addParameters(Collection<CatreParameter> ups)
 }
 
 
+private CatreParameter findParameter(String nm)
+{
+   Map<String,CatreParameter> idx = name_index;
+   if (idx == null) {
+      idx = new HashMap<>();
+      for (CatreParameter up : valid_parameters) {
+         idx.putIfAbsent(up.getName(),up);
+       }
+      name_index = idx;
+    }
+   
+   return idx.get(nm);
+}
+
+
+private boolean hasValue(CatreParameter p)
+{
+   if (parameter_values.containsKey(p)) return true;
+   if (!use_slots) return false;
+   
+   SlotTable st = slot_table;
+   int slot = findSlot(st,p);
+   return slot >= 0 && st.slot_kinds[slot] != SLOT_EMPTY;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Slotted value methods							*/
+/*										*/
+/********************************************************************************/
+
+private static int findSlot(SlotTable st,CatreParameter p)
+{
+   if (!(p instanceof CatmodelParameter)) return -1;
+   
+   int slot = ((CatmodelParameter) p).getValueSlot();
+   if (slot < 0 || slot >= st.slot_parameters.length || st.slot_parameters[slot] != p) {
+      return -1;
+    }
+   
+   return slot;
+}
+
+
+private synchronized Object putSlotValue(CatreParameter up,Object o)
+{
+   SlotTable st = slot_table;
+   int slot = findSlot(st,up);
+   if (slot < 0) {
+      if (!(up instanceof CatmodelParameter)) {
+         addParameter(up);
+         return parameter_values.put(up,up.normalize(o));
+       }
+      CatmodelParameter cmp = (CatmodelParameter) up;
+      slot = for_universe.getValueSlot(cmp);
+      if (slot >= st.slot_parameters.length) {
+         st = st.grow(slot);
+         slot_table = st;
+       }
+      if (st.slot_parameters[slot] != null && st.slot_parameters[slot] != up) {
+         // parameter from another universe; don't share its slot
+         addParameter(up);
+         return parameter_values.put(up,up.normalize(o));
+       }
+      st.slot_parameters[slot] = up;
+    }
+   
+   if (st.slot_kinds[slot] == SLOT_EMPTY) addParameter(up);
+   
+   CatmodelParameter cmp = (CatmodelParameter) up;
+   byte kind = (o == null ? SLOT_OBJECT : cmp.getSlotKind());
+   switch (kind) {
+      case SLOT_LONG :
+         st.long_values[slot] = cmp.normalizeLong(o);
+         st.object_values[slot] = null;
+         break;
+      case SLOT_DOUBLE :
+         st.double_values[slot] = cmp.normalizeDouble(o);
+         st.object_values[slot] = null;
+         break;
+      default :
+         Object v = cmp.normalize(o);
+         st.object_values[slot] = v;
+         if (v == null) kind = SLOT_EMPTY;
+         break;
+    }
+   st.slot_kinds[slot] = kind;
+   
+   // previous value is not computed to avoid boxing on the update path
+   return null;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Slot arrays								*/
+/*										*/
+/********************************************************************************/
+
+private static final class SlotTable {
+
+   private final CatreParameter [] slot_parameters;
+   private final byte [] slot_kinds;
+   private final long [] long_values;
+   private final double [] double_values;
+   private final Object [] object_values;
+   
+   SlotTable(int sz) {
+      slot_parameters = new CatreParameter[sz];
+      slot_kinds = new byte[sz];
+      long_values = new long[sz];
+      double_values = new double[sz];
+      object_values = new Object[sz];
+    }
+   
+   private SlotTable(SlotTable st,int sz) {
+      slot_parameters = Arrays.copyOf(st.slot_parameters,sz);
+      slot_kinds = Arrays.copyOf(st.slot_kinds,sz);
+      long_values = Arrays.copyOf(st.long_values,sz);
+      double_values = Arrays.copyOf(st.double_values,sz);
+      object_values = Arrays.copyOf(st.object_values,sz);
+    }
+   
+   SlotTable grow(int slot) {
+      int sz = slot_parameters.length;
+      while (sz <= slot) sz *= 2;
+      return new SlotTable(this,sz);
+    }
+
+}	// end of inner class SlotTable
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Output methods								*/
@@ -216,7 +431,7 @@ public void addParameters(Collection<CatreParameter> ups)
    for (CatreParameter up : valid_parameters) {
       Object val = for_universe.getValue(up);
       if (val == null) {
-         val = parameter_values.get(up);
+         val = getValue(up);
        }
       Map<String,Object> pval = up.toJson();
       String sval = up.unnormalize(val);
@@ -234,6 +449,7 @@ public void addParameters(Collection<CatreParameter> ups)
 {
    valid_parameters = getSavedSubobjectSet(cs,map,"PARAMETERS",
 	 this::createParameter,valid_parameters);
+   name_index = null;
    // this needs to save values too
 }
 
@@ -254,7 +470,7 @@ private CatreParameter createParameter(CatreStore cs,Map<String,Object> map)
    StringBuffer buf = new StringBuffer();
    buf.append("{ ");
    for (CatreParameter cp : valid_parameters) {
-      Object val = parameter_values.get(cp);
+      Object val = getValue(cp);
       buf.append(cp.getName());
       if (val != null) {
          buf.append("=");
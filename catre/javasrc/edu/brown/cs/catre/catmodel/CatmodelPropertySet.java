@@ -96,6 +96,24 @@ CatmodelPropertySet(CatreParameterSet ps)
 }
 
 
+@Override public CatrePropertySet freeze()
+{
+   return CatmodelSharedPropertySet.create(this);
+}
+
+
+@Override public CatrePropertySet with(String key,Object value)
+{
+   return freeze().with(key,value);
+}
+
+
+@Override public CatrePropertySet merge(CatrePropertySet ps)
+{
+   return freeze().merge(ps);
+}
+
+
 }	// end of class CatmodelPropertySet
 
 
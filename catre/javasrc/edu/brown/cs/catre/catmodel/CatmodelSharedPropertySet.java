@@ -0,0 +1,340 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatmodelSharedPropertySet.java                                  */
+/*                                                                              */
+/*      Immutable property set with interned keys                               */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catmodel;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.brown.cs.catre.catre.CatrePropertySet;
+
+/**
+ *      Unmodifiable property set.  Keys are interned and kept sorted in a
+ *      flat array with the values in a parallel array, and the hash code is
+ *      computed once, so sets can be compared cheaply and shared freely
+ *      between conditions, rules and trigger contexts.  Adding or merging
+ *      returns the same set when nothing changes.
+ **/
+
+class CatmodelSharedPropertySet extends AbstractMap<String,String> 
+      implements CatrePropertySet, CatmodelConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private final String [] prop_keys;
+private final String [] prop_values;
+private final int       hash_code;
+private Set<Map.Entry<String,String>> entry_set;
+
+static final CatmodelSharedPropertySet EMPTY =
+   new CatmodelSharedPropertySet(new String[0],new String[0]);
+
+private static final Map<String,String> key_table = new ConcurrentHashMap<>();
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private CatmodelSharedPropertySet(String [] keys,String [] values)
+{
+   prop_keys = keys;
+   prop_values = values;
+   
+   int h = 0;
+   for (int i = 0; i < keys.length; ++i) {
+      h += keys[i].hashCode() ^ (values[i] == null ? 0 : values[i].hashCode());
+    }
+   hash_code = h;
+   entry_set = null;
+}
+
+
+static CatmodelSharedPropertySet create(Map<String,String> map)
+{
+   if (map instanceof CatmodelSharedPropertySet) return (CatmodelSharedPropertySet) map;
+   if (map == null || map.isEmpty()) return EMPTY;
+   
+   int n = map.size();
+   String [] keys = new String[n];
+   int i = 0;
+   for (String k : map.keySet()) keys[i++] = internKey(k);
+   Arrays.sort(keys);
+   String [] values = new String[n];
+   for (i = 0; i < n; ++i) values[i] = map.get(keys[i]);
+   
+   return new CatmodelSharedPropertySet(keys,values);
+}
+
+
+private static String internKey(String k)
+{
+   String r = key_table.get(k);
+   if (r != null) return r;
+   // property names come from a small vocabulary; stop interning if not
+   if (key_table.size() >= PROPERTY_KEY_TABLE_SIZE) return k;
+   r = key_table.putIfAbsent(k,k);
+   
+   return (r == null ? k : r);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public int size()                     { return prop_keys.length; }
+
+@Override public boolean isEmpty()              { return prop_keys.length == 0; }
+
+@Override public boolean containsKey(Object key)
+{
+   return findKey(key) >= 0;
+}
+
+
+@Override public String get(Object key)
+{
+   int idx = findKey(key);
+   if (idx < 0) return null;
+   
+   return prop_values[idx];
+}
+
+
+private int findKey(Object key)
+{
+   if (!(key instanceof String)) return -1;
+   
+   return Arrays.binarySearch(prop_keys,(String) key);
+}
+
+
+@Override public Set<Map.Entry<String,String>> entrySet()
+{
+   if (entry_set == null) entry_set = new EntrySet();
+   
+   return entry_set;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Derived sets                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public CatrePropertySet freeze()              { return this; }
+
+
+@Override public CatrePropertySet with(String key,Object value)
+{
+   String v = (value == null ? null : value.toString());
+   int idx = findKey(key);
+   if (idx >= 0) {
+      if (v == null ? prop_values[idx] == null : v.equals(prop_values[idx])) return this;
+      String [] nvals = prop_values.clone();
+      nvals[idx] = v;
+      return new CatmodelSharedPropertySet(prop_keys,nvals);
+    }
+   
+   int pos = -idx - 1;
+   int n = prop_keys.length;
+   String [] nkeys = new String[n+1];
+   String [] nvals = new String[n+1];
+   System.arraycopy(prop_keys,0,nkeys,0,pos);
+   System.arraycopy(prop_values,0,nvals,0,pos);
+   nkeys[pos] = internKey(key);
+   nvals[pos] = v;
+   System.arraycopy(prop_keys,pos,nkeys,pos+1,n-pos);
+   System.arraycopy(prop_values,pos,nvals,pos+1,n-pos);
+   
+   return new CatmodelSharedPropertySet(nkeys,nvals);
+}
+
+
+@Override public CatrePropertySet merge(CatrePropertySet ps)
+{
+   if (ps == null || ps.isEmpty() || ps == this) return this;
+   if (isEmpty()) return ps.freeze();
+   
+   CatmodelSharedPropertySet other = create(ps);
+   String [] okeys = other.prop_keys;
+   String [] ovals = other.prop_values;
+   String [] nkeys = new String[prop_keys.length + okeys.length];
+   String [] nvals = new String[nkeys.length];
+   
+   // merge the two sorted arrays, values from the argument win
+   int i = 0;
+   int j = 0;
+   int k = 0;
+   boolean chng = false;
+   while (i < prop_keys.length || j < okeys.length) {
+      int c;
+      if (i >= prop_keys.length) c = 1;
+      else if (j >= okeys.length) c = -1;
+      else c = prop_keys[i].compareTo(okeys[j]);
+      if (c < 0) {
+         nkeys[k] = prop_keys[i];
+         nvals[k++] = prop_values[i++];
+       }
+      else if (c > 0) {
+         nkeys[k] = okeys[j];
+         nvals[k++] = ovals[j++];
+         chng = true;
+       }
+      else {
+         String ov = ovals[j];
+         if (ov == null ? prop_values[i] != null : !ov.equals(prop_values[i])) chng = true;
+         nkeys[k] = okeys[j];
+         nvals[k++] = ov;
+         ++i;
+         ++j;
+       }
+    }
+   
+   if (!chng) return this;
+   if (k == okeys.length) return other;
+   if (k < nkeys.length) {
+      nkeys = Arrays.copyOf(nkeys,k);
+      nvals = Arrays.copyOf(nvals,k);
+    }
+   
+   return new CatmodelSharedPropertySet(nkeys,nvals);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Modification is not supported                                           */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public void put(String key,Object value)
+{
+   throw new UnsupportedOperationException("Property set is immutable");
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Equality methods                                                        */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public int hashCode()                 { return hash_code; }
+
+
+@Override public boolean equals(Object o)
+{
+   if (o == this) return true;
+   if (o instanceof CatmodelSharedPropertySet) {
+      CatmodelSharedPropertySet ps = (CatmodelSharedPropertySet) o;
+      if (ps.hash_code != hash_code) return false;
+      return Arrays.equals(prop_keys,ps.prop_keys) && Arrays.equals(prop_values,ps.prop_values);
+    }
+   
+   return super.equals(o);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Entry set                                                               */
+/*                                                                              */
+/********************************************************************************/
+
+private final class EntrySet extends AbstractSet<Map.Entry<String,String>> {
+
+   @Override public int size()                  { return prop_keys.length; }
+   
+   @Override public Iterator<Map.Entry<String,String>> iterator() {
+      return new EntryIterator();
+    }
+
+}       // end of inner class EntrySet
+
+
+
+private final class EntryIterator implements Iterator<Map.Entry<String,String>> {
+
+   private int next_index;
+   
+   EntryIterator() {
+      next_index = 0;
+    }
+   
+   @Override public boolean hasNext()           { return next_index < prop_keys.length; }
+   
+   @Override public Map.Entry<String,String> next() {
+      if (next_index >= prop_keys.length) throw new NoSuchElementException();
+      int idx = next_index++;
+      return new AbstractMap.SimpleImmutableEntry<>(prop_keys[idx],prop_values[idx]);
+    }
+
+}       // end of inner class EntryIterator
+
+
+
+}       // end of class CatmodelSharedPropertySet
+
+
+
+
+/* end of CatmodelSharedPropertySet.java */
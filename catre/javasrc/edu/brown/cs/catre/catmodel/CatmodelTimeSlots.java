@@ -0,0 +1,214 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatmodelTimeSlots.java                                          */
+/*                                                                              */
+/*      Expanded occurrences of a calendar event over a time range              */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catmodel;
+
+import java.util.Arrays;
+
+/**
+ *      Immutable table of the time slots of a calendar event over a bounded
+ *      range of time.  Slots are kept sorted and disjoint as parallel arrays
+ *      of start and end times so that membership and the next change can be
+ *      found by binary search.  A new table is built when a query falls
+ *      outside the covered range or the event definition changes.
+ **/
+
+class CatmodelTimeSlots implements CatmodelConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private final long	range_start;
+private final long	range_end;
+private final long []	slot_starts;
+private final long []	slot_ends;
+private final int	num_slots;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatmodelTimeSlots(long from,long to,long [] starts,long [] ends,int n)
+{
+   range_start = from;
+   range_end = to;
+   slot_starts = starts;
+   slot_ends = ends;
+   num_slots = n;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+boolean covers(long from,long to)
+{
+   return from >= range_start && to <= range_end;
+}
+
+
+int size()					{ return num_slots; }
+
+long getStart(int idx)				{ return slot_starts[idx]; }
+
+long getEnd(int idx)				{ return slot_ends[idx]; }
+
+
+
+/**
+ *      Return the index of the last slot that starts at or before the given
+ *      time, or -1 if there is none.
+ **/
+
+int findSlot(long when)
+{
+   int idx = Arrays.binarySearch(slot_starts,0,num_slots,when);
+   if (idx < 0) idx = -idx - 2;
+   else {
+      // touching slots: prefer the later one
+      while (idx+1 < num_slots && slot_starts[idx+1] == when) ++idx;
+    }
+
+   return idx;
+}
+
+
+/**
+ *      Return the index of the first slot that ends at or after the given
+ *      time.  This is num_slots if there is none.
+ **/
+
+int findFirstEnding(long when)
+{
+   int idx = Arrays.binarySearch(slot_ends,0,num_slots,when);
+   if (idx < 0) return -idx - 1;
+   while (idx > 0 && slot_ends[idx-1] == when) --idx;
+
+   return idx;
+}
+
+
+boolean isActive(long when)
+{
+   int idx = findSlot(when);
+   if (idx < 0) return false;
+
+   return when < slot_ends[idx];
+}
+
+
+/**
+ *      Return the next time after the given one where a slot starts or
+ *      ends, or -1 if there is none within the covered range.
+ **/
+
+long getNextBoundary(long when)
+{
+   int idx = findSlot(when);
+   if (idx >= 0 && when < slot_ends[idx]) return slot_ends[idx];
+   if (idx+1 < num_slots) return slot_starts[idx+1];
+
+   return -1;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Builder for slot tables 						*/
+/*										*/
+/********************************************************************************/
+
+static class Builder {
+
+   private long range_from;
+   private long range_to;
+   private long [] build_starts;
+   private long [] build_ends;
+   private int build_count;
+
+   Builder(long from,long to) {
+      range_from = from;
+      range_to = to;
+      build_starts = new long[16];
+      build_ends = new long[16];
+      build_count = 0;
+    }
+
+   void addSlot(long start,long end) {
+      if (end <= start) return;
+      if (build_count > 0 && start < build_ends[build_count-1]) {
+	 // overlapping (e.g. across a DST change): extend the prior slot
+	 if (end > build_ends[build_count-1]) build_ends[build_count-1] = end;
+	 return;
+       }
+      if (build_count == build_starts.length) {
+	 build_starts = Arrays.copyOf(build_starts,build_count*2);
+	 build_ends = Arrays.copyOf(build_ends,build_count*2);
+       }
+      build_starts[build_count] = start;
+      build_ends[build_count] = end;
+      ++build_count;
+    }
+
+   CatmodelTimeSlots build() {
+      return new CatmodelTimeSlots(range_from,range_to,build_starts,build_ends,build_count);
+    }
+
+}	// end of inner class Builder
+
+
+
+}	// end of class CatmodelTimeSlots
+
+
+
+
+/* end of CatmodelTimeSlots.java */
@@ -39,18 +39,15 @@ package edu.brown.cs.catre.catmodel;
 import edu.brown.cs.catre.catre.CatreSubSavableBase;
 import edu.brown.cs.catre.catre.CatreTransition;
 import edu.brown.cs.catre.catre.CatreTransitionRef;
-import edu.brown.cs.catre.catre.CatreUniverse;
 
 import java.util.Map;
 
 import edu.brown.cs.catre.catre.CatreDevice;
-import edu.brown.cs.catre.catre.CatreDeviceListener;
 import edu.brown.cs.catre.catre.CatreReferenceListener;
 import edu.brown.cs.catre.catre.CatreStore;
-import edu.brown.cs.catre.catre.CatreUniverseListener;
 
 class CatmodelTransitionRef extends CatreSubSavableBase implements CatmodelConstants,
-      CatreTransitionRef, CatreDeviceListener, CatreUniverseListener
+      CatreTransitionRef, CatmodelConstants.ModelReference
 {
 
  
@@ -60,7 +57,7 @@ class CatmodelTransitionRef extends CatreSubSavableBase implements CatmodelConst
 /*                                                                              */
 /********************************************************************************/
 
-private CatreUniverse for_universe;
+private CatmodelUniverse for_universe;
 private CatreReferenceListener ref_listener;
 
 private String  device_id;
@@ -68,6 +65,7 @@ private String  transition_name;
 private CatreDevice for_device;
 private CatreTransition for_transition;
 private boolean is_valid;
+private volatile long resolved_epoch;
 
 
 
@@ -77,7 +75,7 @@ private boolean is_valid;
 /*                                                                              */
 /********************************************************************************/
 
-CatmodelTransitionRef(CatreUniverse cu,CatreReferenceListener rl,String devid,String transition)
+CatmodelTransitionRef(CatmodelUniverse cu,CatreReferenceListener rl,String devid,String transition)
 {
    super("TRANSREF_");
    
@@ -90,13 +88,14 @@ CatmodelTransitionRef(CatreUniverse cu,CatreReferenceListener rl,String devid,St
    is_valid = false;
    for_device = null;
    for_transition = null;
+   resolved_epoch = -1;
    validate();
    
-   for_universe.addUniverseListener(this);
+   for_universe.addModelReference(this);
 }
 
 
-CatmodelTransitionRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,Map<String,Object> map)
+CatmodelTransitionRef(CatmodelUniverse cu,CatreReferenceListener rl,CatreStore cs,Map<String,Object> map)
 {
    super("TRANSREF_");
    
@@ -108,8 +107,9 @@ CatmodelTransitionRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,M
    is_valid = false;
    for_device = null;
    for_transition = null;
+   resolved_epoch = -1;
    
-   for_universe.addUniverseListener(this);
+   for_universe.addModelReference(this);
 }
 
 
@@ -120,6 +120,12 @@ CatmodelTransitionRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,M
 }
 
 
+@Override public void revalidate()
+{
+   validate();
+}
+
+
 
 /********************************************************************************/
 /*                                                                              */
@@ -131,6 +137,8 @@ CatmodelTransitionRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,M
 
 @Override public CatreDevice getDevice()                
 {
+   validate();
+   
    if (!is_valid) return null;
    
    return for_device;
@@ -138,6 +146,8 @@ CatmodelTransitionRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,M
 
 @Override public CatreTransition getTransition()          
 { 
+   validate();
+   
    if (!is_valid) return null;
    
    return for_transition;
@@ -158,57 +168,34 @@ CatmodelTransitionRef(CatreUniverse cu,CatreReferenceListener rl,CatreStore cs,M
 
 private void validate()
 {
-   if (for_device == null) {
-      for_device = for_universe.findDevice(device_id);
-      if (for_device != null) {
-         for_device.addDeviceListener(this);
-       }
-    }
+   long epoch = for_universe.getModelEpoch();
+   if (epoch == resolved_epoch) return;
    
-   if (for_device != null && for_transition == null) {
-      for_transition = for_device.findTransition(transition_name);
+   CatreDevice cd = for_universe.findDevice(device_id);
+   CatreTransition ct = null;
+   if (cd != null) {
+      ct = cd.findTransition(transition_name);
     }
-   
-   boolean valid = (for_device != null && for_transition != null && for_device.isEnabled());
-   
-   if (valid != is_valid) {
-      is_valid = valid;
-      if (ref_listener != null) ref_listener.referenceValid(is_valid);
+   boolean valid = (cd != null && ct != null && cd.isEnabled());
+   
+   // epoch is recorded last so readers never see it with stale fields
+   boolean chng = false;
+   synchronized (this) {
+      for_device = cd;
+      for_transition = ct;
+      if (valid != is_valid) {
+         is_valid = valid;
+         chng = true;
+       }
+      resolved_epoch = epoch;
     }
+   
+   if (chng && ref_listener != null) ref_listener.referenceValid(valid);
 }
 
 
 
 
-/********************************************************************************/
-/*                                                                              */
-/*      Callback methods to update the reference                                */
-/*                                                                              */
-/********************************************************************************/
-
-@Override public void deviceEnabled(CatreDevice d,boolean enable)
-{
-   validate();
-}
-
-
-@Override public void deviceAdded(CatreDevice d)
-{
-   if (d.getDeviceId().equals(device_id)) validate();
-}
-
-
-@Override public void deviceRemoved(CatreDevice d)
-{
-   if (for_device == d) {
-      for_device = null;
-      for_transition = null;
-      validate();
-    }
-}
-
-
-
 /********************************************************************************/
 /*                                                                              */
 /*      I/O methods                                                             */
@@ -234,6 +221,7 @@ private void validate()
    transition_name = getSavedString(map,"TRANSITION",transition_name);
    for_device = null;
    for_transition = null;
+   resolved_epoch = -1;
 }
 
 
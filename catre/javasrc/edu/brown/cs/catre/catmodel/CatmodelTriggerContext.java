@@ -83,9 +83,8 @@ CatmodelTriggerContext()
 
 @Override public void addCondition(CatreCondition uc,CatrePropertySet us) 
 {
-   if (us == null) us = uc.getUniverse().createPropertySet();
-   us.put("*TRIGGER*",Boolean.TRUE);
-   pending_triggers.put(uc,us);
+   if (us == null) us = uc.getUniverse().getEmptyPropertySet();
+   pending_triggers.put(uc,us.with("*TRIGGER*",Boolean.TRUE));
 }
 
 
@@ -36,19 +36,28 @@
 
 package edu.brown.cs.catre.catmodel;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.json.JSONObject;
 
-import edu.brown.cs.ivy.swing.SwingEventListenerList;
 import edu.brown.cs.catre.catdev.CatdevFactory;
 import edu.brown.cs.catre.catprog.CatprogFactory;
 import edu.brown.cs.catre.catre.CatreActionValues;
@@ -58,8 +67,11 @@ import edu.brown.cs.catre.catre.CatreTimeSlotEvent;
 import edu.brown.cs.catre.catre.CatreTransitionRef;
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreDevice;
+import edu.brown.cs.catre.catre.CatreDeviceListener;
+import edu.brown.cs.catre.catre.CatreEventBus;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreParameter;
+import edu.brown.cs.catre.catre.CatreParameterHistory;
 import edu.brown.cs.catre.catre.CatreParameterRef;
 import edu.brown.cs.catre.catre.CatreParameterSet;
 import edu.brown.cs.catre.catre.CatreProgram;
@@ -85,21 +97,31 @@ public class CatmodelUniverse extends CatreSavedDescribableBase implements Catre
 /*										*/
 /********************************************************************************/
 
-private SwingEventListenerList<CatreUniverseListener> universe_callbacks;
+private CatreEventBus<CatreUniverseListener> universe_callbacks;
 
 private CatreController catre_control;
+private Executor        universe_mailbox;
 private CatreUser for_user;
 private Set<CatreDevice> all_devices;
+private Map<String,CatreDevice> device_uids;
+private Map<String,CatreDevice> device_ids;
+private Map<String,CatreDevice> device_names;
+private AtomicLong	  model_epoch;
+private List<WeakReference<ModelReference>> model_references;
+private DeviceWatcher	  device_watcher;
 private CatreProgram universe_program;
 private CatdevFactory device_factory;
 private Map<String,CatreBridge> known_bridges;
 private CatprogFactory program_factory;
 
 private CatreParameterSet parameter_values;
-private CatreTriggerContext trigger_context;
-private int		  update_counter;
-private ReentrantLock	  update_lock;
-private Condition	  update_condition;
+private AtomicInteger	  slot_counter;
+private Map<CatreParameter,CatmodelParameterHistory> value_history;
+private Queue<PendingTrigger> pending_triggers;
+private LongAdder	  active_updates;
+private volatile int	  quiesce_waiters;
+private ReentrantLock	  quiesce_lock;
+private Condition	  quiesce_condition;
 
 
 private boolean is_started;
@@ -130,7 +152,8 @@ CatmodelUniverse(CatreController cc,String name,CatreUser cu)
       updateDevices(cb,true);
     }
 
-   updateStored();
+   // save a new universe right away since the user will refer to it
+   catre_control.getDatabase().saveObject(this);
 }
 
 
@@ -159,21 +182,30 @@ CatmodelUniverse(CatreController cc,CatreStore cs,Map<String,Object> map)
 private void initialize(CatreController cc)
 {
    catre_control = cc;
+   universe_mailbox = cc.createMailbox();
    for_user = null;
 
-   parameter_values = new CatmodelParameterSet(this);
-   trigger_context = null;
-   update_counter = 0;
-   update_lock = new ReentrantLock();
-   update_condition = update_lock.newCondition();
+   slot_counter = new AtomicInteger();
+   value_history = new ConcurrentHashMap<>();
+   parameter_values = new CatmodelParameterSet(this,true);
+   pending_triggers = new ConcurrentLinkedQueue<>();
+   active_updates = new LongAdder();
+   quiesce_waiters = 0;
+   quiesce_lock = new ReentrantLock();
+   quiesce_condition = quiesce_lock.newCondition();
 
    device_factory = new CatdevFactory(this);
    program_factory = new CatprogFactory(this);
 
    all_devices = new LinkedHashSet<>();
+   device_uids = new ConcurrentHashMap<>();
+   device_ids = new ConcurrentHashMap<>();
+   device_names = new ConcurrentHashMap<>();
+   model_epoch = new AtomicLong(1);
+   model_references = new ArrayList<>();
+   device_watcher = new DeviceWatcher();
    is_started = false;
-   universe_callbacks = new SwingEventListenerList<CatreUniverseListener>(
-	 CatreUniverseListener.class);
+   universe_callbacks = new CatreEventBus<>(CatreUniverseListener.class);
 
    known_bridges = new HashMap<>();
 }
@@ -197,6 +229,8 @@ private void setupBridges()
 
 @Override public CatreController getCatre()	{ return catre_control; }
 
+@Override public Executor getMailbox()		{ return universe_mailbox; }
+
 @Override public CatreUser getUser()		{ return for_user; }
 
 
@@ -210,69 +244,89 @@ private void setupBridges()
 /*										*/
 /********************************************************************************/
 
-@Override public void updateLock()
-{
-   update_lock.lock();
-}
+/**
+ *	Updates in progress are counted with a striped adder so that
+ *	concurrent device and condition events do not contend.  Only threads
+ *	waiting for the universe to be quiet use a lock; the sum is not an
+ *	atomic snapshot, so waiters also recheck periodically.
+ **/
 
-
-@Override public void updateUnlock()
+@Override public void startUpdate()
 {
-   update_lock.unlock();
+   active_updates.increment();
 }
 
 
-@Override public void startUpdate()
+
+@Override public void endUpdate()
 {
-   update_lock.lock();
-   try {
-      ++update_counter;
-    }
-   finally {
-      update_lock.unlock();
+   active_updates.decrement();
+
+   if (quiesce_waiters > 0 && active_updates.sum() <= 0) {
+      quiesce_lock.lock();
+      try {
+	 quiesce_condition.signalAll();
+       }
+      finally {
+	 quiesce_lock.unlock();
+       }
     }
 }
 
 
-
-@Override public void endUpdate()
+@Override public boolean isUpdating()
 {
-   update_lock.lock();
-   try {
-      --update_counter;
-      if (update_counter == 0)
-	 update_condition.signalAll();
-    }
-   finally {
-      update_lock.unlock();
-    }
+   return active_updates.sum() > 0;
 }
 
 
 @Override public CatreTriggerContext waitForUpdate()
 {
    CatreLog.logD("CATMODEL","Wait for update " + 
-         update_counter + " " + trigger_context);
+         active_updates.sum() + " " + pending_triggers.isEmpty());
    
-   update_lock.lock();
-   try {
-      while (update_counter > 0) {
-	 update_condition.awaitUninterruptibly();
+   if (active_updates.sum() > 0) {
+      quiesce_lock.lock();
+      try {
+	 ++quiesce_waiters;
+	 while (active_updates.sum() > 0) {
+	    try {
+	       quiesce_condition.await(QUIESCE_RECHECK,TimeUnit.MILLISECONDS);
+	     }
+	    catch (InterruptedException e) { }
+	  }
+       }
+      finally {
+	 --quiesce_waiters;
+	 quiesce_lock.unlock();
        }
-      CatreTriggerContext ctx = trigger_context;
-      trigger_context = null;
-      return ctx;
     }
-   finally {
-      update_lock.unlock();
-      CatreLog.logD("CATMODEL","Done update wait");
+   
+   CatreLog.logD("CATMODEL","Done update wait");
+   
+   // each trigger is removed from the queue exactly once, so it goes into
+   // exactly one context
+   CatmodelTriggerContext ctx = null;
+   for ( ; ; ) {
+      PendingTrigger pt = pending_triggers.poll();
+      if (pt == null) break;
+      if (ctx == null) ctx = new CatmodelTriggerContext();
+      ctx.addCondition(pt.getCondition(),pt.getProperties());
     }
+   
+   return ctx;
 }
 
 
 @Override public void setValue(CatreParameter p,Object val)
 {
    parameter_values.putValue(p,val);
+
+   if (p.isSensor() && p instanceof CatmodelParameter) {
+      CatmodelParameterHistory hist = value_history.computeIfAbsent(p,
+	    (k) -> new CatmodelParameterHistory((CatmodelParameter) k));
+      hist.record(System.currentTimeMillis(),val);
+    }
 }
 
 
@@ -282,20 +336,41 @@ private void setupBridges()
 }
 
 
+@Override public CatreParameterHistory getHistory(CatreParameter p)
+{
+   return value_history.get(p);
+}
+
+
+/**
+ *      Return the dense value slot for a parameter, assigning one the first
+ *      time the parameter's value is stored in this universe.
+ **/
+
+int getValueSlot(CatmodelParameter p)
+{
+   int slot = p.getValueSlot();
+   if (slot >= 0) return slot;
+   
+   synchronized (p) {
+      slot = p.getValueSlot();
+      if (slot < 0) {
+         slot = slot_counter.getAndIncrement();
+         p.setValueSlot(slot);
+       }
+    }
+   
+   return slot;
+}
+
+
 @Override public void addTrigger(CatreCondition c0,CatrePropertySet ps)
 {
    CatreCondition c = c0.getActiveCondition();
    
-   if (ps == null) ps = new CatmodelPropertySet();
+   if (ps == null) ps = CatmodelSharedPropertySet.EMPTY;
 
-   update_lock.lock();
-   try {
-      if (trigger_context == null) trigger_context = new CatmodelTriggerContext();
-      trigger_context.addCondition(c,ps);
-    }
-   finally {
-      update_lock.unlock();
-    }
+   pending_triggers.add(new PendingTrigger(c,ps));
 }
 
 
@@ -416,7 +491,7 @@ private void setupBridges()
    for (CatreDevice cd : toupdate) {
       CatreDevice olddev = findDevice(cd.getDeviceId());
       CatreLog.logD("CATMODEL","Update device " + cd.getName());
-      chng |= olddev.update(cd);
+      chng |= updateDevice(olddev,cd);
     }
 
    for (CatreDevice cd : toadd) {
@@ -456,15 +531,47 @@ private void setupBridges()
 {
    if (id == null) return null;
    
-   for (CatreDevice cd : all_devices) {
-      if (cd.getDataUID().equals(id) || 
-            cd.getName().equalsIgnoreCase(id) || 
-            cd.getDeviceId().equals(id))
-         return cd;
-    }
+   CatreDevice cd = device_uids.get(id);
+   if (cd != null) return cd;
+   cd = device_ids.get(id);
+   if (cd != null && id.equals(cd.getDeviceId())) return cd;
+   cd = device_names.get(id.toLowerCase());
+   if (cd != null && id.equalsIgnoreCase(cd.getName())) return cd;
+   
    return null;
 }
 
+
+private boolean updateDevice(CatreDevice olddev,CatreDevice cd)
+{
+   String oname = olddev.getName();
+   String oid = olddev.getDeviceId();
+   
+   // update can rename the device, so reindex after it
+   boolean chng = olddev.update(cd);
+   if (oname != null) device_names.remove(oname.toLowerCase(),olddev);
+   if (oid != null) device_ids.remove(oid,olddev);
+   indexDevice(olddev);
+   
+   return chng;
+}
+
+
+private void indexDevice(CatreDevice cd)
+{
+   if (cd.getDataUID() != null) device_uids.put(cd.getDataUID(),cd);
+   if (cd.getDeviceId() != null) device_ids.put(cd.getDeviceId(),cd);
+   if (cd.getName() != null) device_names.put(cd.getName().toLowerCase(),cd);
+}
+
+
+private void unindexDevice(CatreDevice cd)
+{
+   if (cd.getDataUID() != null) device_uids.remove(cd.getDataUID(),cd);
+   if (cd.getDeviceId() != null) device_ids.remove(cd.getDeviceId(),cd);
+   if (cd.getName() != null) device_names.remove(cd.getName().toLowerCase(),cd);
+}
+
 @Override public void addDevice(CatreDevice cd)
 {
    if (cd == null || all_devices.contains(cd)) return;
@@ -472,13 +579,16 @@ private void setupBridges()
    CatreDevice olddev = findDevice(cd.getDeviceId());
    if (olddev != null) {
       CatreLog.logD("CATMODEL","Old device found: " + cd.getDeviceId());
-      olddev.update(cd);
+      updateDevice(olddev,cd);
       return;
     }
    
    CatreLog.logD("CATMODEL","Add device " + cd.getName() + " to " + getName());
 
    all_devices.add(cd);
+   indexDevice(cd);
+   cd.addDeviceListener(device_watcher);
+   modelChanged();
 
    cd.startDevice();
 
@@ -488,9 +598,22 @@ private void setupBridges()
 }
 
 
+@Override public boolean hasPolledDevices()
+{
+   for (CatreDevice cd : all_devices) {
+      if (cd.isEnabled() && cd.isPolled()) return true;
+    }
+   
+   return false;
+}
+
+
 @Override public void removeDevice(CatreDevice cd)
 {
    if (!all_devices.remove(cd)) return;
+   unindexDevice(cd);
+   cd.removeDeviceListener(device_watcher);
+   modelChanged();
 
    fireDeviceRemoved(cd);
 }
@@ -541,6 +664,12 @@ private void setupBridges()
    return new CatmodelPropertySet();
 }
 
+
+@Override public CatrePropertySet getEmptyPropertySet()
+{
+   return CatmodelSharedPropertySet.EMPTY;
+}
+
 @Override public CatreActionValues createActionValues(CatreParameterSet params)
 {
    CatreActionValues cav = new CatmodelActionValues(params);
@@ -720,11 +849,22 @@ private CatreDevice createAnyDevice(CatreStore cs,Map<String,Object> map)
 }
 
 
+@Override public void stop()
+{
+   if (!is_started) return;
+   is_started = false;
+
+   for (CatreDevice cd : all_devices) {
+      cd.stopDevice();
+    }
+}
+
+
 private void updateStored()
 {
    CatreLog.logD("CATMODEL","Universe " + getName() + " SAVED");
    
-   catre_control.getDatabase().saveObject(this);
+   catre_control.getDatabase().saveObjectLater(this);
 }
 
 
@@ -735,6 +875,50 @@ private void updateStored()
 /*										*/
 /********************************************************************************/
 
+/**
+ *	Parameter and transition references register here rather than as
+ *	individual universe and device listeners.  They are held weakly so
+ *	that discarded conditions do not accumulate.
+ **/
+
+void addModelReference(ModelReference ref)
+{
+   synchronized (model_references) {
+      model_references.add(new WeakReference<>(ref));
+    }
+}
+
+
+@Override public long getModelEpoch()
+{
+   return model_epoch.get();
+}
+
+
+private void modelChanged()
+{
+   model_epoch.incrementAndGet();
+   
+   List<ModelReference> refs = new ArrayList<>();
+   synchronized (model_references) {
+      for (Iterator<WeakReference<ModelReference>> it = model_references.iterator(); it.hasNext(); ) {
+	 ModelReference mr = it.next().get();
+	 if (mr == null) it.remove();
+	 else refs.add(mr);
+       }
+    }
+   
+   for (ModelReference mr : refs) {
+      try {
+	 mr.revalidate();
+       }
+      catch (Throwable t) {
+	 CatreLog.logE("CATMODEL","Problem revalidating reference",t);
+       }
+    }
+}
+
+
 @Override public void addUniverseListener(CatreUniverseListener l)
 {
    universe_callbacks.add(l);
@@ -749,16 +933,12 @@ private void updateStored()
 
 protected void fireDeviceAdded(CatreDevice e)
 {
-   for (CatreUniverseListener ul : universe_callbacks) {
-      ul.deviceAdded(e);
-    }
+   universe_callbacks.fire((ul) -> ul.deviceAdded(e));
 }
 
 protected void fireDeviceRemoved(CatreDevice e)
 {
-   for (CatreUniverseListener ul : universe_callbacks) {
-      ul.deviceRemoved(e);
-    }
+   universe_callbacks.fire((ul) -> ul.deviceRemoved(e));
 }
 
 
@@ -766,9 +946,7 @@ protected void fireUniverseSetup()
 {
    CatreLog.logD("CATMODEL","Fire universe setup");
    
-   for (CatreUniverseListener ul : universe_callbacks) {
-      ul.universeSetup(); 
-    }
+   universe_callbacks.fire((ul) -> ul.universeSetup());
 }
 
 
@@ -780,6 +958,49 @@ protected void fireUniverseSetup()
 }
 
 
+
+/********************************************************************************/
+/*										*/
+/*	Track device changes for the model epoch				*/
+/*										*/
+/********************************************************************************/
+
+private final class DeviceWatcher implements CatreDeviceListener {
+
+   @Override public void deviceEnabled(CatreDevice d,boolean enable) {
+      modelChanged();
+    }
+
+   @Override public void deviceUpdated(CatreDevice d) {
+      modelChanged();
+    }
+
+}	// end of inner class DeviceWatcher
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Trigger waiting for the next update					*/
+/*										*/
+/********************************************************************************/
+
+private static final class PendingTrigger {
+
+   private CatreCondition trigger_condition;
+   private CatrePropertySet trigger_properties;
+   
+   PendingTrigger(CatreCondition c,CatrePropertySet ps) {
+      trigger_condition = c;
+      trigger_properties = ps;
+    }
+   
+   CatreCondition getCondition()			{ return trigger_condition; }
+   CatrePropertySet getProperties()			{ return trigger_properties; }
+
+}	// end of inner class PendingTrigger
+
+
 }	// end of class CatmodelUniverse
 
 
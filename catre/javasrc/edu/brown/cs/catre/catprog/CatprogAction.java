@@ -50,6 +50,7 @@ import edu.brown.cs.catre.catre.CatreActionException;
 import edu.brown.cs.catre.catre.CatreDescribableBase;
 import edu.brown.cs.catre.catre.CatreDevice;
 import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreParameter;
 import edu.brown.cs.catre.catre.CatreParameterSet;
 import edu.brown.cs.catre.catre.CatreProgram;
 import edu.brown.cs.catre.catre.CatrePropertySet;
@@ -69,11 +70,13 @@ class CatprogAction extends CatreDescribableBase
 /********************************************************************************/
 
 private CatreUniverse	for_universe;
+private CatprogProgram	for_program;
 private CatreTransitionRef transition_ref;
 private Map<String,Object> parameter_values;
 private boolean 	is_valid;
 private Boolean         is_trigger;
 private boolean 	needs_name;
+private long		last_sent;
 
 
 
@@ -93,6 +96,8 @@ CatprogAction(CatreProgram p,CatreStore cs,Map<String,Object> map)
    parameter_values = new HashMap<>();
 
    for_universe = p.getUniverse();
+   for_program = (CatprogProgram) p;
+   last_sent = 0;
 
    fromJson(cs,map);
 
@@ -215,8 +220,55 @@ protected void setValid(boolean fg)
     }
    
    CatreParameterSet params = getParameters();
+   CatreTransition ct = transition_ref.getTransition();
+   
+   long now = System.currentTimeMillis();
+   if (isRedundant(ct,params,ps,now)) {
+      CatreLog.logD("CATPROG","Suppress redundant action " + getName());
+      for_program.noteActionSuppressed();
+      return;
+    }
+
+   ct.perform(params,ps);
+   
+   last_sent = now;
+   for_program.noteActionSent();
+}
+
+
 
-   transition_ref.getTransition().perform(params,ps);
+/**
+ *      Check if the device already is in the state this action would put it
+ *      in, based on the universe's current parameter values.  Actions are
+ *      still sent periodically in case the known state is stale.
+ **/
+
+private boolean isRedundant(CatreTransition ct,CatreParameterSet params,
+      CatrePropertySet ps,long now)
+{
+   if (ct.isAlwaysSent()) return false;
+   
+   long reassert = for_program.getReassertInterval();
+   if (reassert > 0 && now - last_sent >= reassert) return false;
+   
+   Map<CatreParameter,Object> effects = ct.getEffects(params,ps);
+   if (effects == null) return false;
+   
+   for (Map.Entry<CatreParameter,Object> ent : effects.entrySet()) {
+      CatreParameter dp = ent.getKey();
+      Object cur = for_universe.getValue(dp);
+      if (cur == null || ent.getValue() == null) return false;
+      Object tgt = dp.normalize(ent.getValue());
+      if (tgt == null) return false;
+      if (tgt.equals(cur)) continue;
+      if (tgt instanceof Number && cur instanceof Number) {
+         if (((Number) tgt).doubleValue() == ((Number) cur).doubleValue()) continue;
+       }
+      else if (dp.unnormalize(tgt).equals(dp.unnormalize(cur))) continue;
+      return false;
+    }
+   
+   return true;
 }
 
 
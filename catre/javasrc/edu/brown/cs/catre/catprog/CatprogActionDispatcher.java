@@ -0,0 +1,294 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatprogActionDispatcher.java                                    */
+/*                                                                              */
+/*      Asynchronous per-device dispatch of rule actions                        */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catprog;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreBridge;
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreDevice;
+import edu.brown.cs.catre.catre.CatreJson;
+import edu.brown.cs.catre.catre.CatreLog;
+
+/**
+ *      Run the actions of rules that fire off the evaluation thread.  Each
+ *      target device has its own queue that runs one outcome at a time in
+ *      order; an outcome that has not started yet is superseded when a newer
+ *      one arrives for the same device.  A device queue is dropped as soon
+ *      as it is idle.  Rules without a target device share one queue that
+ *      runs their outcomes in order without superseding.  Devices sharing a
+ *      bridge are limited in how many can be talking to that bridge at once.
+ **/
+
+class CatprogActionDispatcher implements CatprogConstants, CatreJson
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private CatreController for_catre;
+private Map<CatreDevice,DeviceQueue> device_queues;
+private Map<CatreBridge,BridgeGate> bridge_gates;
+private BridgeGate      local_gate;
+private DeviceQueue     shared_queue;
+private AtomicLong      dispatch_count;
+private AtomicLong      supersede_count;
+private AtomicLong      failure_count;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+CatprogActionDispatcher(CatreController cc)
+{
+   for_catre = cc;
+   device_queues = new ConcurrentHashMap<>();
+   bridge_gates = new ConcurrentHashMap<>();
+   local_gate = new BridgeGate(ACTION_LOCAL_CONCURRENCY);
+   shared_queue = new DeviceQueue(null,local_gate,false);
+   dispatch_count = new AtomicLong();
+   supersede_count = new AtomicLong();
+   failure_count = new AtomicLong();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Dispatch methods                                                        */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Queue the given action runner for the given device (null for rules
+ *      without a target device).  This never blocks on device I/O.
+ **/
+
+void dispatch(CatreDevice cd,CatreBridge bridge,CatprogRule.RuleRunner rr)
+{
+   dispatch_count.incrementAndGet();
+   
+   if (cd == null) {
+      shared_queue.offer(rr);
+      return;
+    }
+   
+   for ( ; ; ) {
+      DeviceQueue dq = device_queues.get(cd);
+      if (dq == null) {
+         BridgeGate gate = local_gate;
+         if (bridge != null) {
+            gate = bridge_gates.computeIfAbsent(bridge,
+                  (b) -> new BridgeGate(ACTION_BRIDGE_CONCURRENCY));
+          }
+         dq = new DeviceQueue(cd,gate,true);
+         DeviceQueue odq = device_queues.putIfAbsent(cd,dq);
+         if (odq != null) dq = odq;
+       }
+      if (dq.offer(rr)) break;
+      // queue went idle and was retired; make sure it is gone and retry
+      device_queues.remove(cd,dq);
+    }
+}
+
+
+
+void noteFailure()
+{
+   failure_count.incrementAndGet();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Statistics                                                              */
+/*                                                                              */
+/********************************************************************************/
+
+JSONObject getStatistics()
+{
+   return buildJson("DISPATCHED",dispatch_count.get(),
+         "SUPERSEDED",supersede_count.get(),
+         "FAILED",failure_count.get(),
+         "QUEUES",device_queues.size());
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Per-device queue                                                        */
+/*                                                                              */
+/********************************************************************************/
+
+private final class DeviceQueue implements Runnable {
+
+   private CatreDevice for_device;
+   private BridgeGate for_gate;
+   private boolean do_supersede;
+   private Deque<CatprogRule.RuleRunner> pending_runners;
+   private boolean is_active;
+   private boolean is_retired;
+   
+   DeviceQueue(CatreDevice cd,BridgeGate gate,boolean supersede) {
+      for_device = cd;
+      for_gate = gate;
+      do_supersede = supersede;
+      pending_runners = new ArrayDeque<>();
+      is_active = false;
+      is_retired = false;
+    }
+   
+   boolean offer(CatprogRule.RuleRunner rr) {
+      boolean start = false;
+      synchronized (this) {
+         if (is_retired) return false;
+         if (do_supersede && !pending_runners.isEmpty()) {
+            pending_runners.poll().supersede();
+            supersede_count.incrementAndGet();
+          }
+         pending_runners.add(rr);
+         if (!is_active) {
+            is_active = true;
+            start = true;
+          }
+       }
+      if (start) for_gate.request(this);
+      return true;
+    }
+   
+   @Override public void run() {
+      CatprogRule.RuleRunner rr = null;
+      synchronized (this) {
+         rr = pending_runners.poll();
+       }
+      
+      boolean more = false;
+      boolean retire = false;
+      try {
+         if (rr != null) rr.run();
+       }
+      catch (Throwable t) {
+         CatreLog.logE("CATPROG","Problem dispatching actions",t);
+       }
+      finally {
+         synchronized (this) {
+            more = !pending_runners.isEmpty();
+            if (!more) {
+               is_active = false;
+               // idle device queues are dropped so they don't accumulate
+               if (for_device != null) {
+                  is_retired = true;
+                  retire = true;
+                }
+             }
+          }
+         if (retire) device_queues.remove(for_device,this);
+         for_gate.release(this,more);
+       }
+    }
+
+}       // end of inner class DeviceQueue
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Per-bridge concurrency limit                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private final class BridgeGate {
+
+   private int max_active;
+   private int num_active;
+   private Deque<DeviceQueue> waiting_queues;
+   
+   BridgeGate(int max) {
+      max_active = max;
+      num_active = 0;
+      waiting_queues = new ArrayDeque<>();
+    }
+   
+   void request(DeviceQueue dq) {
+      synchronized (this) {
+         if (num_active >= max_active) {
+            waiting_queues.add(dq);
+            return;
+          }
+         ++num_active;
+       }
+      for_catre.submit(dq);
+    }
+   
+   void release(DeviceQueue dq,boolean more) {
+      DeviceQueue next = null;
+      synchronized (this) {
+         // a device with more work goes to the back to be fair to others
+         if (more) waiting_queues.add(dq);
+         next = waiting_queues.poll();
+         if (next == null) --num_active;
+       }
+      if (next != null) for_catre.submit(next);
+    }
+
+}       // end of inner class BridgeGate
+
+
+
+}       // end of class CatprogActionDispatcher
+
+
+
+
+/* end of CatprogActionDispatcher.java */
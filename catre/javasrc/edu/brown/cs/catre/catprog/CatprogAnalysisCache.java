@@ -0,0 +1,340 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatprogAnalysisCache.java                                       */
+/*                                                                              */
+/*      Cached rule analysis information for error checking                     */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catprog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreDevice;
+import edu.brown.cs.catre.catre.CatreRule;
+
+/**
+ *      Hold the results of rule analysis so that validating a rule doesn't
+ *      redo work for the rest of the program.  This keeps the rules for each
+ *      target device in priority order, the time slots of each program rule,
+ *      and the errors found for recently checked rules, keyed by the rule's
+ *      content so a rule rebuilt for each validate request still matches.
+ *      The error cache is bounded.  Entries are dropped
+ *      for the affected device when a rule changes, and expire after a while
+ *      since time slots are relative to the current time.
+ **/
+
+class CatprogAnalysisCache implements CatprogConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private CatprogProgram  for_program;
+private Map<CatreDevice,List<CatreRule>> device_rules;
+private Map<CatreRule,CachedSlots> rule_slots;
+private Map<String,CachedErrors> rule_errors;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+CatprogAnalysisCache(CatprogProgram pgm)
+{
+   for_program = pgm;
+   device_rules = new ConcurrentHashMap<>();
+   rule_slots = new ConcurrentHashMap<>();
+   rule_errors = new ConcurrentHashMap<>();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the program rules for a device in priority order
+ **/
+
+List<CatreRule> getDeviceRules(CatreDevice cd)
+{
+   if (cd == null) return findDeviceRules(null);
+   
+   List<CatreRule> rslt = device_rules.get(cd);
+   if (rslt == null) {
+      rslt = findDeviceRules(cd);
+      device_rules.put(cd,rslt);
+    }
+   
+   return rslt;
+}
+
+
+private List<CatreRule> findDeviceRules(CatreDevice cd)
+{
+   List<CatreRule> rslt = new ArrayList<>();
+   for (CatreRule cr : for_program.getRules()) {
+      if (cr.getTargetDevice() == cd) rslt.add(cr);
+    }
+   
+   return rslt;
+}
+
+
+
+/**
+ *      Return the time slots over the next year for a program rule
+ **/
+
+CatprogIntervalSet getTimeSlots(CatreRule cr)
+{
+   long now = System.currentTimeMillis();
+   CachedSlots cs = rule_slots.get(cr);
+   if (cs == null || cs.isExpired(now)) {
+      cs = new CachedSlots(CatprogErrorChecker.computeTimeSlots(cr),now);
+      rule_slots.put(cr,cs);
+    }
+   
+   return cs.getSlots();
+}
+
+
+
+/**
+ *      Return the errors previously found for a rule with the same content,
+ *      or null
+ **/
+
+List<RuleError> findErrors(String signature)
+{
+   CachedErrors ce = rule_errors.get(signature);
+   if (ce == null) return null;
+   if (ce.isExpired(System.currentTimeMillis())) {
+      rule_errors.remove(signature,ce);
+      return null;
+    }
+   
+   return ce.getErrors();
+}
+
+
+void saveErrors(CatprogRule cr,String signature,List<RuleError> errs)
+{
+   long now = System.currentTimeMillis();
+   
+   if (rule_errors.size() >= ANALYSIS_CACHE_SIZE) {
+      CachedErrors oldest = null;
+      String oldkey = null;
+      for (Iterator<Map.Entry<String,CachedErrors>> it = rule_errors.entrySet().iterator();
+         it.hasNext(); ) {
+         Map.Entry<String,CachedErrors> ent = it.next();
+         CachedErrors ce = ent.getValue();
+         if (ce.isExpired(now)) it.remove();
+         else if (oldest == null || ce.getTime() < oldest.getTime()) {
+            oldest = ce;
+            oldkey = ent.getKey();
+          }
+       }
+      if (oldkey != null && rule_errors.size() >= ANALYSIS_CACHE_SIZE) {
+         rule_errors.remove(oldkey,oldest);
+       }
+    }
+   
+   CachedErrors ce = new CachedErrors(cr.getTargetDevice(),errs,now);
+   rule_errors.put(signature,ce);
+}
+
+
+/**
+ *      Return a signature of the content of a rule.  This leaves out the
+ *      ids and creation time, which differ each time a rule is built from
+ *      the same definition.
+ **/
+
+static String getRuleSignature(CatprogRule cr)
+{
+   return canonical(cr.toJson()).toString();
+}
+
+
+private static Object canonical(Object v)
+{
+   if (v instanceof Map) {
+      Map<String,Object> rslt = new TreeMap<>();
+      for (Map.Entry<?,?> ent : ((Map<?,?>) v).entrySet()) {
+         String k = String.valueOf(ent.getKey());
+         if (k.equals("_id") || k.equals("CREATED")) continue;
+         rslt.put(k,canonical(ent.getValue()));
+       }
+      StringBuffer buf = new StringBuffer();
+      buf.append("{");
+      for (Map.Entry<String,Object> ent : rslt.entrySet()) {
+         if (buf.length() > 1) buf.append(",");
+         buf.append(JSONObject.quote(ent.getKey()));
+         buf.append(":");
+         buf.append(ent.getValue());
+       }
+      buf.append("}");
+      return buf;
+    }
+   else if (v instanceof Collection || v instanceof JSONArray || v instanceof Object []) {
+      Iterable<?> itms;
+      if (v instanceof Object []) itms = List.of((Object []) v);
+      else itms = (Iterable<?>) v;
+      StringBuffer buf = new StringBuffer();
+      buf.append("[");
+      for (Object o : itms) {
+         if (buf.length() > 1) buf.append(",");
+         buf.append(canonical(o));
+       }
+      buf.append("]");
+      return buf;
+    }
+   else if (v == null) return "null";
+   else if (v instanceof String) return JSONObject.quote((String) v);
+   
+   return JSONObject.valueToString(v);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Invalidation methods                                                    */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Note that a rule was added to or removed from the program.  This
+ *      affects only analysis involving rules for the same device.
+ **/
+
+void invalidate(CatreRule cr)
+{
+   if (cr == null) return;
+   
+   CatreDevice cd = cr.getTargetDevice();
+   rule_slots.remove(cr);
+   if (cd != null) device_rules.remove(cd);
+   
+   for (Iterator<CachedErrors> it = rule_errors.values().iterator(); it.hasNext(); ) {
+      CachedErrors ce = it.next();
+      if (ce.getDevice() == cd) it.remove();
+    }
+}
+
+
+void clear()
+{
+   device_rules.clear();
+   rule_slots.clear();
+   rule_errors.clear();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Cache entries                                                           */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class CachedSlots {
+   
+   private CatprogIntervalSet time_slots;
+   private long compute_time;
+   
+   CachedSlots(CatprogIntervalSet slots,long when) {
+      time_slots = slots;
+      compute_time = when;
+    }
+   
+   CatprogIntervalSet getSlots()                { return time_slots; }
+   
+   boolean isExpired(long now) {
+      return now - compute_time > ANALYSIS_CACHE_TIME;
+    }
+   
+}       // end of inner class CachedSlots
+
+
+
+private static final class CachedErrors {
+   
+   private CatreDevice for_device;
+   private List<RuleError> rule_errors;
+   private long compute_time;
+   
+   CachedErrors(CatreDevice cd,List<RuleError> errs,long when) {
+      for_device = cd;
+      rule_errors = errs;
+      compute_time = when;
+    }
+   
+   CatreDevice getDevice()                      { return for_device; }
+   List<RuleError> getErrors()                  { return rule_errors; }
+   long getTime()                               { return compute_time; }
+   
+   boolean isExpired(long now) {
+      return now - compute_time > ANALYSIS_CACHE_TIME;
+    }
+   
+}       // end of inner class CachedErrors
+
+
+
+}       // end of class CatprogAnalysisCache
+
+
+
+
+/* end of CatprogAnalysisCache.java */
@@ -44,13 +44,14 @@ import edu.brown.cs.catre.catre.CatreConditionException;
 import edu.brown.cs.catre.catre.CatreConditionListener;
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreDescribableBase;
+import edu.brown.cs.catre.catre.CatreEventBus;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreParameterRef;
 import edu.brown.cs.catre.catre.CatrePropertySet;
 import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreTimeSlotEvent;
+import edu.brown.cs.catre.catre.CatreTimer;
 import edu.brown.cs.catre.catre.CatreUniverse;
-import edu.brown.cs.ivy.swing.SwingEventListenerList;
 
 abstract class CatprogCondition extends CatreDescribableBase implements CatreCondition, CatprogConstants
 {
@@ -64,7 +65,7 @@ abstract class CatprogCondition extends CatreDescribableBase implements CatreCon
 /********************************************************************************/
 
 private CondState	cond_state;
-private SwingEventListenerList<CatreConditionListener> condition_handlers;
+private CatreEventBus<CatreConditionListener> condition_handlers;
 protected CatprogProgram for_program;
 private boolean 	is_valid;
 private boolean         is_shared;
@@ -82,7 +83,7 @@ protected CatprogCondition(CatprogProgram pgm)
    super(null);
    for_program = pgm;
    cond_state = new CondState();
-   condition_handlers = new SwingEventListenerList<>(CatreConditionListener.class);
+   condition_handlers = new CatreEventBus<>(CatreConditionListener.class);
    is_valid = true;
    is_shared = false;
 }
@@ -94,7 +95,7 @@ protected CatprogCondition(CatprogCondition cc)
    super(null,cc);
    for_program = cc.for_program;
    cond_state = new CondState();
-   condition_handlers = new SwingEventListenerList<>(CatreConditionListener.class);
+   condition_handlers = new CatreEventBus<>(CatreConditionListener.class);
    is_valid = cc.is_valid;
    is_shared = cc.is_shared;
 }
@@ -107,7 +108,7 @@ protected CatprogCondition(CatprogProgram pgm,CatreStore cs,Map<String,Object> m
    cond_state = new CondState();
    is_valid = false;
 
-   condition_handlers = new SwingEventListenerList<>(CatreConditionListener.class);
+   condition_handlers = new CatreEventBus<>(CatreConditionListener.class);
 
    fromJson(cs,map);
 }
@@ -127,6 +128,16 @@ CatreController getCatre()
    return getUniverse().getCatre();
 }
 
+
+/**
+ *      Schedule a timer whose task runs in the universe's mailbox
+ **/
+
+CatreTimer scheduleTimer(Runnable task,long delay)
+{
+   return getCatre().scheduleTimer(task,delay,getUniverse().getMailbox());
+}
+
 @Override public boolean isTrigger()				{ return false; }
 
 @Override public boolean isValid()				{ return is_valid; }
@@ -202,6 +213,13 @@ CatreTimeSlotEvent getTimeSlotEvent()                           { return null; }
 
 boolean contradicts(CatreCondition cc)                          { return false; }
 
+/**
+ *      Return a key such that this condition can only contradict conditions
+ *      with the same key, or null if it can't contradict anything.
+ **/
+
+Object getContradictionKey()                                    { return null; }
+
 
 
 /********************************************************************************/
@@ -221,7 +239,7 @@ boolean contradicts(CatreCondition cc)                          { return false;
 
 @Override public void removeConditionHandler(CatreConditionListener hdlr)
 {
-   condition_handlers.add(hdlr);
+   condition_handlers.remove(hdlr);
 }
 
 protected boolean hasConditionHandlers() 
@@ -277,9 +295,9 @@ CatreParameterRef getActiveSensor()
 /*										*/
 /********************************************************************************/
 
-protected void fireOn(CatrePropertySet input)
+protected void fireOn(CatrePropertySet ps)
 {
-   if (input == null) input = getUniverse().createPropertySet();
+   CatrePropertySet input = (ps == null ? getUniverse().getEmptyPropertySet() : ps);
    
    CatreLog.logD("CATPROG","On firing for condition " + getName() +
          " " + condition_handlers.getListenerCount());
@@ -290,14 +308,7 @@ protected void fireOn(CatrePropertySet input)
       if (!cs.setOn(input)) return;
       CatreLog.logD("CATPROG","Condition firing");
 
-      for (CatreConditionListener ch : condition_handlers) {
-	 try {
-	    ch.conditionOn(this,input);
-	  }
-	 catch (Throwable t) {
-	    CatreLog.logE("CATMODEL","Problem with condition handler",t);
-	  }
-       }
+      condition_handlers.fire((ch) -> ch.conditionOn(this,input));
     }
    finally {
       getUniverse().endUpdate();
@@ -305,22 +316,15 @@ protected void fireOn(CatrePropertySet input)
 }
 
 
-protected void fireTrigger(CatrePropertySet input)
+protected void fireTrigger(CatrePropertySet ps)
 {
-   if (input == null) input = getUniverse().createPropertySet();
+   CatrePropertySet input = (ps == null ? getUniverse().getEmptyPropertySet() : ps);
    
    CatreLog.logD("CATPROG","Trigger firing for condition " + getName());
 
    getUniverse().startUpdate();
    try {
-      for (CatreConditionListener ch : condition_handlers) {
-	 try {
-	    ch.conditionTrigger(this,input);
-	  }
-	 catch (Throwable t) {
-	    CatreLog.logE("CATMODEL","Problem with condition handler",t);
-	  }
-       }
+      condition_handlers.fire((ch) -> ch.conditionTrigger(this,input));
     }
    finally {
       getUniverse().endUpdate();
@@ -338,14 +342,7 @@ protected void fireOff()
       CondState cs = cond_state;
       if (!cs.setOff()) return;
 
-      for (CatreConditionListener ch : condition_handlers) {
-	 try {
-	    ch.conditionOff(this);
-	  }
-	 catch (Throwable t) {
-	    CatreLog.logE("CATMODEL","Problem with condition handler",t);
-	  }
-       }
+      condition_handlers.fire((ch) -> ch.conditionOff(this));
     }
    finally {
       getUniverse().endUpdate();
@@ -360,14 +357,7 @@ protected void fireError(Throwable cause)
       CondState cs = cond_state;
       if (!cs.setError(cause)) return;
 
-      for (CatreConditionListener ch : condition_handlers) {
-	 try {
-	    ch.conditionError(this,cause);
-	  }
-	 catch (Throwable t) {
-	    CatreLog.logE("CATMODEL","Problem with condition handler",t);
-	  }
-       }
+      condition_handlers.fire((ch) -> ch.conditionError(this,cause));
     }
    finally {
       getUniverse().endUpdate();
@@ -379,14 +369,7 @@ protected void fireValidated()
 {
    boolean valid = isValid();
 
-   for (CatreConditionListener ch : condition_handlers) {
-      try {
-	 ch.conditionValidated(this,valid);
-       }
-      catch (Throwable t) {
-	 CatreLog.logE("CATMODEL","Problem with condition handler",t);
-       }
-    }
+   condition_handlers.fire((ch) -> ch.conditionValidated(this,valid));
 }
 
 
@@ -460,8 +443,7 @@ private class CondState {
    //  }
       
       error_condition = null;
-      on_parameters = getUniverse().createPropertySet();
-      on_parameters.putAll(ps);
+      on_parameters = (ps == null ? getUniverse().getEmptyPropertySet() : ps.freeze());
       return true;
     }
 
@@ -37,13 +37,13 @@
 package edu.brown.cs.catre.catprog;
 
 import java.util.Map;
-import java.util.TimerTask;
 
 
 import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreConditionListener;
 import edu.brown.cs.catre.catre.CatrePropertySet;
 import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTimer;
 
 class CatprogConditionDebounce extends CatprogCondition
 {
@@ -219,7 +219,7 @@ private final class CondChanged implements CatreConditionListener {
 
 private class StateRepr {
    
-   private TimerTask timer_task;
+   private CatreTimer timer_task;
    private Throwable error_cause;
    private CatrePropertySet on_params;
    private long start_time;
@@ -283,10 +283,11 @@ private class StateRepr {
       else end = start_time + min_offtime;
       
       end_time = end;
+      if (timer_task != null) timer_task.cancel();
+      timer_task = null;
       if (end_time > now) {
          long delay = end_time - now;
-         timer_task = new TimeChanged();
-         getCatre().schedule(timer_task,delay);
+         timer_task = scheduleTimer(new TimeChanged(),delay);
        }
       else checkCommit();
     }
@@ -295,7 +296,7 @@ private class StateRepr {
 
 
 
-private class TimeChanged extends TimerTask {
+private class TimeChanged implements Runnable {
    
    TimeChanged() { }
    
@@ -38,12 +38,12 @@ package edu.brown.cs.catre.catprog;
 
 import java.util.Calendar;
 import java.util.Map;
-import java.util.TimerTask;
 
 import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreConditionListener;
 import edu.brown.cs.catre.catre.CatrePropertySet;
 import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTimer;
 
 
 /********************************************************************************/
@@ -195,7 +195,7 @@ private final class CondChanged implements CatreConditionListener {
 
 private class StateRepr {
    
-   private TimerTask timer_task;
+   private CatreTimer timer_task;
    private Throwable error_cause;
    private CatrePropertySet on_params;
    private long start_time;
@@ -283,8 +283,7 @@ private class StateRepr {
       timer_task = null;
       long delay = off - now;
       if (delay <= 0) return;
-      timer_task = new TimeChanged();
-      getCatre().schedule(timer_task,delay);
+      timer_task = scheduleTimer(new TimeChanged(),delay);
     }
    
    private void updateStatus() {
@@ -303,7 +302,7 @@ private class StateRepr {
 
 
 
-private final class TimeChanged extends TimerTask {
+private final class TimeChanged implements Runnable {
 
    @Override public void run() {
       if (active_state != null) active_state.checkReset();
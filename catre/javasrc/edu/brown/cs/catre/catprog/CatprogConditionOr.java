@@ -218,9 +218,9 @@ private class StateRepr {
       if (error_cause.isEmpty()) {
          if (!cur_values.isEmpty()) {
             if (!is_on) {
-               CatrePropertySet rslt = getUniverse().createPropertySet();
+               CatrePropertySet rslt = getUniverse().getEmptyPropertySet();
                for (CatrePropertySet ps : cur_values.values()) {
-                  rslt.putAll(ps);
+                  rslt = rslt.merge(ps);
                 }
                fireOn(rslt);
                is_on = true;
@@ -157,9 +157,7 @@ public Object getState()		      { return for_state; }
 
 private CatrePropertySet getResultProperties()
 {
-   CatrePropertySet ps = getUniverse().createPropertySet();
-   ps.put(param_ref.getParameterName(),for_state);
-   return ps;
+   return getUniverse().getEmptyPropertySet().with(param_ref.getParameterName(),for_state);
 }
 
 
@@ -197,6 +195,14 @@ private boolean checkValid()
 
 
 
+@Override Object getContradictionKey()
+{
+   if (!param_ref.isValid()) return null;
+   
+   return param_ref.getParameter();
+}
+
+
 @Override boolean contradicts(CatreCondition cc)
 {
    if (cc instanceof CatprogConditionParameter) {
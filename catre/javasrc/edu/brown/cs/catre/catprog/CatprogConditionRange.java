@@ -190,9 +190,7 @@ private CatprogConditionRange(CatprogConditionRange cc)
 
 private CatrePropertySet getResultProperties(Object val)
 {
-   CatrePropertySet ps = getUniverse().createPropertySet();
-   ps.put(param_ref.getParameterName(),val.toString());
-   return ps;
+   return getUniverse().getEmptyPropertySet().with(param_ref.getParameterName(),val);
 }
 
 
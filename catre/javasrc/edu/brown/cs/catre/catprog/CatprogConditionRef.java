@@ -185,7 +185,7 @@ CatprogConditionRef(CatprogConditionRef cr)
    
    if (cond_handler != null && !hasConditionHandlers()) {
       CatreLog.logD("CATPROG","Remove handler condition handler for ref");
-      if (base_condition != null) base_condition.removeConditionHandler(hdlr);
+      if (base_condition != null) base_condition.removeConditionHandler(cond_handler);
       cond_handler = null;
     }
 }
@@ -37,15 +37,13 @@
 package edu.brown.cs.catre.catprog;
 
 
-import java.util.Calendar;
-import java.util.List;
 import java.util.Map;
-import java.util.TimerTask;
 
 import edu.brown.cs.catre.catre.CatreTimeSlotEvent;
 import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTimer;
 
 
 class CatprogConditionTime extends CatprogCondition
@@ -61,6 +59,7 @@ class CatprogConditionTime extends CatprogCondition
 
 private CatreTimeSlotEvent	timeslot_event;
 private boolean is_active;
+private CatreTimer	check_timer;
 
 
 
@@ -75,6 +74,7 @@ CatprogConditionTime(CatprogProgram pgm,CatreStore cs,Map<String,Object> map)
    super(pgm,cs,map);
 
    is_active = false;
+   check_timer = null;
    setValid(true);
 }
 
@@ -85,6 +85,7 @@ private CatprogConditionTime(CatprogConditionTime cc)
 
    timeslot_event = cc.timeslot_event;
    is_active = false;
+   check_timer = null;
    setValid(true);
 }
 
@@ -142,28 +143,12 @@ private void setupTimer()
 {
    long delay = T_DAY;			// check at least every day
    long now = System.currentTimeMillis();
-   Calendar c0 = Calendar.getInstance();
-   c0.setTimeInMillis(now);
-   Calendar c1 = Calendar.getInstance();
-   c1.setTimeInMillis(now + delay);
-   List<Calendar> slots = timeslot_event.getSlots(c0,c1);
-   if (slots != null && slots.size() > 0) {
-      Calendar s0 = slots.get(0);
-      long t0 = s0.getTimeInMillis();
-      long t1 = 0;
-      if (slots.size() > 1) {
-	 Calendar s1 = slots.get(1);
-	 t1 = s1.getTimeInMillis();
-       }
-      if (t0 == 0 || t0 <= now) {
-	 setTime();
-	 delay = t1-now;
-       }
-      else delay = t0-now;
-    }
+   long next = timeslot_event.getNextBoundary(now);
+   if (next > now && next - now < delay) delay = next - now;
    CatreLog.logI("CATPROG","Set timer for condition " + getLabel() + 
          " = " + delay + " " + (delay/1000/60));
-   getCatre().schedule(new CondChecker(),delay);
+   if (check_timer != null) check_timer.cancel();
+   check_timer = scheduleTimer(new CondChecker(),delay);
 }
 
 
@@ -207,7 +192,7 @@ private void setupTimer()
 /*										*/
 /********************************************************************************/
 
-private final class CondChecker extends TimerTask {
+private final class CondChecker implements Runnable {
 
    @Override public void run() {
       setTime();
@@ -49,6 +49,19 @@ public interface CatprogConstants
 /********************************************************************************/
 
 long    RUN_DELAY = 5000;               // delay after change in ms
+long    MIN_RUN_DELAY = 250;            // minimum quiet period in ms
+long    UPDATE_RECHECK_DELAY = 50;      // recheck delay while universe updating
+long    ADAPTIVE_IDLE_FACTOR = 12;      // idle periods before tightening delay
+long    ADAPTIVE_DIVISOR = 4;           // reduction of delay when idle
+int     PARALLEL_DEVICE_THRESHOLD = 4;  // min devices for parallel evaluation
+int     PLAN_REORDER_COUNT = 64;        // evaluations between plan reordering
+int     CRON_SEARCH_YEARS = 28;         // calendar cycle bounding trigger search
+int     ACTION_BRIDGE_CONCURRENCY = 4;  // devices acting at once per bridge
+int     ACTION_LOCAL_CONCURRENCY = 8;   // devices acting at once without a bridge
+int     ACTION_RETRY_LIMIT = 3;         // failed outcomes re-evaluated per rule
+long    ACTION_REASSERT_INTERVAL = 900000; // resend matching commands after this in ms
+long    ANALYSIS_CACHE_TIME = 600000; // validity of cached rule analysis in ms
+int     ANALYSIS_CACHE_SIZE = 100;    // maximum cached rule error results
 
 
 
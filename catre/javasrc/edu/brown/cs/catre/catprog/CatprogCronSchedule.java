@@ -0,0 +1,395 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatprogCronSchedule.java                                        */
+/*                                                                              */
+/*      Next fire time computation for cron-style time specifications           */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catprog;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ *      Represent a cron-style time specification (minute hour day month
+ *      weekday) and compute the next time it fires.  Rather than stepping
+ *      through time, the computation jumps directly to the next set bit of
+ *      each field, so distant and sparse schedules cost about the same as
+ *      dense ones.  Both the day of month and the day of week must match.
+ **/
+
+public final class CatprogCronSchedule implements CatprogConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BitSet          minute_check;
+private BitSet          hour_check;
+private BitSet          day_check;
+private BitSet          month_check;
+private BitSet          weekday_check;
+private ZoneId          time_zone;
+
+private static HashMap<String,Integer> value_map;
+
+static {
+   value_map = new HashMap<String,Integer>();
+   value_map.put("SUN",0);
+   value_map.put("MON",1);
+   value_map.put("TUE",2);
+   value_map.put("WED",3);
+   value_map.put("THU",4);
+   value_map.put("FRI",5);
+   value_map.put("SAT",6);
+   value_map.put("JAN",1);
+   value_map.put("FEB",2);
+   value_map.put("MAR",3);
+   value_map.put("APR",4);
+   value_map.put("MAY",5);
+   value_map.put("JUN",6);
+   value_map.put("JUL",7);
+   value_map.put("AUG",8);
+   value_map.put("SEP",9);
+   value_map.put("OCT",10);
+   value_map.put("NOV",11);
+   value_map.put("DEC",12);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+public CatprogCronSchedule(String desc)
+{
+   this(desc,ZoneId.systemDefault());
+}
+
+
+public CatprogCronSchedule(String desc,ZoneId zone)
+{
+   time_zone = zone;
+   
+   StringTokenizer tok = new StringTokenizer(desc == null ? "" : desc);
+   minute_check = decodeSet(nextField(tok),0,59);
+   hour_check = decodeSet(nextField(tok),0,23);
+   day_check = decodeSet(nextField(tok),1,31);
+   month_check = decodeSet(nextField(tok),1,12);
+   weekday_check = decodeSet(nextField(tok),0,7);
+   if (weekday_check.get(7)) {
+      weekday_check.set(0);
+      weekday_check.clear(7);
+    }
+}
+
+
+
+private static String nextField(StringTokenizer tok)
+{
+   if (!tok.hasMoreTokens()) return null;
+   return tok.nextToken();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+public ZoneId getTimeZone()                     { return time_zone; }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Next fire computation                                                   */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the first time strictly after start at which the specification
+ *      fires, or -1 if it never does.  Local times skipped by a daylight
+ *      savings transition fire at the corresponding instant after the gap;
+ *      local times repeated by a transition fire only once.
+ **/
+
+public long nextFire(long start)
+{
+   ZonedDateTime zstart = Instant.ofEpochMilli(start).atZone(time_zone);
+   LocalDateTime t = zstart.toLocalDateTime().truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+   int maxyear = t.getYear() + CRON_SEARCH_YEARS;
+   
+   while (t != null) {
+      t = nextLocal(t,maxyear);
+      if (t == null) break;
+      long rslt = resolveLocal(t);
+      if (rslt > start) return rslt;
+      t = t.plusMinutes(1);
+    }
+   
+   return -1;
+}
+
+
+
+private LocalDateTime nextLocal(LocalDateTime start,int maxyear)
+{
+   LocalDateTime t = start;
+   
+   while (t.getYear() <= maxyear) {
+      int mon = month_check.nextSetBit(t.getMonthValue());
+      if (mon < 0 || mon > 12) {
+         t = LocalDateTime.of(t.getYear()+1,1,1,0,0);
+         continue;
+       }
+      if (mon != t.getMonthValue()) {
+         t = LocalDateTime.of(t.getYear(),mon,1,0,0);
+       }
+      
+      int day = nextDay(t);
+      if (day < 0) {
+         t = t.toLocalDate().withDayOfMonth(1).plusMonths(1).atStartOfDay();
+         continue;
+       }
+      if (day != t.getDayOfMonth()) {
+         t = t.toLocalDate().withDayOfMonth(day).atStartOfDay();
+       }
+      
+      int hour = hour_check.nextSetBit(t.getHour());
+      if (hour < 0 || hour > 23) {
+         t = t.toLocalDate().plusDays(1).atStartOfDay();
+         continue;
+       }
+      if (hour != t.getHour()) {
+         t = t.withHour(hour).withMinute(0);
+       }
+      
+      int min = minute_check.nextSetBit(t.getMinute());
+      if (min < 0 || min > 59) {
+         t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+         continue;
+       }
+      
+      return t.withMinute(min);
+    }
+   
+   return null;
+}
+
+
+
+private int nextDay(LocalDateTime t)
+{
+   int len = t.toLocalDate().lengthOfMonth();
+   int dow0 = t.getDayOfWeek().getValue() % 7;
+   int dom0 = t.getDayOfMonth();
+   
+   for (int day = day_check.nextSetBit(dom0); day >= 0 && day <= len;
+         day = day_check.nextSetBit(day+1)) {
+      int dow = (dow0 + day - dom0) % 7;
+      if (weekday_check.get(dow)) return day;
+    }
+   
+   return -1;
+}
+
+
+
+private long resolveLocal(LocalDateTime t)
+{
+   List<ZoneOffset> offsets = time_zone.getRules().getValidOffsets(t);
+   if (offsets.isEmpty()) {
+      // in a gap: fire at the instant the local time would have been
+      return ZonedDateTime.ofLocal(t,time_zone,null).toInstant().toEpochMilli();
+    }
+   
+   // in an overlap use the earlier occurrence only
+   return t.toInstant(offsets.get(0)).toEpochMilli();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Set encode and decode methods                                           */
+/*                                                                              */
+/********************************************************************************/
+
+private static BitSet decodeSet(String what,int min,int max) 
+{
+   BitSet rslt = new BitSet();
+   
+   if (what == null || what.equals("*")) {
+      rslt.set(min,max+1);
+    }
+   else {
+      StringTokenizer tok = new StringTokenizer(what,",-/",true);
+      int last = min;
+      int from = -1;
+      int to = -1;
+      String next = null;
+      while (tok.hasMoreTokens()) {
+	 String t = next;
+	 if (t == null) t = tok.nextToken();
+	 else next = null;
+         
+	 if (t.equals(",")) {
+	    from = -1;
+	    continue;
+	  }
+	 else if (t.equals("-")) {
+	    from = last;
+	    continue;
+	  }
+	 else if (Character.isDigit(t.charAt(0))) {
+	    try {
+	       last = Integer.parseInt(t);
+	     }
+	    catch (NumberFormatException e) {
+	       continue;
+	     }
+	    if (from < 0) rslt.set(last);
+	    else if (to > 0) {
+	       int d = last;
+	       last = from;
+	       for (int i = from; i <= to; i += d) {
+		  rslt.set(i);
+		  last = i;
+		}
+	       from = -1;
+               to = -1;
+	     }
+	    else {
+	       if (tok.hasMoreTokens()) next = tok.nextToken();
+	       if (next != null && next.equals("/")) {
+		  to = last;
+		  continue;
+		}
+	       rslt.set(from,last+1);
+	     }
+	    from = -1;
+	  }
+	 else {
+	    if (t.length() > 3) t = t.substring(0,3);
+	    t = t.toUpperCase();
+	    Integer v = value_map.get(t);
+	    if (v != null) rslt.set(v);
+	  }
+       }
+    }
+   
+   return rslt;
+}
+
+
+
+private static String encodeSet(BitSet s)
+{
+   StringBuffer buf = new StringBuffer();
+   if (s.cardinality() == 0) return "*";
+   
+   int last = -1;
+   int from = -1;
+   for ( ; ; ) {
+      int next = s.nextSetBit(last+1);
+      if (next == last+1 && last >= 0) {
+	 if (from < 0) from = last;
+       }
+      else {
+	 if (from >= 0) {
+	    buf.append("-");
+	    buf.append(last);
+	    from = -1;
+	  }
+	 if (next >= 0) {
+	    if (buf.length() > 0) buf.append(",");
+	    buf.append(next);
+	  }
+       }
+      if (next < 0) break;
+      last = next;
+    }
+   
+   return buf.toString();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Output methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public String toString()
+{
+   StringBuffer buf = new StringBuffer();
+   buf.append(encodeSet(minute_check));
+   buf.append(" ");
+   buf.append(encodeSet(hour_check));
+   buf.append(" ");
+   buf.append(encodeSet(day_check));
+   buf.append(" ");
+   buf.append(encodeSet(month_check));
+   buf.append(" ");
+   buf.append(encodeSet(weekday_check));
+   
+   return buf.toString();
+}
+
+
+
+}       // end of class CatprogCronSchedule
+
+
+
+
+/* end of CatprogCronSchedule.java */
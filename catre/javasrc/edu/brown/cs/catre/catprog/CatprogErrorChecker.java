@@ -37,8 +37,9 @@ package edu.brown.cs.catre.catprog;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import edu.brown.cs.catre.catre.CatreAction;
 import edu.brown.cs.catre.catre.CatreCondition;
@@ -59,7 +60,7 @@ class CatprogErrorChecker implements CatprogConstants
 
 private CatprogProgram  for_program;
 private CatprogRule     for_rule;
-private List<TimeInterval> rule_intervals;
+private CatprogIntervalSet rule_intervals;
 
 
 
@@ -74,7 +75,7 @@ CatprogErrorChecker(CatprogProgram pgm,CatprogRule rule)
    for_program = pgm;
    for_rule = rule;
    
-   rule_intervals = getTimeSlots(for_rule);
+   rule_intervals = computeTimeSlots(for_rule);
    
    CatreLog.logD("CATPROG","Error check " + rule.getDescription());
    CatreLog.logD("CATPROG","\tIntervals: " + rule_intervals);
@@ -130,12 +131,32 @@ private void checkCanFire(List<RuleError> errors)
 
 private void checkParameterConditions(List<RuleError> errors)
 {
-   List<CatreCondition> conds = for_rule.getConditions();
+   // only conditions on the same parameter can contradict each other
+   Map<Object,List<CatprogCondition>> buckets = new LinkedHashMap<>();
+   for (CatreCondition cc : for_rule.getConditions()) {
+      CatprogCondition cpc = (CatprogCondition) cc;
+      Object key = cpc.getContradictionKey();
+      if (key == null) continue;
+      List<CatprogCondition> conds = buckets.get(key);
+      if (conds == null) {
+         conds = new ArrayList<>();
+         buckets.put(key,conds);
+       }
+      conds.add(cpc);
+    }
    
+   for (List<CatprogCondition> conds : buckets.values()) {
+      checkParameterConditions(conds,errors);
+    }
+}
+
+
+private void checkParameterConditions(List<CatprogCondition> conds,List<RuleError> errors)
+{
    for (int i = 0; i < conds.size(); ++i) {
-      CatprogCondition cc0 = (CatprogCondition) conds.get(i);
+      CatprogCondition cc0 = conds.get(i);
       for (int j = i+1; j < conds.size(); ++j) {
-         CatprogCondition cc1 = (CatprogCondition) conds.get(j);
+         CatprogCondition cc1 = conds.get(j);
          if (cc0.contradicts(cc1)) {
             CheckError ce = new CheckError(ErrorLevel.ERROR,
                   "Rule contains contradictor conditions: " +
@@ -212,8 +233,7 @@ private void checkValid(List<RuleError> errors)
 private void checkOccludedRules(List<RuleError> errors)
 {
    boolean higher = true;
-   for (CatreRule cr : for_program.getRules()) {
-      if (cr.getTargetDevice() != for_rule.getTargetDevice()) continue;
+   for (CatreRule cr : for_program.getDeviceRules(for_rule.getTargetDevice())) {
       boolean othercond = false;
       boolean havetime = false;
       for (CatreCondition ccc : cr.getConditions()) {
@@ -236,18 +256,16 @@ private void checkOccludedRules(List<RuleError> errors)
       
       if (higher) {
          if (othercond) continue;       // this rule is conditional -- don't check   
-         List<TimeInterval> crtimes = getTimeSlots(cr);
-         List<TimeInterval> usetimes = subtractIntervals(rule_intervals,crtimes);
-         if (usetimes.isEmpty()) {
+         CatprogIntervalSet crtimes = for_program.getTimeSlots(cr);
+         if (rule_intervals.isCoveredBy(crtimes)) {
             CheckError ce = new CheckError(ErrorLevel.ERROR,
                   "Higher priority rule " + cr.getName() + " prevents this rule from occurring");
             errors.add(ce);
           }
        } 
       else if (!higher) {
-         List<TimeInterval> crtimes = getTimeSlots(cr);
-         List<TimeInterval> usetimes = subtractIntervals(crtimes,rule_intervals);
-         if (usetimes.isEmpty()) {
+         CatprogIntervalSet crtimes = for_program.getTimeSlots(cr);
+         if (crtimes.isCoveredBy(rule_intervals)) {
             CatreLog.logD("CATPROG","No intervals with " + crtimes + " " + rule_intervals);
             CheckError ce = new CheckError(ErrorLevel.ERROR,
                   "This rule prevents the rule " + cr.getName() + " from occurring");
@@ -329,144 +347,35 @@ private void checkTriggers(List<RuleError> errors)
 /*                                                                              */
 /********************************************************************************/
 
-private List<TimeInterval> getTimeSlots(CatreRule cr)
+static CatprogIntervalSet computeTimeSlots(CatreRule cr)
 {
    Calendar now = Calendar.getInstance();
    now.add(Calendar.DAY_OF_YEAR,-1);
    Calendar later = Calendar.getInstance();
    later.add(Calendar.YEAR,1);
    
-   List<TimeInterval> rslt = null;
+   CatprogIntervalSet rslt = null;
    
    for (CatreCondition ccc : cr.getConditions()) {
       CatprogCondition cc = (CatprogCondition) ccc;
       CatreTimeSlotEvent evt = cc.getTimeSlotEvent();
       if (evt == null) continue;
       List<Calendar> slots = evt.getSlots(now,later);
-      List<TimeInterval> intervals = buildIntervals(evt,slots);
+      CatprogIntervalSet intervals = CatprogIntervalSet.fromSlots(slots);
       if (rslt == null) rslt = intervals;
       else {
-         rslt = intersectIntervals(rslt,intervals);
+         rslt = rslt.intersect(intervals);
        }
     }
    if (rslt == null) {
       // if no time slot for the rule, then it can always fire
-      // might want to do this first, and then depend on intersection
-      rslt = new ArrayList<>();
-      rslt.add(new TimeInterval(now,later));
+      rslt = CatprogIntervalSet.fromRange(now.getTimeInMillis(),later.getTimeInMillis());
     }
    
    return rslt;
 }
 
 
-private List<TimeInterval> buildIntervals(CatreTimeSlotEvent evt,List<Calendar> slots)
-{
-   List<TimeInterval> rslt = new ArrayList<>();
-   
-   for (int i = 0; i < slots.size(); i += 2) {
-      Calendar start = slots.get(i);
-      Calendar end = slots.get(i+1);
-      TimeInterval ti = new TimeInterval(start,end);
-      rslt.add(ti);
-    }
-   
-   return rslt;
-}
-
-
-private List<TimeInterval> intersectIntervals(List<TimeInterval> ta,List<TimeInterval> tb)
-{
-   int i = 0;
-   int j = 0;
-   List<TimeInterval> rslt = new ArrayList<>();
-   
-   while (i < ta.size() && j < tb.size()) {
-      TimeInterval tia = ta.get(i);
-      TimeInterval tib = tb.get(j);
-      long start = Math.max(tia.getStartTime(),tib.getStartTime());
-      long end = Math.min(tia.getEndTime(),tib.getEndTime());
-      if (start <= end) {
-         TimeInterval ovlp = new TimeInterval(start,end);
-         CatreLog.logD("CATPROG","Intervals overlap " + tia + " " + tib + " " +
-               ovlp);
-         rslt.add(ovlp);
-       }
-      if (tia.getEndTime() < tib.getEndTime()) ++i;
-      else ++j;
-    }
-   
-   return rslt;
-}
-
-
-private List<TimeInterval> subtractIntervals(List<TimeInterval> ta,List<TimeInterval> subs)
-{
-   List<TimeInterval> rslt = new ArrayList<>();
-   
-   for (TimeInterval interval : ta) {
-      long start = interval.getStartTime();
-      long end = interval.getEndTime();
-      for (TimeInterval sub : subs) {
-         if (sub.getEndTime() < start) continue;
-         if (sub.getStartTime() > end) continue;
-         if (sub.getStartTime() <= start && sub.getEndTime() >= end) {
-            start = end + 1;    // no interval
-          }
-         else if (sub.getStartTime() > start && sub.getEndTime() < end) {
-            rslt.add(new TimeInterval(start,sub.getStartTime()));
-            start = sub.getEndTime(); 
-          }
-         else if (sub.getStartTime() <= start && sub.getEndTime() < end) {
-            start = sub.getEndTime();
-          }
-         else if (sub.getStartTime() > start && sub.getStartTime() < end) {
-            rslt.add(new TimeInterval(start,sub.getStartTime()));
-            start = sub.getEndTime();
-          }
-       }
-      if (start < end) {
-         rslt.add(new TimeInterval(start,end));
-       }
-    }
-   
-   
-   return rslt;
-}
-
-
-
-/********************************************************************************/
-/*                                                                              */
-/*      Time Interval representation                                            */
-/*                                                                              */
-/********************************************************************************/
-
-private static class TimeInterval {
-   
-   private long start_time;
-   private long end_time;
-   
-   TimeInterval(Calendar start,Calendar end) {
-      start_time = start.getTimeInMillis();
-      end_time = end.getTimeInMillis();
-    }
-   
-   TimeInterval(long start,long end) {
-      start_time = start;
-      end_time = end;
-    }
-   
-   long getStartTime()          { return start_time; }
-   long getEndTime()            { return end_time; }
-   
-   @Override public String toString() {
-      return "[" + new Date(start_time) + "-" + new Date(end_time) + "]";
-    } 
-  
-}       // end of inner class TimeInterval
-
-
 
 /********************************************************************************/
 /*                                                                              */
@@ -0,0 +1,168 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatprogEvaluation.java                                          */
+/*                                                                              */
+/*      Evaluation-scoped state for a single program run                        */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.catprog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.brown.cs.catre.catre.CatreCondition;
+import edu.brown.cs.catre.catre.CatreConditionException;
+import edu.brown.cs.catre.catre.CatrePropertySet;
+
+/**
+ *      Hold information that is valid for a single pass over the program.
+ *      Currently this memoizes the status of each condition (or the
+ *      exception it raised) so that conditions shared by several rules
+ *      are only evaluated once per pass.  Rules for different devices are
+ *      evaluated in parallel; the first thread to need a condition
+ *      evaluates it and any other thread waits for that result.
+ **/
+
+class CatprogEvaluation implements CatprogConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private Map<CatreCondition,FutureTask<Object>> status_map;
+private AtomicLong      hit_count;
+private AtomicLong      miss_count;
+
+private static final Object NO_STATUS = new Object();
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+CatprogEvaluation()
+{
+   status_map = new ConcurrentHashMap<>();
+   hit_count = new AtomicLong();
+   miss_count = new AtomicLong();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+long getHitCount()                              { return hit_count.get(); }
+
+long getMissCount()                             { return miss_count.get(); }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Condition status methods                                                */
+/*                                                                              */
+/********************************************************************************/
+
+CatrePropertySet getStatus(CatreCondition cc) throws CatreConditionException
+{
+   FutureTask<Object> task = status_map.get(cc);
+   if (task == null) {
+      FutureTask<Object> ntask = new FutureTask<>(() -> evaluate(cc));
+      task = status_map.putIfAbsent(cc,ntask);
+      if (task == null) {
+         miss_count.incrementAndGet();
+         task = ntask;
+         task.run();
+       }
+      else {
+         hit_count.incrementAndGet();
+       }
+    }
+   else {
+      hit_count.incrementAndGet();
+    }
+
+   Object v;
+   try {
+      v = task.get();
+    }
+   catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CatreConditionException("Evaluation interrupted",e);
+    }
+   catch (ExecutionException e) {
+      Throwable t = e.getCause();
+      if (t instanceof RuntimeException) throw (RuntimeException) t;
+      if (t instanceof Error) throw (Error) t;
+      throw new CatreConditionException("Problem evaluating condition",t);
+    }
+
+   if (v instanceof CatreConditionException) throw (CatreConditionException) v;
+   if (v == NO_STATUS) return null;
+
+   return (CatrePropertySet) v;
+}
+
+
+private static Object evaluate(CatreCondition cc)
+{
+   try {
+      CatrePropertySet ps = cc.getCurrentStatus();
+      return (ps == null ? NO_STATUS : ps);
+    }
+   catch (CatreConditionException e) {
+      return e;
+    }
+}
+
+
+
+}       // end of class CatprogEvaluation
+
+
+
+
+/* end of CatprogEvaluation.java */
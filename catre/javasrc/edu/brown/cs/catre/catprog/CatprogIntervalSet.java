@@ -0,0 +1,241 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatprogIntervalSet.java                                         */
+/*                                                                              */
+/*      Sorted set of disjoint time intervals for rule analysis                 */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catprog;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ *      Immutable set of time intervals kept as sorted arrays of disjoint
+ *      (merged) intervals.  Since the intervals don't overlap, the start
+ *      array is an index: stabbing and containment queries are a binary
+ *      search, and intersection is a linear merge.
+ **/
+
+class CatprogIntervalSet
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private long []         start_times;
+private long []         end_times;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Create a set from a list of from-to calendar pairs
+ **/
+
+static CatprogIntervalSet fromSlots(List<Calendar> slots)
+{
+   int n = slots.size() / 2;
+   long [] starts = new long[n];
+   long [] ends = new long[n];
+   for (int i = 0; i < n; ++i) {
+      starts[i] = slots.get(2*i).getTimeInMillis();
+      ends[i] = slots.get(2*i+1).getTimeInMillis();
+    }
+   
+   return new CatprogIntervalSet(starts,ends,n);
+}
+
+
+static CatprogIntervalSet fromRange(long start,long end)
+{
+   return new CatprogIntervalSet(new long [] { start },new long [] { end },1);
+}
+
+
+
+private CatprogIntervalSet(long [] starts,long [] ends,int n)
+{
+   boolean sorted = true;
+   for (int i = 1; i < n && sorted; ++i) {
+      if (starts[i] < starts[i-1]) sorted = false;
+    }
+   if (!sorted) {
+      Integer [] idx = new Integer[n];
+      for (int i = 0; i < n; ++i) idx[i] = i;
+      Arrays.sort(idx,(a,b) -> Long.compare(starts[a],starts[b]));
+      long [] s1 = new long[n];
+      long [] e1 = new long[n];
+      for (int i = 0; i < n; ++i) {
+         s1[i] = starts[idx[i]];
+         e1[i] = ends[idx[i]];
+       }
+      System.arraycopy(s1,0,starts,0,n);
+      System.arraycopy(e1,0,ends,0,n);
+    }
+   
+   // merge overlapping or touching intervals
+   int m = 0;
+   for (int i = 0; i < n; ++i) {
+      if (m > 0 && starts[i] <= ends[m-1]) {
+         ends[m-1] = Math.max(ends[m-1],ends[i]);
+       }
+      else {
+         starts[m] = starts[i];
+         ends[m] = ends[i];
+         ++m;
+       }
+    }
+   
+   start_times = Arrays.copyOf(starts,m);
+   end_times = Arrays.copyOf(ends,m);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+boolean isEmpty()                               { return start_times.length == 0; }
+
+int size()                                      { return start_times.length; }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Set operations                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+CatprogIntervalSet intersect(CatprogIntervalSet s)
+{
+   int na = start_times.length;
+   int nb = s.start_times.length;
+   long [] starts = new long[na+nb];
+   long [] ends = new long[na+nb];
+   int n = 0;
+   
+   int i = 0;
+   int j = 0;
+   while (i < na && j < nb) {
+      long start = Math.max(start_times[i],s.start_times[j]);
+      long end = Math.min(end_times[i],s.end_times[j]);
+      if (start <= end) {
+         starts[n] = start;
+         ends[n] = end;
+         ++n;
+       }
+      if (end_times[i] < s.end_times[j]) ++i;
+      else ++j;
+    }
+   
+   return new CatprogIntervalSet(starts,ends,n);
+}
+
+
+
+/**
+ *      Check if every (non-empty) interval of this set lies within the
+ *      given set, i.e. if subtracting the given set leaves nothing.
+ **/
+
+boolean isCoveredBy(CatprogIntervalSet s)
+{
+   for (int i = 0; i < start_times.length; ++i) {
+      if (start_times[i] >= end_times[i]) continue;
+      int k = s.findContaining(start_times[i]);
+      if (k < 0 || s.end_times[k] < end_times[i]) return false;
+    }
+   
+   return true;
+}
+
+
+
+/**
+ *      Return the index of the interval containing the given time, or -1
+ **/
+
+private int findContaining(long t)
+{
+   int idx = Arrays.binarySearch(start_times,t);
+   if (idx < 0) idx = -idx - 2;
+   if (idx < 0 || end_times[idx] < t) return -1;
+   
+   return idx;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Output methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public String toString()
+{
+   StringBuffer buf = new StringBuffer();
+   buf.append("{");
+   for (int i = 0; i < start_times.length; ++i) {
+      if (i > 0) buf.append(",");
+      buf.append("[" + new Date(start_times[i]) + "-" + new Date(end_times[i]) + "]");
+    }
+   buf.append("}");
+   
+   return buf.toString();
+}
+
+
+
+}       // end of class CatprogIntervalSet
+
+
+
+
+/* end of CatprogIntervalSet.java */
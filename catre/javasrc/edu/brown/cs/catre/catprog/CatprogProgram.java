@@ -39,29 +39,40 @@ package edu.brown.cs.catre.catprog;
 import edu.brown.cs.catre.catre.CatreSubSavableBase;
 import edu.brown.cs.catre.catre.CatreTriggerContext;
 import edu.brown.cs.catre.catre.CatreUniverse;
-import edu.brown.cs.ivy.swing.SwingEventListenerList;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import edu.brown.cs.catre.catre.CatreAction;
+import edu.brown.cs.catre.catre.CatreBridge;
 import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreConditionListener;
 import edu.brown.cs.catre.catre.CatreDevice;
+import edu.brown.cs.catre.catre.CatreEventBus;
 import edu.brown.cs.catre.catre.CatreException;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreParameter;
@@ -87,10 +98,28 @@ private SortedSet<CatreRule>	rule_list;
 private CatreUniverse		for_universe;
 private Set<CatreCondition>	active_conditions;
 private Map<CatreCondition,RuleConditionHandler> cond_handlers;
-private Updater 		active_updater;
-private SwingEventListenerList<CatreProgramListener> program_callbacks;
+private AtomicInteger		pending_count;
+private volatile long		last_request;
+private volatile long		last_run;
+private Queue<CatreDevice>	pending_devices;
+private volatile long		run_delay;
+private volatile boolean	adaptive_delay;
+private AtomicLong		coalesced_count;
+private AtomicLong		executed_count;
+private AtomicLong		memo_hits;
+private AtomicLong		memo_misses;
+private CatprogActionDispatcher action_dispatcher;
+private long			reassert_interval;
+private CatprogAnalysisCache	analysis_cache;
+private AtomicLong		sent_count;
+private AtomicLong		suppressed_count;
+
+private static ForkJoinPool	eval_pool = new ForkJoinPool(
+      Runtime.getRuntime().availableProcessors());
+private CatreEventBus<CatreProgramListener> program_callbacks;
 private Map<String,CatprogCondition> shared_conditions;
 private Map<CatreDevice,Set<CatreCondition>> used_conditions;
+private Map<CatreCondition,Set<CatreRule>> condition_index;
 
 
 
@@ -108,10 +137,25 @@ CatprogProgram(CatreUniverse uu)
    rule_list = new ConcurrentSkipListSet<>(new RuleComparator());
    active_conditions = new HashSet<>();
    shared_conditions = new HashMap<>();
-   active_updater = null;
+   pending_count = new AtomicInteger();
+   last_request = 0;
+   last_run = 0;
+   pending_devices = new ConcurrentLinkedQueue<>();
+   run_delay = RUN_DELAY;
+   adaptive_delay = false;
+   coalesced_count = new AtomicLong();
+   executed_count = new AtomicLong();
+   memo_hits = new AtomicLong();
+   memo_misses = new AtomicLong();
+   action_dispatcher = new CatprogActionDispatcher(uu.getCatre());
+   reassert_interval = ACTION_REASSERT_INTERVAL;
+   analysis_cache = new CatprogAnalysisCache(this);
+   sent_count = new AtomicLong();
+   suppressed_count = new AtomicLong();
    cond_handlers = new WeakHashMap<>();
-   program_callbacks = new SwingEventListenerList<>(CatreProgramListener.class);
+   program_callbacks = new CatreEventBus<>(CatreProgramListener.class);
    used_conditions = new HashMap<>();
+   condition_index = new ConcurrentHashMap<>();
 }
 
 
@@ -123,6 +167,10 @@ CatprogProgram(CatreUniverse uu,CatreStore cs,Map<String,Object> map)
    
    setup();
    
+   for (CatreRule cr : rule_list) {
+      indexRule(cr);
+    }
+   
    updateConditions();
 }
 
@@ -254,6 +302,7 @@ CatprogCondition getSharedCondition(String name)
    if (oldcr != null) {
       CatreLog.logD("CATPROG","Remove old rule " + oldcr.toJson());
       rule_list.remove(oldcr);
+      unindexRule(oldcr);
       for (CatreCondition cc : oldcr.getConditions()) {
          if (!cc.isShared()) {
             CatprogCondition cp = (CatprogCondition) cc;
@@ -265,6 +314,7 @@ CatprogCondition getSharedCondition(String name)
 	
    CatreLog.logD("CATPROG","Add new rule " + ur.toJson());
    rule_list.add(ur);
+   indexRule(ur);
    updateConditions();
 
    CatreLog.logD("CATPROG","Add rule " + ur.toJson());
@@ -278,6 +328,7 @@ CatprogCondition getSharedCondition(String name)
    synchronized (this) {
       if (ur != null) {
          rule_list.remove(ur);
+         unindexRule(ur);
          updateConditions();
        }
       else {
@@ -330,6 +381,48 @@ public Set<CatreParameterRef> getActiveSensors()
 
 
 
+/********************************************************************************/
+/*                                                                              */
+/*      Update scheduling access methods                                        */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public void setRunDelay(long delay,boolean adaptive)
+{
+   run_delay = Math.max(delay,MIN_RUN_DELAY);
+   adaptive_delay = adaptive;
+   
+   fireProgramUpdated();
+}
+
+
+@Override public void setReassertInterval(long interval)
+{
+   reassert_interval = interval;
+   
+   fireProgramUpdated();
+}
+
+
+long getReassertInterval()                      { return reassert_interval; }
+
+
+@Override public JSONObject getStatistics()
+{
+   return buildJson("RUNDELAY",run_delay,
+         "ADAPTIVE",adaptive_delay,
+         "COALESCED",coalesced_count.get(),
+         "EXECUTED",executed_count.get(),
+         "MEMOHITS",memo_hits.get(),
+         "MEMOMISSES",memo_misses.get(),
+         "ACTIONS",action_dispatcher.getStatistics(),
+         "REASSERT",reassert_interval,
+         "SENT",sent_count.get(),
+         "SUPPRESSED",suppressed_count.get());
+}
+
+
+
 /********************************************************************************/
 /*                                                                              */
 /*      Validate methods                                                        */
@@ -339,8 +432,13 @@ public Set<CatreParameterRef> getActiveSensors()
 @Override public JSONObject errorCheckRule(CatreRule cr)
 { 
    CatprogRule cpr = (CatprogRule) cr;
-   CatprogErrorChecker checker = new CatprogErrorChecker(this,cpr);
-   List<RuleError> errors = checker.analyzeRule();
+   String sign = CatprogAnalysisCache.getRuleSignature(cpr);
+   List<RuleError> errors = analysis_cache.findErrors(sign);
+   if (errors == null) {
+      CatprogErrorChecker checker = new CatprogErrorChecker(this,cpr);
+      errors = checker.analyzeRule();
+      analysis_cache.saveErrors(cpr,sign,errors);
+    }
    
    JSONArray errs = new JSONArray();
    for (RuleError re : errors) {
@@ -355,6 +453,25 @@ public Set<CatreParameterRef> getActiveSensors()
 
 
 
+List<CatreRule> getDeviceRules(CatreDevice cd)
+{
+   return analysis_cache.getDeviceRules(cd);
+}
+
+
+CatprogIntervalSet getTimeSlots(CatreRule cr)
+{
+   return analysis_cache.getTimeSlots(cr);
+}
+
+
+void noteRuleChanged(CatreRule cr)
+{
+   analysis_cache.invalidate(cr);
+}
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Factory methods 							*/
@@ -438,6 +555,9 @@ public Set<CatreParameterRef> getActiveSensors()
    Map<String,Object> rslt = super.toJson();
    rslt.put("RULES",getSubObjectArrayToSave(rule_list));
    rslt.put("SHARED",getSubObjectArrayToSave(shared_conditions.values()));
+   rslt.put("RUNDELAY",run_delay);
+   rslt.put("ADAPTIVE",adaptive_delay);
+   rslt.put("REASSERT",reassert_interval);
    return rslt;
 }
 
@@ -454,6 +574,7 @@ public Set<CatreParameterRef> getActiveSensors()
   
    rule_list.clear();
    rule_list.addAll(rls);
+   analysis_cache.clear();
    
    List<CatreCondition> shared = new ArrayList<>();
    shared = getSavedSubobjectList(cs,map,"SHARED",
@@ -464,6 +585,10 @@ public Set<CatreParameterRef> getActiveSensors()
          shared_conditions.put(cc.getName(),(CatprogCondition) cc);
        }
     }
+   
+   run_delay = Math.max(getSavedLong(map,"RUNDELAY",RUN_DELAY),MIN_RUN_DELAY);
+   adaptive_delay = getSavedBool(map,"ADAPTIVE",false);
+   reassert_interval = getSavedLong(map,"REASSERT",ACTION_REASSERT_INTERVAL);
 }
 
 
@@ -519,6 +644,8 @@ private void updateConditions()
       RuleConditionHandler rch = cond_handlers.get(uc);
       if (rch != null) uc.removeConditionHandler(rch);
       active_conditions.remove(uc);
+      Set<CatreRule> rules = condition_index.get(uc);
+      if (rules != null && rules.isEmpty()) condition_index.remove(uc);
     }
    
    conditionChange(null,false,null);
@@ -545,6 +672,49 @@ private void markActive(CatreCondition cc0,Set<CatreCondition> todel)
 
 
 
+/********************************************************************************/
+/*                                                                              */
+/*      Maintain condition to rule index                                        */
+/*                                                                              */
+/********************************************************************************/
+
+private void indexRule(CatreRule cr)
+{
+   analysis_cache.invalidate(cr);
+   
+   CatprogRule cpr = (CatprogRule) cr;
+   for (CatreCondition cc : cpr.getCheckedConditions()) {
+      Set<CatreRule> rules = condition_index.get(cc);
+      if (rules == null) {
+         rules = ConcurrentHashMap.newKeySet();
+         condition_index.put(cc,rules);
+       }
+      rules.add(cr);
+    }
+}
+
+
+private void unindexRule(CatreRule cr)
+{
+   analysis_cache.invalidate(cr);
+   
+   CatprogRule cpr = (CatprogRule) cr;
+   for (CatreCondition cc : cpr.getCheckedConditions()) {
+      Set<CatreRule> rules = condition_index.get(cc);
+      if (rules == null) continue;
+      rules.remove(cr);
+      if (rules.isEmpty()) condition_index.remove(cc);
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Handle condition changes                                                */
+/*                                                                              */
+/********************************************************************************/
+
 private void conditionChange(CatreCondition c)
 {
    conditionChange(c,false,null);
@@ -558,12 +728,12 @@ private void conditionChange(CatreCondition c,boolean istrig,CatrePropertySet ps
          istrig + " " + ps);
    
    Set<CatreDevice> devices = null;
-   for (CatreRule cr : rule_list) {
-      CatprogRule cpr = (CatprogRule) cr;
-      CatreDevice cd = cpr.getTargetDevice();
-      if (cd == null) continue;
-      if (devices != null && devices.contains(cd)) continue;
-      if (cpr.getCheckedConditions().contains(c)) {
+   Set<CatreRule> rules = (c == null ? null : condition_index.get(c));
+   if (rules != null) {
+      for (CatreRule cr : rules) {
+         CatreDevice cd = cr.getTargetDevice();
+         if (cd == null) continue;
+         if (devices != null && devices.contains(cd)) continue;
          Set<CatreCondition> used = used_conditions.get(cd);
          if (used != null && !used.contains(c)) {
             CatreLog.logD("CATPROG","Condition isn't relevant to current value " + c);
@@ -581,130 +751,115 @@ private void conditionChange(CatreCondition c,boolean istrig,CatrePropertySet ps
    
    CatreLog.logD("CATPROG","Relevant target devices " + devices);
    
-   for_universe.updateLock();
-   try {
-      if (istrig && c != null) for_universe.addTrigger(c,ps);
-      Updater upd = active_updater;
-      if (upd != null) {
-	 upd.runAgain(devices);
-       }
-      else {
-         CatreLog.logD("CATPROG","Create updater for " + devices);
-	 upd = new Updater(devices);
-	 active_updater = upd;
-	 for_universe.getCatre().submit(upd);
-       }
+   requestUpdate(devices,(istrig ? c : null),ps);
+}
+
+
+
+/**
+ *      Note that the given devices need to be updated.  This runs on the
+ *      thread reporting the condition change and does not lock: the
+ *      trigger and devices are queued before the request is counted, and
+ *      only the request that moves the count from zero schedules the
+ *      updater.
+ **/
+
+private void requestUpdate(Set<CatreDevice> devices,CatreCondition trig,CatrePropertySet ps)
+{
+   if (trig != null) for_universe.addTrigger(trig,ps);
+   pending_devices.addAll(devices);
+   last_request = System.currentTimeMillis();
+   
+   if (pending_count.getAndIncrement() == 0) {
+      CatreLog.logD("CATPROG","Schedule updater for " + devices);
+      scheduleUpdater(getEffectiveDelay());
     }
-   finally {
-      for_universe.updateUnlock();
+   else {
+      coalesced_count.incrementAndGet();
     }
 }
 
 
 
+/********************************************************************************/
+/*                                                                              */
+/*      Program update scheduling                                               */
+/*                                                                              */
+/*      The updater is driven by scheduled callbacks.  Rather than sleeping     */
+/*      in a pool thread, it reschedules itself until the quiet period has      */
+/*      passed and any active universe update has finished.  At most one       */
+/*      updater is outstanding: it is scheduled when the request count         */
+/*      leaves zero and it reschedules itself while requests remain.           */
+/*                                                                              */
+/********************************************************************************/
 
-private class Updater implements Runnable {
+private void scheduleUpdater(long delay)
+{
+   for_universe.getCatre().scheduleTimer(new Updater(),delay,for_universe.getMailbox());
+}
 
-   private boolean run_again;
-   private long last_request;
-   private Set<CatreDevice> for_devices;
 
-   Updater(Set<CatreDevice> devices) {
-      run_again = true;
-      last_request = System.currentTimeMillis();
-      for_devices = devices;
+private long getEffectiveDelay()
+{
+   if (!adaptive_delay) return run_delay;
+   
+   // tighten the quiet period if the universe has been idle
+   long now = System.currentTimeMillis();
+   if (now - last_run > run_delay * ADAPTIVE_IDLE_FACTOR) {
+      return Math.max(run_delay / ADAPTIVE_DIVISOR,MIN_RUN_DELAY);
     }
+   
+   return run_delay;
+}
 
-   void runAgain(Set<CatreDevice> devices) {
-      CatreLog.logD("CATPROG","Run again for " + devices);
-      for_universe.updateLock();
-      try {
-         run_again = true;
-         if (devices != null && !devices.isEmpty()) {
-            if (for_devices == null) for_devices = devices;
-            else for_devices.addAll(devices);
-          }
-         last_request = System.currentTimeMillis();
-       }
-      finally {
-         for_universe.updateUnlock();
-       }
-      CatreLog.logD("CATPROG","Run again finished " + for_devices);
-    }
+
+
+private class Updater implements Runnable {
 
    @Override public void run() {
-      CatreLog.logD("CATPROG","Start updater for " + for_universe.getName() + (new Date()));
-      
-      Set<CatreDevice> used = null;
-      for_universe.updateLock();
-      try {
-         run_again = true;
-         while (run_again) {
-            run_again = false;
-            long now = System.currentTimeMillis();
-            if (now - last_request > RUN_DELAY) break;
-            for_universe.updateUnlock();                // allow run again while waiting
-            try {
-               Thread.sleep(now-last_request);
-             }
-            catch (InterruptedException e) { }
-            for_universe.updateLock();
-          }
-         used = for_devices;
-         for_devices = null;
-         run_again = false;
+      long wait = last_request + getEffectiveDelay() - System.currentTimeMillis();
+      if (wait > 0) {
+         scheduleUpdater(wait);
+         return;
        }
-      finally {
-         for_universe.updateUnlock();
+      if (for_universe.isUpdating()) {
+         scheduleUpdater(UPDATE_RECHECK_DELAY);
+         return;
        }
       
-      if (used != null && used.isEmpty()) used = null;
-      CatreLog.logD("CATPROG","Ready to do update for " + for_universe.getName() + 
-            " " + used);
-      
+      // requests counted after this point are handled by another run
+      int seen = pending_count.get();
+      Set<CatreDevice> used = new HashSet<>();
       for ( ; ; ) {
-         CatreTriggerContext ctx = null;
-         for_universe.updateLock();
-         try {
-            ctx = for_universe.waitForUpdate();
-            if (run_again) {
-               if (for_devices != null) {
-                  CatreLog.logD("CATPROG","Add relevant devices to run against " + for_devices);
-                  if (used == null) used = for_devices;
-                  else used.addAll(for_devices);
-                }
-             }
-            run_again = false;
-            for_devices = null;
-          }
-         finally {
-            for_universe.updateUnlock();
-          }
-        
+         CatreDevice cd = pending_devices.poll();
+         if (cd == null) break;
+         used.add(cd);
+       }
+      
+      if (!used.isEmpty()) {
+         // triggers were added before their devices were queued
+         CatreTriggerContext ctx = for_universe.waitForUpdate();
+         CatreLog.logD("CATPROG","Ready to do update for " + for_universe.getName() + 
+               " " + used + " " + new Date());
          try {
             runOnce(ctx,used);
           }
          catch (Throwable t) {
             CatreLog.logE("CATPROG","Problem running program",t);
           }
-        
-         for_universe.updateLock();
-         CatreLog.logD("CATPROG","Finished program run " + run_again + " " + for_devices);
-         try {
-            if (!run_again) {
-               active_updater = null;
-               resetTriggers();
-               break;
-             }
-            else {
-               last_request = System.currentTimeMillis();       // ensure delay
-             }
-          }
-         finally {
-            for_universe.updateUnlock();
-          }
+         executed_count.incrementAndGet();
+       }
+      
+      last_run = System.currentTimeMillis();
+      int left = pending_count.addAndGet(-seen);
+      CatreLog.logD("CATPROG","Finished program run " + left);
+      if (left > 0) {
+         last_request = last_run;                       // ensure delay
+         scheduleUpdater(getEffectiveDelay());
+       }
+      else {
+         resetTriggers();
        }
-   
     }
 
 }	// end of inner class Updater
@@ -723,7 +878,7 @@ private final class RuleConditionHandler implements CatreConditionListener {
     }
 
    @Override public void conditionTrigger(CatreCondition cc,CatrePropertySet p) {
-      if (p == null) p = for_universe.createPropertySet();
+      if (p == null) p = for_universe.getEmptyPropertySet();
       conditionChange(cc,true,p);
     }
 
@@ -744,39 +899,68 @@ private final class RuleConditionHandler implements CatreConditionListener {
          for_universe.getUser().getUserName() +
          " " +  rule_list.size() + " " + ctx + " " + relevant);
    
-   boolean rslt = false;
-
-   Set<CatreDevice> entities = new HashSet<>();
-   Map<CatreDevice,Set<CatreCondition>> usedcondmap = new HashMap<>();
-
-   Collection<CatreRule> rules = new ArrayList<>(rule_list);
-
    CatreLog.logI("CATPROG","CHECK RULES at " + new Date()); 
-
-   for (CatreRule r : rules) {
+   
+   // partition rules by target device, keeping priority order within each
+   Map<CatreDevice,List<CatreRule>> parts = new LinkedHashMap<>();
+   for (CatreRule r : rule_list) {
       if (r.isDisabled()) continue;
       CatreDevice rent = r.getTargetDevice();
-      if (entities.contains(rent)) continue;
       if (relevant != null && !relevant.contains(rent)) {
          CatreLog.logD("CATPROG","Skip rule " + r.getName() + " due to relevancy");
          continue;
        }
-      try {
-         Set<CatreCondition> usedconds = usedcondmap.get(rent);
-         if (usedconds == null) {
-            usedconds = new HashSet<>();
-            usedcondmap.put(rent,usedconds);
-          }
-	 if (startRule(r,ctx,usedconds)) {
-	    rslt = true;
-	    entities.add(rent);
-	  }
+      List<CatreRule> rules = parts.get(rent);
+      if (rules == null) {
+         rules = new ArrayList<>();
+         parts.put(rent,rules);
        }
-      catch (CatreException e) {
-	 CatreLog.logE("CATPROG","Problem with rule " + r.getName(),e);
+      rules.add(r);
+    }
+   
+   CatprogEvaluation eval = new CatprogEvaluation();
+   List<DeviceEvaluator> evals = new ArrayList<>();
+   for (Map.Entry<CatreDevice,List<CatreRule>> ent : parts.entrySet()) {
+      evals.add(new DeviceEvaluator(ent.getKey(),ent.getValue(),ctx,eval));
+    }
+   
+   if (evals.size() < PARALLEL_DEVICE_THRESHOLD) {
+      for (DeviceEvaluator de : evals) de.call();
+    }
+   else {
+      // the calling (mailbox) thread takes work too rather than waiting idle
+      Queue<DeviceEvaluator> work = new ConcurrentLinkedQueue<>(evals);
+      CountDownLatch done = new CountDownLatch(evals.size());
+      int nhelp = Math.min(evals.size(),eval_pool.getParallelism()) - 1;
+      for (int i = 0; i < nhelp; ++i) {
+         eval_pool.execute(() -> runEvaluators(work,done));
+       }
+      runEvaluators(work,done);
+      // only waits for evaluators other threads have already started;
+      // helpers that start later find nothing left to do
+      boolean intr = false;
+      for ( ; ; ) {
+         try {
+            done.await();
+            break;
+          }
+         catch (InterruptedException e) {
+            intr = true;
+          }
        }
+      if (intr) Thread.currentThread().interrupt();
     }
    
+   boolean rslt = false;
+   Map<CatreDevice,Set<CatreCondition>> usedcondmap = new HashMap<>();
+   for (DeviceEvaluator de : evals) {
+      rslt |= de.hasFired();
+      usedcondmap.put(de.getDevice(),de.getUsedConditions());
+    }
+   
+   memo_hits.addAndGet(eval.getHitCount());
+   memo_misses.addAndGet(eval.getMissCount());
+   
    CatreLog.logD("CATPROG","Used conditions: " + usedcondmap.size() + " " + usedcondmap);
    used_conditions.putAll(usedcondmap);
 
@@ -785,14 +969,116 @@ private final class RuleConditionHandler implements CatreConditionListener {
 
 
 
+/**
+ *      Evaluate the rules for a single target device in priority order.  The
+ *      first rule that applies claims the device.  Evaluators for different
+ *      devices are independent and can run in parallel.
+ **/
+
+private final class DeviceEvaluator implements Callable<Boolean> {
+
+   private CatreDevice for_device;
+   private List<CatreRule> device_rules;
+   private CatreTriggerContext trigger_context;
+   private CatprogEvaluation for_evaluation;
+   private Set<CatreCondition> used_conds;
+   private boolean has_fired;
+
+   DeviceEvaluator(CatreDevice cd,List<CatreRule> rules,CatreTriggerContext ctx,
+         CatprogEvaluation eval) {
+      for_device = cd;
+      device_rules = rules;
+      trigger_context = ctx;
+      for_evaluation = eval;
+      used_conds = new HashSet<>();
+      has_fired = false;
+    }
+
+   CatreDevice getDevice()                      { return for_device; }
+   Set<CatreCondition> getUsedConditions()      { return used_conds; }
+   boolean hasFired()                           { return has_fired; }
+
+   @Override public Boolean call() {
+      for (CatreRule r : device_rules) {
+         try {
+            if (startRule(r,trigger_context,used_conds,for_evaluation)) {
+               has_fired = true;
+               break;
+             }
+          }
+         catch (CatreException e) {
+            CatreLog.logE("CATPROG","Problem with rule " + r.getName(),e);
+          }
+         catch (Throwable t) {
+            CatreLog.logE("CATPROG","Problem evaluating rule " + r.getName(),t);
+          }
+       }
+      return has_fired;
+    }
+
+}	// end of inner class DeviceEvaluator
+
+
+
+private static void runEvaluators(Queue<DeviceEvaluator> work,CountDownLatch done)
+{
+   for ( ; ; ) {
+      DeviceEvaluator de = work.poll();
+      if (de == null) break;
+      try {
+         de.call();
+       }
+      finally {
+         done.countDown();
+       }
+    }
+}
+
+
+
 private boolean startRule(CatreRule r,CatreTriggerContext ctx,
-      Set<CatreCondition> usedconds)
+      Set<CatreCondition> usedconds,CatprogEvaluation eval)
 	throws CatreException
 {
-   return r.apply(ctx,usedconds);
+   CatprogRule cpr = (CatprogRule) r;
+   return cpr.apply(ctx,usedconds,eval);
 }
 
 
+/********************************************************************************/
+/*                                                                              */
+/*      Action dispatch                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+void dispatchActions(CatprogRule cr,CatprogRule.RuleRunner rr)
+{
+   CatreDevice cd = cr.getTargetDevice();
+   CatreBridge bridge = (cd == null ? null : cd.getBridge());
+   
+   action_dispatcher.dispatch(cd,bridge,rr);
+}
+
+
+void noteActionSent()                           { sent_count.incrementAndGet(); }
+
+void noteActionSuppressed()                     { suppressed_count.incrementAndGet(); }
+
+
+void actionsFailed(CatprogRule cr,int count)
+{
+   action_dispatcher.noteFailure();
+   
+   // re-evaluate the device so a transient failure doesn't stick
+   if (count > ACTION_RETRY_LIMIT) return;
+   CatreDevice cd = cr.getTargetDevice();
+   if (cd == null) return;
+   
+   requestUpdate(Collections.singleton(cd),null,null);
+}
+
+
+
 private void resetTriggers()
 {
    // reset any triggers after rules run completely
@@ -864,6 +1150,18 @@ CatreAction createAction(CatreStore cs,Map<String,Object> map)
 }
 
 
+@Override public void addWeakProgramListener(CatreProgramListener l)
+{
+   program_callbacks.addWeak(l);
+}
+
+
+@Override public void addProgramListener(CatreProgramListener l,Executor ex)
+{
+   program_callbacks.addAsync(l,ex);
+}
+
+
 @Override public void removeProgramListener(CatreProgramListener l)
 {
    program_callbacks.remove(l);
@@ -873,9 +1171,7 @@ protected void fireProgramUpdated()
 {
    CatreLog.logD("CATPROG","Fire program updated");
 
-   for (CatreProgramListener pl : program_callbacks) {
-      pl.programUpdated();
-    }
+   program_callbacks.fire((pl) -> pl.programUpdated());
 }
 
 
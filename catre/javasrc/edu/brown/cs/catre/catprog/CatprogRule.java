@@ -36,11 +36,13 @@
 
 package edu.brown.cs.catre.catprog;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.brown.cs.catre.catre.CatreAction;
 import edu.brown.cs.catre.catre.CatreActionException;
@@ -77,6 +79,8 @@ private long		creation_time;
 private boolean         force_trigger;
 private Set<CatreCondition> use_conditions;
 private boolean         is_disabled;
+private RulePlan        rule_plan;
+private AtomicInteger   failure_count;
 
 
 
@@ -100,11 +104,15 @@ CatprogRule(CatreProgram pgm,CatreStore cs,Map<String,Object> map)
    device_id = null;
    use_conditions = null;
    is_disabled = false;
+   rule_plan = null;
+   failure_count = new AtomicInteger();
 
    fromJson(cs,map);
    
    optimizeRule();
    
+   compileRule();
+   
    if (device_id == null && for_actions != null) {
       for (CatreAction ca : for_actions) {
          device_id = ca.getTransition().getDevice().getDeviceId();
@@ -128,7 +136,12 @@ CatprogRule(CatreProgram pgm,CatreStore cs,Map<String,Object> map)
 
 @Override public double getPriority()			{ return rule_priority; }
 
-@Override public void setPriority(double p)		{ rule_priority = p; }
+@Override public void setPriority(double p)
+{
+   rule_priority = p;
+   if (for_program != null) for_program.noteRuleChanged(this);
+}
+
 
 
 @Override public long getCreationTime() 		{ return creation_time; }
@@ -183,27 +196,20 @@ Set<CatreCondition> getCheckedConditions()
       Collection<CatreCondition> usedconds)
 	throws CatreConditionException, CatreActionException
 {
-   CatreLog.logD("CATPROG","Start to apply rule " + getName());
-   
+   return apply(ctx,usedconds,null);
+}
+
+
+boolean apply(CatreTriggerContext ctx,Collection<CatreCondition> usedconds,
+      CatprogEvaluation eval)
+	throws CatreConditionException, CatreActionException
+{
    if (is_disabled) return false;
    
-   CatrePropertySet ps = null;
-   for (CatreCondition cc : for_conditions) {
-      cc = cc.getActiveCondition();
-      if (usedconds != null) usedconds.add(cc);
-      CatreLog.logD("CATPROG","CHECK CONDITION " + cc.getName());
-      CatrePropertySet ns = null;
-      if (ctx != null) ns = ctx.checkCondition(cc);
-      if (ns == null) ns = cc.getCurrentStatus();
-      if (ns == null) {
-         CatreLog.logD("CATPROG","Condition is false");
-         return false;
-       }
-      if (ps == null) {
-         ps = for_program.getUniverse().createPropertySet();
-       }
-      ps.putAll(ns);
-    }
+   RulePlan plan = rule_plan;
+   if (!plan.evaluate(ctx,usedconds,eval)) return false;
+   
+   CatrePropertySet ps = plan.materialize();
    // no conditions (ps == null) means that rule holds at this point
 // if (ps == null) {
 //    CatreLog.logD("CATPROG","No conditions");
@@ -213,8 +219,9 @@ Set<CatreCondition> getCheckedConditions()
    CatreLog.logI("CATPROG","Apply " + getLabel());
 
    if (for_actions != null) {
-      active_rule = new RuleRunner(ps);
-      active_rule.applyRule();
+      RuleRunner rr = new RuleRunner(ps);
+      active_rule = rr;
+      for_program.dispatchActions(this,rr);
     }
    else {
       CatreLog.logI("CATPROG","Rule has NO ACTIONS");
@@ -234,34 +241,52 @@ Set<CatreCondition> getCheckedConditions()
 
 
 
-private class RuleRunner implements Runnable {
+/**
+ *      Run the actions for one outcome of the rule.  Runners are handed to
+ *      the program's action dispatcher and run off the evaluation thread;
+ *      a runner that has not started can be superseded by a newer outcome
+ *      for the same device.
+ **/
+
+class RuleRunner implements Runnable {
 
    private CatrePropertySet param_set;
    private Thread runner_thread;
    private boolean is_aborted;
+   private boolean is_superseded;
    private Throwable fail_code;
 
    RuleRunner(CatrePropertySet ps) {
       param_set = ps;
       fail_code = null;
       is_aborted = false;
+      is_superseded = false;
       runner_thread = null;
     }
+   
+   synchronized void supersede() {
+      is_superseded = true;
+    }
 
    void abort() {
       CatreLog.logI("CATPROG","Attempt to abort rule " + getLabel());
       synchronized (this) {
 	 // don't want to interrupt thread if it has finished rule
-	 if (active_rule != null && runner_thread != null) {
-	    is_aborted = true;
-	    if (runner_thread != Thread.currentThread())
-	       runner_thread.interrupt();
+	 is_aborted = true;
+	 if (runner_thread != null && runner_thread != Thread.currentThread()) {
+	    runner_thread.interrupt();
 	  }
        }
     }
 
    @Override public void run() {
-      runner_thread = Thread.currentThread();
+      synchronized (this) {
+         if (is_aborted || is_superseded) {
+            if (active_rule == this) active_rule = null;
+            return;
+          }
+         runner_thread = Thread.currentThread();
+       }
       applyRule();
     }
 
@@ -287,17 +312,39 @@ private class RuleRunner implements Runnable {
             t.printStackTrace();
             fail_code = t;
           }
-         if (fail_code != null) {
-            // might want to run exception actions here
-          }
        }
       finally {
          synchronized (this) {
-            active_rule = null;
+            if (active_rule == this) active_rule = null;
             runner_thread = null;
+            // clear any interrupt so the pool thread is reusable
+            Thread.interrupted();
           }
        }
+      actionsCompleted(fail_code);
     }
+   
+}	// end of inner class RuleRunner
+
+
+
+/**
+ *      Callback when the actions for an outcome of this rule complete.
+ *      Failures are counted and reported to the program so it can
+ *      re-evaluate the target device.
+ **/
+
+private void actionsCompleted(Throwable fail)
+{
+   if (fail == null) {
+      failure_count.set(0);
+      return;
+    }
+   
+   int ct = failure_count.incrementAndGet();
+   CatreLog.logI("CATPROG","Actions for rule " + getLabel() + " failed (" +
+         ct + "): " + fail);
+   for_program.actionsFailed(this,ct);
 }
 
 
@@ -331,6 +378,135 @@ private void optimizeRule()
 
 
 
+/********************************************************************************/
+/*                                                                              */
+/*      Compiled evaluation plan                                                */
+/*                                                                              */
+/*      The plan holds the active conditions of the rule as flat arrays in      */
+/*      evaluation order.  Evaluation stops at the first false condition and    */
+/*      does not allocate; the property set is only built when the rule fires.  */
+/*      The evaluation order adapts to put the most selective conditions        */
+/*      first, while properties are still merged in the rule's own order.       */
+/*                                                                              */
+/********************************************************************************/
+
+private void compileRule()
+{
+   rule_plan = new RulePlan();
+}
+
+
+private final class RulePlan {
+
+   private CatreCondition [] plan_conditions;
+   private int [] plan_index;
+   private int [] plan_class;
+   private int [] false_counts;
+   private CatrePropertySet [] plan_status;
+   private int eval_count;
+
+   RulePlan() {
+      int n = (for_conditions == null ? 0 : for_conditions.size());
+      plan_conditions = new CatreCondition[n];
+      plan_index = new int[n];
+      plan_class = new int[n];
+      false_counts = new int[n];
+      plan_status = new CatrePropertySet[n];
+      eval_count = 0;
+   
+      // triggers first since they rarely hold, then the time condition
+      // optimizeRule moved to the front, then the rest in order
+      int j = 0;
+      for (int pass = 0; pass < 3; ++pass) {
+         for (int i = 0; i < n; ++i) {
+            CatreCondition cc = for_conditions.get(i).getActiveCondition();
+            if (getPlanClass(i,cc) != pass) continue;
+            plan_conditions[j] = cc;
+            plan_index[j] = i;
+            plan_class[j] = pass;
+            ++j;
+          }
+       }
+    }
+
+   private int getPlanClass(int i,CatreCondition cc) {
+      if (cc.isTrigger()) return 0;
+      CatprogCondition pc = (CatprogCondition) for_conditions.get(i);
+      if (!force_trigger && i == 0 && pc.getTimeSlotEvent() != null) return 1;
+      return 2;
+    }
+
+   boolean evaluate(CatreTriggerContext ctx,Collection<CatreCondition> usedconds,
+         CatprogEvaluation eval) throws CatreConditionException {
+      boolean rslt = false;
+      try {
+         for (int i = 0; i < plan_conditions.length; ++i) {
+            CatreCondition cc = plan_conditions[i];
+            if (usedconds != null) usedconds.add(cc);
+            CatrePropertySet ns = null;
+            if (ctx != null) ns = ctx.checkCondition(cc);
+            if (ns == null) {
+               if (eval != null) ns = eval.getStatus(cc);
+               else ns = cc.getCurrentStatus();
+             }
+            if (ns == null) {
+               ++false_counts[i];
+               return false;
+             }
+            plan_status[plan_index[i]] = ns;
+          }
+         rslt = true;
+       }
+      finally {
+         if (!rslt) Arrays.fill(plan_status,null);
+         if (++eval_count >= PLAN_REORDER_COUNT) reorder();
+       }
+      return rslt;
+    }
+
+   CatrePropertySet materialize() {
+      // no conditions (null) means that rule holds at this point
+      if (plan_status.length == 0) return null;
+      CatrePropertySet ps = for_program.getUniverse().getEmptyPropertySet();
+      for (int i = 0; i < plan_status.length; ++i) {
+         ps = ps.merge(plan_status[i]);
+         plan_status[i] = null;
+       }
+      return ps;
+    }
+
+   private void reorder() {
+      // stable insertion sort by number of times the condition was false,
+      // only within a class so the static order is kept
+      for (int i = 1; i < plan_conditions.length; ++i) {
+         CatreCondition cc = plan_conditions[i];
+         int idx = plan_index[i];
+         int cls = plan_class[i];
+         int cnt = false_counts[i];
+         int j = i - 1;
+         while (j >= 0 && plan_class[j] == cls && false_counts[j] < cnt) {
+            plan_conditions[j+1] = plan_conditions[j];
+            plan_index[j+1] = plan_index[j];
+            plan_class[j+1] = plan_class[j];
+            false_counts[j+1] = false_counts[j];
+            --j;
+          }
+         plan_conditions[j+1] = cc;
+         plan_index[j+1] = idx;
+         plan_class[j+1] = cls;
+         false_counts[j+1] = cnt;
+       }
+      // age the counts so the order can follow changes in behavior
+      for (int i = 0; i < false_counts.length; ++i) {
+         false_counts[i] /= 2;
+       }
+      eval_count = 0;
+    }
+
+}	// end of inner class RulePlan
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Output methods								*/
@@ -40,6 +40,7 @@ import java.io.File;
 import java.util.Collection;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 
@@ -76,6 +77,23 @@ ScheduledFuture<?> schedule(Runnable task,long delay);
 ScheduledFuture<?> schedule(Runnable task,long delay,long period);
 
 
+/**
+ *      Schedule a one-shot timer to run after a given delay.  This should be
+ *      used for the (potentially many) timers associated with conditions and
+ *      devices.  Cancelling the returned timer removes it immediately.
+ **/
+
+CatreTimer scheduleTimer(Runnable task,long delay);
+
+
+/**
+ *      Schedule a one-shot timer whose task is run by the given executor
+ *      (generally a universe mailbox) rather than the common pool.
+ **/
+
+CatreTimer scheduleTimer(Runnable task,long delay,Executor exec);
+
+
 /**
  *      Submit a task to be run whenever possible
  **/
@@ -97,6 +115,32 @@ Future<?> submit(Runnable task);
 <T> Future<T> submit(Callable<T> task);
 
 
+/**
+ *      Create a mailbox: an executor that runs its tasks one at a time in
+ *      order.  Mailboxes share a fixed set of worker threads.  Each universe
+ *      uses one for its event handling, timers and program updates.
+ **/
+
+Executor createMailbox();
+
+
+/**
+ *      Return the universe for a user, loading and starting it if it is not
+ *      active.  This also notes the universe as in use so that it is not
+ *      unloaded while it is being used.
+ **/
+
+CatreUniverse getUniverse(CatreUser cu);
+
+
+/**
+ *      Stop the universe of a user that is being removed, along with its
+ *      bridges and wake up timer.  The universe is not loaded to do this.
+ **/
+
+void removeUniverse(CatreUser cu);
+
+
 
 /********************************************************************************/
 /*                                                                              */
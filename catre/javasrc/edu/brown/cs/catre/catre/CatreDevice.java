@@ -169,6 +169,15 @@ default CatreController getCatre()       { return getUniverse().getCatre(); }
 
 
 
+/**
+ *      Return true if the device is driven by its own polling or timers
+ *      rather than by the universe mailbox
+ **/
+
+default boolean isPolled()              { return false; }
+
+
+
 /**
  *      Check if this device is dependent on another
  **/
@@ -226,6 +235,14 @@ boolean update(CatreDevice newdev);
 void startDevice();
 
 
+/**
+ *      Stop any background activity (e.g. polling) for the device without
+ *      changing its state.  This is used when the universe is unloaded.
+ **/
+
+void stopDevice();
+
+
 }       // end of interface CatreDevice
 
 
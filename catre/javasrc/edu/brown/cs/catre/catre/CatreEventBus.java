@@ -0,0 +1,440 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatreEventBus.java                                              */
+/*                                                                              */
+/*      Listener list with timed, optionally asynchronous dispatch              */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catre;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ *      List of listeners for Catre events.  The listeners are kept in a
+ *      copy-on-write array so that dispatch does not lock.  Listeners can
+ *      be registered weakly so they do not need to be removed, or
+ *      asynchronously so that a slow listener runs in order on an executor
+ *      rather than on the thread reporting the event.  Dispatch times are
+ *      accumulated per listener class and slow calls are logged.
+ **/
+
+public class CatreEventBus<T extends EventListener> implements Iterable<T>
+{
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private volatile Entry<T> [] listener_entries;
+private String          bus_name;
+
+private static final Map<String,DispatchStats> dispatch_stats = new ConcurrentHashMap<>();
+
+private static final long SLOW_DISPATCH = 100_000_000L;         // ns before logging
+
+
+@SuppressWarnings("rawtypes")
+private static final Entry [] NO_ENTRIES = new Entry[0];
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+@SuppressWarnings("unchecked")
+public CatreEventBus(Class<T> c)
+{
+   bus_name = c.getSimpleName();
+   listener_entries = NO_ENTRIES;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Registration methods                                                    */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Add a listener, ignoring it if it is already present
+ **/
+
+public void add(T l)
+{
+   addEntry(new Entry<>(this,l,false,null));
+}
+
+
+/**
+ *      Add a listener that is only weakly held by the bus
+ **/
+
+public void addWeak(T l)
+{
+   addEntry(new Entry<>(this,l,true,null));
+}
+
+
+/**
+ *      Add a listener whose events are delivered in order by the given
+ *      executor rather than on the dispatching thread
+ **/
+
+public void addAsync(T l,Executor ex)
+{
+   addEntry(new Entry<>(this,l,false,ex));
+}
+
+
+/**
+ *      Remove a listener
+ **/
+
+public synchronized void remove(T l)
+{
+   if (l == null) return;
+   
+   Entry<T> [] ents = listener_entries;
+   List<Entry<T>> keep = new ArrayList<>(ents.length);
+   for (Entry<T> e : ents) {
+      T el = e.getListener();
+      if (el != null && el != l) keep.add(e);
+    }
+   if (keep.size() != ents.length) setEntries(keep);
+}
+
+
+/**
+ *      Return the number of live listeners
+ **/
+
+public int getListenerCount()
+{
+   int ct = 0;
+   for (Entry<T> e : listener_entries) {
+      if (e.getListener() != null) ++ct;
+    }
+   return ct;
+}
+
+
+private synchronized void addEntry(Entry<T> ent)
+{
+   T l = ent.getListener();
+   if (l == null) return;
+   
+   Entry<T> [] ents = listener_entries;
+   List<Entry<T>> nents = new ArrayList<>(ents.length+1);
+   for (Entry<T> e : ents) {
+      T el = e.getListener();
+      if (el == l) return;
+      if (el != null) nents.add(e);
+    }
+   nents.add(ent);
+   setEntries(nents);
+}
+
+
+@SuppressWarnings("unchecked")
+private void setEntries(List<Entry<T>> ents)
+{
+   listener_entries = ents.toArray(NO_ENTRIES);
+}
+
+
+private synchronized void prune()
+{
+   Entry<T> [] ents = listener_entries;
+   List<Entry<T>> keep = new ArrayList<>(ents.length);
+   for (Entry<T> e : ents) {
+      if (e.getListener() != null) keep.add(e);
+    }
+   if (keep.size() != ents.length) setEntries(keep);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Dispatch methods                                                        */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Deliver an event to each listener.  Exceptions thrown by a listener
+ *      are logged and do not affect other listeners.
+ **/
+
+public void fire(Consumer<T> evt)
+{
+   boolean dead = false;
+   
+   for (Entry<T> e : listener_entries) {
+      T l = e.getListener();
+      if (l == null) {
+         dead = true;
+         continue;
+       }
+      if (e.isAsync()) e.enqueue(evt);
+      else deliver(e,l,evt);
+    }
+   
+   if (dead) prune();
+}
+
+
+private void deliver(Entry<T> ent,T l,Consumer<T> evt)
+{
+   long start = System.nanoTime();
+   boolean fail = false;
+   try {
+      evt.accept(l);
+    }
+   catch (Throwable t) {
+      fail = true;
+      CatreLog.logE("CATRE","Problem with " + bus_name + " " + l,t);
+    }
+   long delta = System.nanoTime() - start;
+   
+   ent.getStats().record(delta,fail);
+   
+   if (delta > SLOW_DISPATCH) {
+      CatreLog.logI("CATRE","Slow " + bus_name + " " + l + " " + delta/1000000 + " ms");
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Iteration over current listeners                                        */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public Iterator<T> iterator()
+{
+   return new ListenerIterator<>(listener_entries);
+}
+
+
+
+private static final class ListenerIterator<T extends EventListener> implements Iterator<T> {
+
+   private Entry<T> [] for_entries;
+   private int next_index;
+   private T next_listener;
+   
+   ListenerIterator(Entry<T> [] ents) {
+      for_entries = ents;
+      next_index = 0;
+      next_listener = null;
+    }
+   
+   @Override public boolean hasNext() {
+      while (next_listener == null && next_index < for_entries.length) {
+         next_listener = for_entries[next_index++].getListener();
+       }
+      return next_listener != null;
+    }
+   
+   @Override public T next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      T rslt = next_listener;
+      next_listener = null;
+      return rslt;
+    }
+
+}       // end of inner class ListenerIterator
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Statistics                                                              */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return dispatch counts and times for each bus and listener class
+ **/
+
+public static JSONArray getStatistics()
+{
+   JSONArray rslt = new JSONArray();
+   for (Map.Entry<String,DispatchStats> ent : dispatch_stats.entrySet()) {
+      DispatchStats ds = ent.getValue();
+      JSONObject obj = new JSONObject();
+      obj.put("LISTENER",ent.getKey());
+      obj.put("CALLS",ds.call_count.sum());
+      obj.put("ERRORS",ds.error_count.sum());
+      obj.put("TOTALUS",ds.total_time.sum() / 1000);
+      obj.put("MAXUS",ds.max_time.get() / 1000);
+      rslt.put(obj);
+    }
+   return rslt;
+}
+
+
+
+private static final class DispatchStats {
+
+   private LongAdder call_count;
+   private LongAdder error_count;
+   private LongAdder total_time;
+   private AtomicLong max_time;
+   
+   DispatchStats() {
+      call_count = new LongAdder();
+      error_count = new LongAdder();
+      total_time = new LongAdder();
+      max_time = new AtomicLong();
+    }
+   
+   void record(long delta,boolean fail) {
+      call_count.increment();
+      if (fail) error_count.increment();
+      total_time.add(delta);
+      long max = max_time.get();
+      while (delta > max && !max_time.compareAndSet(max,delta)) {
+         max = max_time.get();
+       }
+    }
+
+}       // end of inner class DispatchStats
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Registered listener                                                     */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class Entry<T extends EventListener> {
+
+   private CatreEventBus<T> for_bus;
+   private DispatchStats dispatch_stats;
+   private T strong_ref;
+   private WeakReference<T> weak_ref;
+   private Executor async_executor;
+   private Queue<Consumer<T>> pending_events;
+   private AtomicBoolean is_scheduled;
+   
+   Entry(CatreEventBus<T> bus,T l,boolean weak,Executor ex) {
+      for_bus = bus;
+      String key = bus.bus_name + ":" + l.getClass().getName();
+      dispatch_stats = CatreEventBus.dispatch_stats.computeIfAbsent(key,(k) -> new DispatchStats());
+      if (weak) {
+         strong_ref = null;
+         weak_ref = new WeakReference<>(l);
+       }
+      else {
+         strong_ref = l;
+         weak_ref = null;
+       }
+      async_executor = ex;
+      if (ex != null) {
+         pending_events = new ConcurrentLinkedQueue<>();
+         is_scheduled = new AtomicBoolean();
+       }
+    }
+   
+   T getListener() {
+      if (strong_ref != null) return strong_ref;
+      return weak_ref.get();
+    }
+   
+   boolean isAsync()                    { return async_executor != null; }
+   
+   DispatchStats getStats()             { return dispatch_stats; }
+   
+   void enqueue(Consumer<T> evt) {
+      pending_events.add(evt);
+      if (is_scheduled.compareAndSet(false,true)) {
+         async_executor.execute(this::drain);
+       }
+    }
+   
+   private void drain() {
+      for ( ; ; ) {
+         Consumer<T> evt = pending_events.poll();
+         if (evt == null) {
+            is_scheduled.set(false);
+            // an event may have been queued after the poll
+            if (pending_events.isEmpty() || !is_scheduled.compareAndSet(false,true)) break;
+            continue;
+          }
+         T l = getListener();
+         if (l == null) {
+            pending_events.clear();
+            continue;
+          }
+         for_bus.deliver(this,l,evt);
+       }
+    }
+
+}       // end of inner class Entry
+
+
+
+}       // end of class CatreEventBus
+
+
+
+
+/* end of CatreEventBus.java */
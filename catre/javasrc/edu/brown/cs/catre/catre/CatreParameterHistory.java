@@ -0,0 +1,126 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatreParameterHistory.java                                      */
+/*                                                                              */
+/*      Recorded history of the values of a parameter                           */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catre;
+
+import org.json.JSONObject;
+
+/**
+ *      Bounded history of the values a parameter has had.  Values hold from
+ *      the time they are recorded until the next change, so window queries
+ *      take into account the value in effect at the start of the window.
+ *      Numeric queries apply to integer, real and boolean parameters (where
+ *      true counts as 1) and return NaN otherwise or if nothing is known.
+ **/
+
+public interface CatreParameterHistory
+{
+
+
+/**
+ *      Return the parameter whose history this is
+ **/
+
+CatreParameter getParameter();
+
+
+/**
+ *      Return the number of recorded changes
+ **/
+
+int size();
+
+
+/**
+ *      Return the value in effect at the given time, or null if unknown
+ **/
+
+Object getValueAt(long when);
+
+
+/**
+ *      Return the time of the last change in the window [from,to], or -1
+ *      if there was no change
+ **/
+
+long getLastChange(long from,long to);
+
+
+/**
+ *      Indicate whether the parameter had the given value at any point in
+ *      the window [from,to]
+ **/
+
+boolean hadValue(Object value,long from,long to);
+
+
+/**
+ *      Return the minimum value in effect over the window
+ **/
+
+double getMinimum(long from,long to);
+
+
+/**
+ *      Return the maximum value in effect over the window
+ **/
+
+double getMaximum(long from,long to);
+
+
+/**
+ *      Return the time-weighted average value over the window
+ **/
+
+double getAverage(long from,long to);
+
+
+/**
+ *      Return the history over the window as JSON.  If step is positive,
+ *      the window is downsampled into buckets of that many milliseconds.
+ **/
+
+JSONObject toJson(long from,long to,long step);
+
+
+
+}       // end of interface CatreParameterHistory
+
+
+
+
+/* end of CatreParameterHistory.java */
@@ -39,6 +39,7 @@ package edu.brown.cs.catre.catre;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.json.JSONObject;
 
@@ -116,6 +117,31 @@ JSONObject errorCheckRule(CatreRule cr);
 boolean runOnce(CatreTriggerContext ctx,Set<CatreDevice> relevant);
 
 
+/**
+ *      Set the quiet period (in ms) to wait after a change before the program
+ *      is rerun.  If adaptive is set, the period is shortened when the
+ *      universe has been idle.
+ **/
+
+void setRunDelay(long delay,boolean adaptive);
+
+
+/**
+ *      Set how long (in ms) an action whose effects already match the
+ *      device state is suppressed before it is sent again anyway.  A
+ *      value of zero or less never resends.
+ **/
+
+void setReassertInterval(long interval);
+
+
+/**
+ *      Return statistics about program evaluation
+ **/
+
+JSONObject getStatistics();
+
+
 /**
  *      Return a list of parameter references used by this program.  This
  *      can be used by CEDES to determine what messages need to be sent.
@@ -151,6 +177,21 @@ CatreCondition createCondition(CatreStore cs,Map<String,Object> map);
 void addProgramListener(CatreProgramListener listener);
 
 
+/**
+ *      Add a program listener that is only weakly held by the program
+ **/
+
+void addWeakProgramListener(CatreProgramListener listener);
+
+
+/**
+ *      Add a program listener whose updates are delivered in order by the
+ *      given executor rather than on the thread that changed the program
+ **/
+
+void addProgramListener(CatreProgramListener listener,Executor ex);
+
+
 /**
  *      Remove a program listener.
  **/
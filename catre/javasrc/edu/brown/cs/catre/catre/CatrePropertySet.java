@@ -58,6 +58,31 @@ public interface CatrePropertySet extends Map<String,String>
 void put(String key,Object value);
 
 
+/**
+ *      Return an unmodifiable version of this set.  The result can be
+ *      shared between conditions and rules and may be this set itself.
+ **/
+
+CatrePropertySet freeze();
+
+
+/**
+ *      Return an unmodifiable set that is this set with the given property
+ *      added or replaced.  This set is not changed.
+ **/
+
+CatrePropertySet with(String key,Object value);
+
+
+/**
+ *      Return an unmodifiable set containing the properties of this set
+ *      and of the given set, with values from the given set taking
+ *      precedence.  This set is not changed.
+ **/
+
+CatrePropertySet merge(CatrePropertySet ps);
+
+
 
 }       // end of interface CatrePropertySet
 
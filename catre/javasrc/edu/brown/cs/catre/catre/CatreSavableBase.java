@@ -38,6 +38,8 @@ package edu.brown.cs.catre.catre;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  *      Basic implementation of a CatreSaveable object.  This provides
@@ -56,6 +58,10 @@ public abstract class CatreSavableBase implements CatreSavable
 
 private String	data_uid;
 private boolean is_stored;
+private Object	stored_state;
+private long	stored_version;
+private AtomicLong save_version;
+private ReentrantLock store_lock;
 
 
 /********************************************************************************/
@@ -68,18 +74,27 @@ protected CatreSavableBase(String pfx)
 {
    data_uid = pfx + CatreUtil.randomString(24);
    is_stored = false;
+   stored_version = 0;
+   save_version = new AtomicLong();
+   store_lock = new ReentrantLock();
 }
 
 protected CatreSavableBase(CatreStore store)
 {
    data_uid = null;
    is_stored = true;
+   stored_version = 0;
+   save_version = new AtomicLong();
+   store_lock = new ReentrantLock();
 }
 
 protected CatreSavableBase(CatreStore store,Map<String,Object> map)
 {
    data_uid = map.get("_id").toString();
    is_stored = true;
+   stored_version = 0;
+   save_version = new AtomicLong();
+   store_lock = new ReentrantLock();
    store.recordObject(this);
 
    fromJson(store,map);
@@ -113,6 +128,52 @@ public boolean isStored()				{ return is_stored; }
 public void setStored() 				{ is_stored = true; }
 
 
+/**
+ *      Return the data store's summary of the object as last written.  The
+ *      store uses this to write only the parts of the object that changed.
+ *      It is null if the object has not been written since it was loaded.
+ **/
+
+public Object getStoredState()				{ return stored_state; }
+
+
+/**
+ *      Record the data store's summary of the object after a write.
+ **/
+
+public void setStoredState(Object st)			{ stored_state = st; }
+
+
+/**
+ *      Return the lock the data store holds while writing this object.
+ *      Both direct and deferred writes take it so that they are ordered.
+ **/
+
+public ReentrantLock getStoreLock()			{ return store_lock; }
+
+
+/**
+ *      Return the next save version.  The store takes one before it
+ *      converts the object to JSON.
+ **/
+
+public long nextSaveVersion()				{ return save_version.incrementAndGet(); }
+
+
+/**
+ *      Return the save version that was last written to the data store.
+ **/
+
+public long getStoredVersion()				{ return stored_version; }
+
+
+/**
+ *      Record the save version that was written to the data store.
+ **/
+
+public void setStoredVersion(long v)			{ stored_version = v; }
+
+
 /**
  *      Try to set the unique ID.  This will normally fail
  **/
@@ -36,8 +36,11 @@
 
 package edu.brown.cs.catre.catre;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.json.JSONObject;
+
 /**
  *      Interface representing the Catre data store.  Currently this is
  *      implemented using MONGODB, but it could be done otherwise as long as
@@ -108,12 +111,43 @@ Boolean validateCalendar(CatreUser cu,String id,String pwd);
 String saveObject(CatreSavable obj);
 
 
+/**
+ *      Note that an object has changed and should be saved.  The save is
+ *      done in the background and multiple changes in a short period are
+ *      combined into one write.
+ **/
+
+void saveObjectLater(CatreSavable obj);
+
+
+/**
+ *      Write any changes that are waiting to be saved.
+ **/
+
+void flush();
+
+
+/**
+ *      Return statistics about the store (e.g. deferred writes)
+ **/
+
+JSONObject getStatistics();
+
+
 /**
  *      Load a saveable object from the store
  **/
 
 CatreSavable loadObject(String iid);
 
+
+/**
+ *      Load a set of saveable objects.  Objects already loaded are returned
+ *      directly; the rest are fetched with as few requests as possible.
+ **/
+
+List<CatreSavable> loadObjects(Collection<String> iids);
+
 /**
  *      Remove an object from the store
  **/
@@ -127,6 +161,14 @@ void removeObject(String iid);
 void recordObject(CatreSavable object);
 
 
+/**
+ *      Drop an object from the in-memory cache without removing it from
+ *      the store so that the next load reads it again.
+ **/
+
+void unloadObject(String iid);
+
+
 /**
  *      Return the controller associated with this store
  **/
@@ -78,6 +78,15 @@ String getTablePrefix();
 CatreSavable create(CatreStore store,Map<String,Object> data);
 
 
+/**
+ *      Indicate whether objects from this table should stay in memory until
+ *      explicitly unloaded.  Otherwise they are kept in a bounded cache and
+ *      reloaded from the data store as needed.
+ **/
+
+default boolean keepLoaded()			{ return true; }
+
+
 
 }       // end of interface CatreTable
 
@@ -68,6 +68,14 @@ boolean isActive(long when);
 List<Calendar> getSlots(Calendar from,Calendar to);
 
 
+/**
+ *      Return the next time after the given one at which the event
+ *      starts or stops being active, or -1 if it does not change again.
+ **/
+
+long getNextBoundary(long when);
+
+
 /**
  *      Determine if this event can overlap with another event
  **/
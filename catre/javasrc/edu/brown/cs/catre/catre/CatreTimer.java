@@ -0,0 +1,77 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatreTimer.java                                                 */
+/*                                                                              */
+/*      Handle for a scheduled timer                                            */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.catre;
+
+
+
+/**
+ *      Handle for a one-shot timer scheduled with the controller's timer
+ *      service.  Cancelling the timer removes it from the service.
+ **/
+
+public interface CatreTimer
+{
+
+
+/**
+ *      Cancel the timer.  Returns true if the timer was pending and is now
+ *      cancelled, false if it had already run or been cancelled.
+ **/
+
+boolean cancel();
+
+
+/**
+ *      Return true if the timer has been cancelled
+ **/
+
+boolean isCancelled();
+
+
+/**
+ *      Return the time (in ms) at which the timer is scheduled to run
+ **/
+
+long getScheduledTime();
+
+
+}       // end of interface CatreTimer
+
+
+
+
+/* end of CatreTimer.java */
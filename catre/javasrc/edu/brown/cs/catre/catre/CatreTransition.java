@@ -37,6 +37,7 @@
 package edu.brown.cs.catre.catre;
 
 import java.util.Collection;
+import java.util.Map;
 
 /**
  *	A transition describes a potential action or change request for a
@@ -106,6 +107,26 @@ void perform(CatreParameterSet ps,CatrePropertySet p)
         throws CatreActionException;
 
 
+/**
+ *      Return the values this transition would leave in its device's own
+ *      parameters, given the action parameters and properties.  Returns
+ *      null if the effects of the transition are not known.
+ **/
+
+default Map<CatreParameter,Object> getEffects(CatreParameterSet ps,CatrePropertySet p)
+{
+   return null;
+}
+
+
+/**
+ *      Indicate that commands for this transition should always be sent,
+ *      even if the device already appears to be in the target state.
+ **/
+
+default boolean isAlwaysSent()                  { return false; }
+
+
 }       // end of interface CatreTransition
 
 
@@ -37,6 +37,7 @@
 package edu.brown.cs.catre.catre;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  *	The home is a set of devices and sensors that are available for a single
@@ -88,6 +89,13 @@ void removeUniverseListener(CatreUniverseListener l);
 void start();
 
 
+/**
+ *      Stop the universe's devices prior to unloading it
+ **/
+
+void stop();
+
+
 /**
  *	Return global controller
  **/
@@ -95,6 +103,14 @@ void start();
 CatreController getCatre();
 
 
+/**
+ *      Return the mailbox for this universe.  Bridge events, timers and
+ *      program updates for the universe are run through it one at a time.
+ **/
+
+Executor getMailbox();
+
+
 
 /**
  *      Return the user associated with the universe
@@ -131,6 +147,13 @@ CatreParameterSet createSavedParameterSet(CatreStore cs,Map<String,Object> map);
 CatrePropertySet createPropertySet();
 
 
+/**
+ *      Return the shared empty (unmodifiable) property set
+ **/
+
+CatrePropertySet getEmptyPropertySet();
+
+
 
 /**
  *      Create a set of action values for a transition
@@ -189,6 +212,13 @@ void addDevice(CatreDevice device);
 void removeDevice(CatreDevice device);
 
 
+/**
+ *      Return true if any enabled device polls or runs its own timers
+ **/
+
+boolean hasPolledDevices();
+
+
 /**
  *      Create a boolean parameter for an internal device.
  **/
@@ -319,31 +349,24 @@ CatreTransitionRef createTransitionRef(CatreReferenceListener ref,CatreStore cs,
 /********************************************************************************/
 
 /**
- *      Lock this universe for update
- **/
-
-void updateLock();
-
-
-/**
- *      Release the universe update lock
+ *      Indicate we are starting to update the universe
  **/
 
-void updateUnlock();
+void startUpdate();
 
 
 /**
- *      Indicate we are starting to update the universe
+ *      Indicate we are done updating the universe
  **/
 
-void startUpdate();
+void endUpdate();
 
 
 /**
- *      Indicate we are done updating the universe
+ *      Check if the universe is currently being updated
  **/
 
-void endUpdate();
+boolean isUpdating();
 
 
 /**
@@ -391,6 +414,23 @@ void setValue(CatreParameter parameter,Object value);
 Object getValue(CatreParameter parameter);
 
 
+/**
+ *      Get the recorded value history of a sensor parameter, or null if
+ *      no history is being kept for it
+ **/
+
+CatreParameterHistory getHistory(CatreParameter parameter);
+
+
+/**
+ *      Return the model epoch.  This changes whenever devices are added,
+ *      removed, enabled, disabled or have their parameters or transitions
+ *      changed, so that resolved references can be reused until then.
+ **/
+
+long getModelEpoch();
+
+
 
 
 }	// end of interface CatreUniverse
@@ -66,6 +66,37 @@ String getUserName();
 CatreUniverse getUniverse();
 
 
+/**
+ *      Return the id of the user's universe without loading it
+ **/
+
+String getUniverseId();
+
+
+/**
+ *      Drop the loaded universe so that it is reloaded from the store
+ *      the next time it is needed.
+ **/
+
+void unloadUniverse();
+
+
+/**
+ *      Return the time at which an unloaded universe has to be reloaded
+ *      for its timers.  This is 0 if not known (the universe was not
+ *      unloaded) and Long.MAX_VALUE if the universe has no timers.
+ **/
+
+long getWakeTime();
+
+
+/**
+ *      Set the time at which an unloaded universe has to be reloaded
+ **/
+
+void setWakeTime(long when);
+
+
 
 /**
  *	Get authorization information for a bridge
@@ -52,7 +52,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
 
 import javax.annotation.Tainted;
 
@@ -65,9 +68,11 @@ import edu.brown.cs.catre.catre.CatreBridge;
 import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreDevice;
+import edu.brown.cs.catre.catre.CatreEventBus;
 import edu.brown.cs.catre.catre.CatreJson;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreParameter;
+import edu.brown.cs.catre.catre.CatreParameterHistory;
 import edu.brown.cs.catre.catre.CatreProgram;
 import edu.brown.cs.catre.catre.CatreRule;
 import edu.brown.cs.catre.catre.CatreSavable;
@@ -239,28 +244,32 @@ private BowerRouter<CatserveSessionImpl> setupRouter()
    br.addRoute("ALL","/keypair",this::handleKeyPair);
    br.addRoute("POST","/removeuser",this::handleRemoveUser);
    
-   br.addRoute("POST","/bridge/add",this::handleAddBridge);
+   br.addRoute("POST","/bridge/add",(e,cs) -> onMailbox(e,cs,this::handleAddBridge));
    br.addRoute("GET","/bridge/list",this::handleListBridges);
    br.addRoute("GET","/universe",this::handleGetUniverse);
-   br.addRoute("POST","/universe/discover",this::handleDiscover);
-   br.addRoute("POST","/universe/addvirtual",this::handleAddVirtualDevice);
-   br.addRoute("POST","/universe/addweb",this::handleAddWebDevice);
-   br.addRoute("POST","/universe/removedevice",this::handleRemoveDevice);
-   br.addRoute("POST","/universe/enabledevice",this::handleEnableDevice);
+   br.addRoute("POST","/universe/discover",(e,cs) -> onMailbox(e,cs,this::handleDiscover));
+   br.addRoute("POST","/universe/addvirtual",(e,cs) -> onMailbox(e,cs,this::handleAddVirtualDevice));
+   br.addRoute("POST","/universe/addweb",(e,cs) -> onMailbox(e,cs,this::handleAddWebDevice));
+   br.addRoute("POST","/universe/removedevice",(e,cs) -> onMailbox(e,cs,this::handleRemoveDevice));
+   br.addRoute("POST","/universe/enabledevice",(e,cs) -> onMailbox(e,cs,this::handleEnableDevice));
    br.addRoute("POST","/universe/deviceStates",this::handleDeviceStates);
-   br.addRoute("POST","/universe/shareCondition",this::handleShareCondition);
-   br.addRoute("POST","/universe/unshareCondition",this::handleUnshareCondition);
-   br.addRoute("POST","/universe/cleanShared",this::handleCleanSharedConditions);
+   br.addRoute("POST","/universe/shareCondition",(e,cs) -> onMailbox(e,cs,this::handleShareCondition));
+   br.addRoute("POST","/universe/unshareCondition",(e,cs) -> onMailbox(e,cs,this::handleUnshareCondition));
+   br.addRoute("POST","/universe/cleanShared",(e,cs) -> onMailbox(e,cs,this::handleCleanSharedConditions));
    br.addRoute("POST","/universe/getValue",this::handleGetValue);
+   br.addRoute("GET","/universe/statistics",this::handleGetStatistics);
+   br.addRoute("GET","/universe/history",this::handleGetHistory);
+   br.addRoute("POST","/universe/runDelay",(e,cs) -> onMailbox(e,cs,this::handleSetRunDelay));
+   br.addRoute("POST","/universe/reassert",(e,cs) -> onMailbox(e,cs,this::handleSetReassert));
    br.addRoute("GET","/rules",this::handleListRules);
-   br.addRoute("POST","/rule/add",this::handleAddRule);
-   br.addRoute("POST","/rule/edit",this::handleEditRule);
+   br.addRoute("POST","/rule/add",(e,cs) -> onMailbox(e,cs,this::handleAddRule));
+   br.addRoute("POST","/rule/edit",(e,cs) -> onMailbox(e,cs,this::handleEditRule));
    br.addRoute("POST","/rule/validate",this::handleValidateRule);
-   br.addRoute("POST","/rule/remove",this::handleRemoveRule);
+   br.addRoute("POST","/rule/remove",(e,cs) -> onMailbox(e,cs,this::handleRemoveRule));
    
-   br.addRoute("POST","/rule/:ruleid/edit",this::handleEditRule);
-   br.addRoute("POST","/rule/:ruleid/remove",this::handleRemoveRule);
-   br.addRoute("POST","/rule/:ruleid/priority",this::handleSetRulePriority);
+   br.addRoute("POST","/rule/:ruleid/edit",(e,cs) -> onMailbox(e,cs,this::handleEditRule));
+   br.addRoute("POST","/rule/:ruleid/remove",(e,cs) -> onMailbox(e,cs,this::handleRemoveRule));
+   br.addRoute("POST","/rule/:ruleid/priority",(e,cs) -> onMailbox(e,cs,this::handleSetRulePriority));
    
    return br;
 }
@@ -400,13 +409,13 @@ private String handleRemoveUser(HttpExchange e,CatserveSessionImpl cs)
       return BowerRouter.errorResponse(e,cs,400,"User doesn't exist");
     }
    
-   CatreUniverse cuv = cs.getUniverse(catre_control);
-   if (cuv != null) {
-      catre_control.getDatabase().removeObject(cuv.getDataUID());
-    }
-   if (cu != null) {
-      catre_control.getDatabase().removeObject(cu.getDataUID());
+   // stop the universe without loading it, then remove what was stored
+   String uvid = cu.getUniverseId();
+   catre_control.removeUniverse(cu);
+   if (uvid != null) {
+      catre_control.getDatabase().removeObject(uvid);
     }
+   catre_control.getDatabase().removeObject(cu.getDataUID());
    
    return handleLogout(e,cs);
 }
@@ -653,6 +662,35 @@ private String handleCleanSharedConditions(HttpExchange e,CatserveSessionImpl cs
 }
 
 
+/**
+ *      Run a request that changes the universe on the universe's mailbox so
+ *      it never overlaps the universe's own updates or the snapshot taken
+ *      when the universe is saved.
+ **/
+
+private String onMailbox(HttpExchange e,CatserveSessionImpl cs,
+      BiFunction<HttpExchange,CatserveSessionImpl,String> hdlr)
+{
+   CatreUniverse cu = cs.getUniverse(catre_control);
+   Executor mbox = (cu == null ? null : cu.getMailbox());
+   if (mbox == null) return hdlr.apply(e,cs);
+
+   try {
+      return CompletableFuture.supplyAsync(() -> hdlr.apply(e,cs),mbox).get();
+    }
+   catch (ExecutionException ex) {
+      Throwable t = ex.getCause();
+      if (t instanceof RuntimeException) throw (RuntimeException) t;
+      if (t instanceof Error) throw (Error) t;
+      throw new IllegalStateException(t);
+    }
+   catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return BowerRouter.errorResponse(e,cs,500,"Request interrupted");
+    }
+}
+
+
 private String handleGetValue(HttpExchange e,CatserveSessionImpl cs)
 {
    CatreUniverse cu = cs.getUniverse(catre_control);
@@ -682,6 +720,112 @@ private String handleGetValue(HttpExchange e,CatserveSessionImpl cs)
 
 
 
+private String handleGetHistory(HttpExchange e,CatserveSessionImpl cs)
+{
+   CatreUniverse cu = cs.getUniverse(catre_control);
+   String dnm = BowerRouter.getParameter(e,"DEVICE");
+   String pnm = BowerRouter.getParameter(e,"PARAMETER");
+
+   CatreDevice cd = cu.findDevice(dnm);
+   if (cd == null) {
+      return BowerRouter.errorResponse(e,cs,400,"Bad device");
+    }
+   CatreParameter cp = cd.findParameter(pnm);
+   if (cp == null) {
+      return BowerRouter.errorResponse(e,cs,400,"Bad parameter");
+    }
+
+   long to = getTimeParameter(e,"TO",System.currentTimeMillis());
+   long from = getTimeParameter(e,"FROM",to - HISTORY_WINDOW);
+   long step = getTimeParameter(e,"STEP",0);
+
+   CatreParameterHistory hist = cu.getHistory(cp);
+   JSONObject rslt = null;
+   if (hist == null) {
+      rslt = buildJson("PARAMETER",pnm,"FROM",from,"TO",to,"COUNT",0,
+	    "DATA",new JSONArray());
+    }
+   else {
+      rslt = hist.toJson(from,to,step);
+    }
+   rslt.put("DEVICE",dnm);
+
+   return BowerRouter.jsonOKResponse(cs,"HISTORY",rslt);
+}
+
+
+private long getTimeParameter(HttpExchange e,String name,long dflt)
+{
+   String v = BowerRouter.getParameter(e,name);
+   if (v == null || v.isEmpty()) return dflt;
+   try {
+      return Long.parseLong(v);
+    }
+   catch (NumberFormatException ex) { }
+
+   return dflt;
+}
+
+
+
+private String handleGetStatistics(HttpExchange e,CatserveSessionImpl cs)
+{
+   CatreUniverse cu = cs.getUniverse(catre_control);
+   CatreProgram cp = cu.getProgram();
+   
+   return BowerRouter.jsonOKResponse(cs,"PROGRAM",cp.getStatistics(),
+	 "EVENTS",CatreEventBus.getStatistics(),
+	 "STORE",catre_control.getDatabase().getStatistics());
+}
+
+
+
+private String handleSetRunDelay(HttpExchange e,CatserveSessionImpl cs)
+{
+   CatreUniverse cu = cs.getUniverse(catre_control);
+   CatreProgram cp = cu.getProgram();
+   
+   String dstr = BowerRouter.getParameter(e,"RUNDELAY");
+   if (dstr == null) {
+      return BowerRouter.errorResponse(e,cs,400,"No delay given");
+    }
+   boolean adapt = Boolean.parseBoolean(BowerRouter.getParameter(e,"ADAPTIVE"));
+   
+   try {
+      long delay = Long.parseLong(dstr);
+      if (delay >= 0) {
+	 cp.setRunDelay(delay,adapt);
+	 return BowerRouter.jsonOKResponse(cs);
+       }
+    }
+   catch (NumberFormatException err) { }
+   
+   return BowerRouter.errorResponse(e,cs,400,"Bad delay value");
+}
+
+
+
+private String handleSetReassert(HttpExchange e,CatserveSessionImpl cs)
+{
+   CatreUniverse cu = cs.getUniverse(catre_control);
+   CatreProgram cp = cu.getProgram();
+   
+   String istr = BowerRouter.getParameter(e,"REASSERT");
+   if (istr == null) {
+      return BowerRouter.errorResponse(e,cs,400,"No interval given");
+    }
+   
+   try {
+      cp.setReassertInterval(Long.parseLong(istr));
+      return BowerRouter.jsonOKResponse(cs);
+    }
+   catch (NumberFormatException err) { }
+   
+   return BowerRouter.errorResponse(e,cs,400,"Bad interval value");
+}
+
+
+
 private String handleListRules(HttpExchange e,CatserveSessionImpl cs)
 {
    CatreUniverse cu = cs.getUniverse(catre_control);
@@ -893,6 +1037,8 @@ private  final class SessionTable implements CatreTable {
       return new CatserveSessionImpl(session_store,store,data);
     }
 
+   @Override public boolean keepLoaded()	{ return false; }
+
 }  // end of inner class SessionTable
 
 }       // end of class CatserveBowerServer
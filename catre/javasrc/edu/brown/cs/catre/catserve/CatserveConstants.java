@@ -58,6 +58,8 @@ String	PNG_MIME = "image/png";
 
 String SESSION_PREFIX = "SESS_";
 
+long	HISTORY_WINDOW = 60*60*1000;		// default history query window
+
 
 
 
@@ -141,7 +141,7 @@ public CatreUniverse getUniverse(CatreController cc)
 
    if (universe_id == null || expires_at == 0) return null;
 
-   return (CatreUniverse) cc.getDatabase().loadObject(universe_id);
+   return cc.getUniverse(getUser(cc));
 }
 
 
@@ -0,0 +1,197 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatstoreCache.java                                              */
+/*                                                                              */
+/*      Cache of objects loaded from the data store                             */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreSavable;
+
+/**
+ *      Object cache for the store.  Objects whose table asks to be kept in
+ *      memory (users, universes) are held strongly until they are explicitly
+ *      unloaded or removed.  Everything else (sessions, oauth records) goes
+ *      into a bounded LRU so the cache cannot grow without limit and entries
+ *      only disappear when they are the least recently used.
+ **/
+
+class CatstoreCache implements CatstoreConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private Map<String,CatreSavable> pinned_objects;
+private Map<String,CatreSavable> recent_objects;
+private int			max_recent;
+private AtomicLong		num_hits;
+private AtomicLong		num_misses;
+private AtomicLong		num_evictions;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatstoreCache(int size)
+{
+   max_recent = size;
+   pinned_objects = new ConcurrentHashMap<>();
+   recent_objects = new RecentMap();
+   num_hits = new AtomicLong();
+   num_misses = new AtomicLong();
+   num_evictions = new AtomicLong();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+CatreSavable get(String uid)
+{
+   CatreSavable rslt = pinned_objects.get(uid);
+   if (rslt == null) {
+      synchronized (recent_objects) {
+	 rslt = recent_objects.get(uid);
+       }
+    }
+
+   if (rslt == null) num_misses.incrementAndGet();
+   else num_hits.incrementAndGet();
+
+   return rslt;
+}
+
+
+void put(CatreSavable obj,boolean pin)
+{
+   String uid = obj.getDataUID();
+   if (uid == null) return;
+
+   if (pin) {
+      pinned_objects.put(uid,obj);
+    }
+   else if (!pinned_objects.containsKey(uid)) {
+      synchronized (recent_objects) {
+	 recent_objects.put(uid,obj);
+       }
+    }
+}
+
+
+CatreSavable remove(String uid)
+{
+   CatreSavable rslt = pinned_objects.remove(uid);
+   synchronized (recent_objects) {
+      CatreSavable r1 = recent_objects.remove(uid);
+      if (rslt == null) rslt = r1;
+    }
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Statistics								*/
+/*										*/
+/********************************************************************************/
+
+JSONObject getStatistics()
+{
+   JSONObject rslt = new JSONObject();
+   rslt.put("PINNED",pinned_objects.size());
+   synchronized (recent_objects) {
+      rslt.put("RECENT",recent_objects.size());
+    }
+   rslt.put("CAPACITY",max_recent);
+   rslt.put("HITS",num_hits.get());
+   rslt.put("MISSES",num_misses.get());
+   rslt.put("EVICTIONS",num_evictions.get());
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Bounded LRU map 							*/
+/*										*/
+/********************************************************************************/
+
+private final class RecentMap extends LinkedHashMap<String,CatreSavable> {
+
+   private static final long serialVersionUID = 1;
+
+   RecentMap() {
+      super(64,0.75f,true);
+    }
+
+   @Override protected boolean removeEldestEntry(Map.Entry<String,CatreSavable> e) {
+      if (size() <= max_recent) return false;
+      num_evictions.incrementAndGet();
+      return true;
+    }
+
+}	// end of inner class RecentMap
+
+
+
+}	// end of class CatstoreCache
+
+
+
+
+/* end of CatstoreCache.java */
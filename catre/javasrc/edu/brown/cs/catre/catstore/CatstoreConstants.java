@@ -36,6 +36,10 @@
 
 package edu.brown.cs.catre.catstore;
 
+import java.util.List;
+
+import edu.brown.cs.catre.catre.CatreSavable;
+import edu.brown.cs.catre.catre.CatreStore;
 
 
 public interface CatstoreConstants
@@ -43,6 +47,42 @@ public interface CatstoreConstants
 
 String  USERS_PREFIX = "USER_";
 
+long    WRITE_DELAY = 2000;             // coalescing window for deferred writes
+long    WRITE_FLUSH_INTERVAL = 500;     // how often deferred writes are checked
+int     WRITE_BATCH_SIZE = 50;          // maximum objects per bulk write
+long    WRITE_REMOVED_TIME = 3600000;   // how long removed ids block deferred writes
+long    WRITE_SNAPSHOT_WAIT = 10000;    // wait for a universe mailbox to take a snapshot
+
+int     DELTA_DEPTH = 2;                // nesting of maps compared field by field
+int     DELTA_MAX_PATHS = 32;           // more changed paths than this replaces the document
+int     DELTA_FULL_INTERVAL = 100;      // incremental writes before a full replace
+
+int     CACHE_SIZE = 1000;              // cached objects not kept loaded (sessions, oauth)
+
+int     LOAD_BATCH_SIZE = 100;          // ids per $in query when bulk loading
+int     LOAD_THREADS = 4;               // threads used to build bulk loaded objects
+
+long    FILE_LOG_MAGIC = 0x4341545245444230L;   // header of the file store log
+long    COMPACT_INTERVAL = 10*60*1000;  // how often compaction is considered
+long    COMPACT_MIN_GARBAGE = 1024*1024;        // dead bytes needed before compacting
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Operations every store implementation provides to this package		*/
+/*										*/
+/********************************************************************************/
+
+interface StoreAccess extends CatreStore {
+
+   <T extends CatreSavable> T findOne(String collection,String fld,String val,T dflt);
+   void deleteFrom(String collection,String fld,String val);
+   void saveObjects(List<CatstoreSnapshot> snaps);
+
+}	// end of inner interface StoreAccess
+
+
 
 
 }       // end of interface CatstoreConstants
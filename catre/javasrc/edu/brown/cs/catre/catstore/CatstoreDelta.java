@@ -0,0 +1,413 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatstoreDelta.java                                              */
+/*                                                                              */
+/*      Compute incremental updates for a stored document                       */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bson.Document;
+
+/**
+ *      Compare a document about to be written with a summary of what was
+ *      last written for the same object and produce a Mongo update that only
+ *      touches the changed parts.  The summary holds 64-bit hashes rather than
+ *      the values themselves.  Nested maps (to DELTA_DEPTH) are compared field
+ *      by field.  Lists of sub-objects with ids (devices, rules) are compared
+ *      element by element so that changing one rule sets only
+ *      PROGRAM.RULES.n and adding one uses $push.  If the structure changes
+ *      too much, or after DELTA_FULL_INTERVAL incremental writes, the caller
+ *      is told to replace the whole document.
+ **/
+
+class CatstoreDelta implements CatstoreConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private Document	new_document;
+private MapSig		new_signature;
+private Document	set_values;
+private Document	unset_values;
+private Document	push_values;
+private int		num_paths;
+private int		delta_count;
+
+private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+private static final long FNV_PRIME = 0x100000001b3L;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatstoreDelta(Document doc)
+{
+   new_document = doc;
+   new_signature = (MapSig) buildSignature(doc,0);
+   set_values = new Document();
+   unset_values = new Document();
+   push_values = new Document();
+   num_paths = 0;
+   delta_count = 0;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Update computation							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *      Return the update to apply given the state saved from the last write.
+ *      This returns null if the whole document should be replaced and an
+ *      empty document if nothing changed.
+ **/
+
+Document getUpdate(Object oldstate)
+{
+   if (!(oldstate instanceof StoredState)) return null;
+   StoredState ss = (StoredState) oldstate;
+   if (ss.getCount() >= DELTA_FULL_INTERVAL) return null;
+   delta_count = ss.getCount() + 1;
+
+   Document rslt = new Document();
+   if (ss.getSignature().getHash() == new_signature.getHash()) return rslt;
+
+   diffMap("",ss.getSignature(),new_document,new_signature);
+   if (num_paths > DELTA_MAX_PATHS) return null;
+
+   if (!set_values.isEmpty()) rslt.put("$set",set_values);
+   if (!unset_values.isEmpty()) rslt.put("$unset",unset_values);
+   if (!push_values.isEmpty()) rslt.put("$push",push_values);
+
+   return rslt;
+}
+
+
+/**
+ *      Return the state to save with the object once the write succeeded
+ **/
+
+Object getNewState(Document update)
+{
+   return new StoredState(new_signature,(update == null ? 0 : delta_count));
+}
+
+
+
+private void diffMap(String pfx,MapSig old,Map<?,?> val,MapSig nsig)
+{
+   for (Map.Entry<?,?> ent : val.entrySet()) {
+      String key = ent.getKey().toString();
+      if (pfx.isEmpty() && key.equals("_id")) continue;
+      Signature oc = old.getChild(key);
+      Signature nc = nsig.getChild(key);
+      if (oc != null && oc.getHash() == nc.getHash()) continue;
+      String path = pfx + key;
+      if (oc instanceof MapSig && nc instanceof MapSig) {
+	 diffMap(path + ".",(MapSig) oc,(Map<?,?>) ent.getValue(),(MapSig) nc);
+       }
+      else if (oc instanceof ListSig && nc instanceof ListSig) {
+	 diffList(path,(ListSig) oc,(List<?>) ent.getValue(),(ListSig) nc);
+       }
+      else addPath(set_values,path,ent.getValue());
+    }
+
+   for (String key : old.getKeys()) {
+      if (!val.containsKey(key)) addPath(unset_values,pfx + key,"");
+    }
+}
+
+
+private void diffList(String path,ListSig old,List<?> val,ListSig nsig)
+{
+   int olen = old.size();
+   int nlen = nsig.size();
+   boolean samepfx = nlen >= olen;
+   for (int i = 0; samepfx && i < olen; ++i) {
+      if (!old.getId(i).equals(nsig.getId(i))) samepfx = false;
+    }
+   if (!samepfx) {
+      // elements removed or reordered
+      addPath(set_values,path,val);
+      return;
+    }
+
+   List<Integer> chng = new ArrayList<>();
+   for (int i = 0; i < olen; ++i) {
+      if (old.getHash(i) != nsig.getHash(i)) chng.add(i);
+    }
+
+   if (nlen > olen) {
+      // mongo does not allow $push and $set on elements of the same array
+      if (!chng.isEmpty()) addPath(set_values,path,val);
+      else {
+	 List<Object> add = new ArrayList<>(val.subList(olen,nlen));
+	 addPath(push_values,path,new Document("$each",add));
+       }
+      return;
+    }
+
+   for (Integer i : chng) {
+      addPath(set_values,path + "." + i,val.get(i));
+    }
+}
+
+
+private void addPath(Document doc,String path,Object val)
+{
+   ++num_paths;
+   if (num_paths <= DELTA_MAX_PATHS) doc.put(path,val);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Signature methods							*/
+/*										*/
+/********************************************************************************/
+
+private static Signature buildSignature(Object v,int depth)
+{
+   if (v instanceof Map && depth < DELTA_DEPTH && hasSafeKeys((Map<?,?>) v)) {
+      Map<?,?> m = (Map<?,?>) v;
+      Map<String,Signature> kids = new HashMap<>();
+      TreeMap<String,Long> sorted = new TreeMap<>();
+      for (Map.Entry<?,?> ent : m.entrySet()) {
+	 String k = ent.getKey().toString();
+	 Signature s = buildSignature(ent.getValue(),depth+1);
+	 kids.put(k,s);
+	 sorted.put(k,s.getHash());
+       }
+      long h = mix(FNV_OFFSET,'M');
+      for (Map.Entry<String,Long> ent : sorted.entrySet()) {
+	 h = hashString(h,ent.getKey());
+	 h = mixLong(h,ent.getValue());
+       }
+      return new MapSig(h,kids);
+    }
+   else if (v instanceof List && depth <= DELTA_DEPTH && hasIds((List<?>) v)) {
+      List<?> l = (List<?>) v;
+      String [] ids = new String[l.size()];
+      long [] hashes = new long[l.size()];
+      long h = mix(FNV_OFFSET,'I');
+      for (int i = 0; i < ids.length; ++i) {
+	 Map<?,?> m = (Map<?,?>) l.get(i);
+	 ids[i] = m.get("_id").toString();
+	 hashes[i] = hashValue(FNV_OFFSET,m);
+	 h = mixLong(h,hashes[i]);
+       }
+      return new ListSig(h,ids,hashes);
+    }
+
+   return new Signature(hashValue(FNV_OFFSET,v));
+}
+
+
+private static boolean hasSafeKeys(Map<?,?> m)
+{
+   for (Object k : m.keySet()) {
+      String s = String.valueOf(k);
+      if (s.isEmpty() || s.contains(".") || s.startsWith("$")) return false;
+    }
+   return true;
+}
+
+
+private static boolean hasIds(List<?> l)
+{
+   for (Object o : l) {
+      if (!(o instanceof Map)) return false;
+      if (((Map<?,?>) o).get("_id") == null) return false;
+    }
+   return true;
+}
+
+
+private static long hashValue(long h,Object v)
+{
+   if (v == null) return mix(h,'N');
+   if (v instanceof Map) {
+      Map<?,?> m = (Map<?,?>) v;
+      TreeMap<String,Object> sorted = new TreeMap<>();
+      for (Map.Entry<?,?> ent : m.entrySet()) {
+	 sorted.put(String.valueOf(ent.getKey()),ent.getValue());
+       }
+      h = mix(h,'M');
+      for (Map.Entry<String,Object> ent : sorted.entrySet()) {
+	 h = hashString(h,ent.getKey());
+	 h = hashValue(h,ent.getValue());
+       }
+      return mix(h,'m');
+    }
+   if (v instanceof Collection) {
+      h = mix(h,'L');
+      for (Object o : (Collection<?>) v) h = hashValue(h,o);
+      return mix(h,'l');
+    }
+   if (v instanceof Object []) {
+      h = mix(h,'L');
+      for (Object o : (Object []) v) h = hashValue(h,o);
+      return mix(h,'l');
+    }
+   if (v instanceof String) {
+      return hashString(mix(h,'S'),(String) v);
+    }
+
+   h = hashString(h,v.getClass().getName());
+   return hashString(h,v.toString());
+}
+
+
+private static long hashString(long h,String s)
+{
+   for (int i = 0; i < s.length(); ++i) h = mix(h,s.charAt(i));
+   return mix(h,0);
+}
+
+
+private static long mixLong(long h,long v)
+{
+   for (int i = 0; i < 8; ++i) {
+      h = mix(h,(int) (v & 0xff));
+      v >>>= 8;
+    }
+   return h;
+}
+
+
+private static long mix(long h,int c)
+{
+   return (h ^ c) * FNV_PRIME;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Signature representation						*/
+/*										*/
+/********************************************************************************/
+
+private static final class StoredState {
+
+   private MapSig doc_signature;
+   private int update_count;
+
+   StoredState(MapSig sig,int ct) {
+      doc_signature = sig;
+      update_count = ct;
+    }
+
+   MapSig getSignature()			{ return doc_signature; }
+   int getCount()				{ return update_count; }
+
+}	// end of inner class StoredState
+
+
+
+private static class Signature {
+
+   private long value_hash;
+
+   Signature(long h) {
+      value_hash = h;
+    }
+
+   long getHash()				{ return value_hash; }
+
+}	// end of inner class Signature
+
+
+
+private static final class MapSig extends Signature {
+
+   private Map<String,Signature> child_signatures;
+
+   MapSig(long h,Map<String,Signature> kids) {
+      super(h);
+      child_signatures = kids;
+    }
+
+   Signature getChild(String k) 		{ return child_signatures.get(k); }
+   Iterable<String> getKeys()			{ return child_signatures.keySet(); }
+
+}	// end of inner class MapSig
+
+
+
+private static final class ListSig extends Signature {
+
+   private String [] element_ids;
+   private long [] element_hashes;
+
+   ListSig(long h,String [] ids,long [] hashes) {
+      super(h);
+      element_ids = ids;
+      element_hashes = hashes;
+    }
+
+   int size()					{ return element_ids.length; }
+   String getId(int i)				{ return element_ids[i]; }
+   long getHash(int i)				{ return element_hashes[i]; }
+
+}	// end of inner class ListSig
+
+
+
+}	// end of class CatstoreDelta
+
+
+
+
+/* end of CatstoreDelta.java */
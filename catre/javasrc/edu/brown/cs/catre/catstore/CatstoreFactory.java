@@ -36,7 +36,9 @@
 
 package edu.brown.cs.catre.catstore;
 
+import java.io.File;
 import java.util.Map;
+import java.util.Properties;
 
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreSavable;
@@ -54,7 +56,7 @@ public class CatstoreFactory implements CatstoreConstants
 /*										*/
 /********************************************************************************/
 
-private CatstoreMongo mongo_store;
+private StoreAccess	data_store;
 
 
 
@@ -67,8 +69,14 @@ private CatstoreMongo mongo_store;
 
 public CatstoreFactory(CatreController cc)
 {
-   mongo_store = new CatstoreMongo(cc);
-   mongo_store.register(new UsersTable());
+   String kind = cc.getProperties().getProperty("store","mongo");
+   if (kind.equalsIgnoreCase("file")) {
+      data_store = new CatstoreFile(cc);
+    }
+   else {
+      data_store = new CatstoreMongo(cc);
+    }
+   data_store.register(new UsersTable());
 }
 
 
@@ -81,7 +89,20 @@ public CatstoreFactory(CatreController cc)
 
 public CatreStore getStore()
 {
-   return mongo_store;
+   return data_store;
+}
+
+
+/**
+ *      Return the directory used by the file-based store (property storedir)
+ **/
+
+public static File getFileStoreDirectory(File base,Properties p)
+{
+   String dir = p.getProperty("storedir");
+   if (dir != null) return new File(dir);
+   File f1 = new File(base,"secret");
+   return new File(f1,"catrestore");
 }
 
 
@@ -0,0 +1,1008 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatstoreFile.java                                               */
+/*                                                                              */
+/*      File-based data store using an append-only log                          */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreException;
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreOauth;
+import edu.brown.cs.catre.catre.CatreSavable;
+import edu.brown.cs.catre.catre.CatreSavableBase;
+import edu.brown.cs.catre.catre.CatreTable;
+import edu.brown.cs.catre.catre.CatreUser;
+import edu.brown.cs.catre.catre.CatreUtil;
+
+/**
+ *      Data store that keeps its documents in a local append-only log rather
+ *      than in MongoDB.  Each save appends the JSON form of the object; each
+ *      delete appends a tombstone.  The location of the current version of
+ *      every object is kept in memory and written to an index file that is
+ *      memory mapped at startup, so only the part of the log written after
+ *      the index needs to be scanned.  The log is compacted periodically
+ *      once enough of it is dead.  This is meant for single-node and test
+ *      deployments.
+ **/
+
+class CatstoreFile implements CatstoreConstants, CatstoreConstants.StoreAccess
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatreController catre_control;
+private CatstoreOauth	oauth_control;
+private Map<String,CatreTable> known_tables;
+private CatstoreCache	object_cache;
+private CatstoreWriteBehind write_behind;
+
+private File		log_file;
+private File		index_file;
+private RandomAccessFile log_data;
+private long		log_id;
+private long		log_length;
+private long		live_bytes;
+private Map<String,LogRecord> record_index;
+
+private AtomicLong	read_count;
+private AtomicLong	write_count;
+private AtomicLong	compact_count;
+
+private static final int OP_PUT = 1;
+private static final int OP_DELETE = 2;
+private static final int HEADER_SIZE = 16;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatstoreFile(CatreController cc)
+{
+   catre_control = cc;
+
+   Properties p = cc.getProperties();
+   File dir = CatstoreFactory.getFileStoreDirectory(cc.findBaseDirectory(),p);
+   dir.mkdirs();
+   log_file = new File(dir,"catre.log");
+   index_file = new File(dir,"catre.index");
+
+   int csz = CACHE_SIZE;
+   try {
+      csz = Integer.parseInt(p.getProperty("cachesize",Integer.toString(CACHE_SIZE)));
+    }
+   catch (NumberFormatException e) { }
+   object_cache = new CatstoreCache(csz);
+
+   known_tables = new HashMap<>();
+   record_index = new HashMap<>();
+   read_count = new AtomicLong();
+   write_count = new AtomicLong();
+   compact_count = new AtomicLong();
+
+   try {
+      openLog();
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATSTORE","Problem opening file store " + log_file,e);
+      System.exit(1);
+    }
+
+   oauth_control = new CatstoreOauth(this);
+   write_behind = new CatstoreWriteBehind(this,cc);
+
+   cc.schedule(this::checkCompact,COMPACT_INTERVAL,COMPACT_INTERVAL);
+   Runtime.getRuntime().addShutdownHook(new Thread(this::flush,"CatstoreFileClose"));
+
+   CatreLog.logD("CATSTORE","OPEN FILE STORE " + log_file + " " +
+	 record_index.size() + " " + log_length);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public CatreController getCatre()	{ return catre_control; }
+
+@Override public CatreOauth getOauth()		{ return oauth_control; }
+
+
+
+/********************************************************************************/
+/*										*/
+/*	User database operations						*/
+/*										*/
+/********************************************************************************/
+
+@Override public CatreUser createUser(String name,String email,String pwd)
+	throws CatreException
+{
+   CatreLog.logD("CATSTORE","CREATE USER " + name + " " + email);
+
+   CatreUser u1 = findUserByEmail(email);
+   if (u1 != null) {
+      throw new CatreException("Duplicate user/email/universe");
+    }
+   if (!findDocuments("CatreUsers","USERNAME",name).isEmpty()) {
+      throw new CatreException("Duplicate user/email/universe");
+    }
+
+   return new CatstoreUser(this,name,email,pwd);
+}
+
+
+@Override public CatreUser findUser(String name,String pwd,String salt)
+{
+   for (Map<String,Object> doc : findDocuments("CatreUsers","USERNAME",name)) {
+      Boolean temp = CatstoreUser.checkPassword(doc,pwd,salt);
+      if (temp != null) {
+	 CatreUser cu = (CatreUser) loadObject(doc.get("_id").toString());
+	 cu.setTemporary(temp);
+	 return cu;
+       }
+    }
+
+   return null;
+}
+
+
+@Override public CatreUser findUserByEmail(String email)
+{
+   email = email.toLowerCase();
+   for (Map<String,Object> doc : findDocuments("CatreUsers","EMAIL",email)) {
+      return (CatreUser) loadObject(doc.get("_id").toString());
+    }
+
+   return null;
+}
+
+
+@SuppressWarnings("unchecked")
+@Override public <T extends CatreSavable> T findOne(String collection,String fld,String val,T dflt)
+{
+   for (Map<String,Object> doc : findDocuments(collection,fld,val)) {
+      return (T) loadObject(doc.get("_id").toString());
+    }
+
+   return dflt;
+}
+
+
+@Override public void deleteFrom(String collection,String fld,String val)
+{
+   for (Map<String,Object> doc : findDocuments(collection,fld,val)) {
+      removeObject(doc.get("_id").toString());
+    }
+}
+
+
+@Override public List<CatreUser> findAllUsers()
+{
+   List<CatreUser> rslt = new ArrayList<>();
+
+   for (Map<String,Object> doc : findDocuments("CatreUsers",null,null)) {
+      String id = doc.get("_id").toString();
+      if (id.contains("XXXXXXXX")) continue;
+      if (doc.get("UNIVERSE_ID") == null) continue;
+      CatreUser cu = (CatreUser) loadObject(id);
+      if (cu != null) rslt.add(cu);
+    }
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Calendar methods							*/
+/*										*/
+/********************************************************************************/
+
+@Override public Boolean validateCalendar(CatreUser cu,String id,String pwd)
+{
+   for (Map<String,Object> doc : findDocuments("CatreCalendars","ID",id)) {
+      Boolean fg = CatstoreUser.validateKey(cu,id,pwd,doc);
+      if (fg == Boolean.TRUE) return true;
+      if (fg == Boolean.FALSE) return false;
+    }
+
+   Map<String,Object> caldoc = new HashMap<>();
+   String uid = "CAL_" + CatreUtil.randomString(24);
+   caldoc.put("_id",uid);
+   caldoc.put("ID",id);
+   caldoc.put("KEY",CatstoreUser.computeKeyPasscode(cu,id,pwd));
+   caldoc.put("USERNAME",cu.getUserName());
+   caldoc.put("USER",cu.getDataUID());
+   writeDocument("CatreCalendars",uid,caldoc);
+
+   return true;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Generic methods 							*/
+/*										*/
+/********************************************************************************/
+
+@Override public CatreSavable loadObject(String uid)
+{
+   CatreSavable rslt = object_cache.get(uid);
+   if (rslt != null) return rslt;
+
+   CatreTable tbl = getTableForUID(uid);
+   if (tbl == null) return null;
+
+   Map<String,Object> doc = readDocument(uid);
+   if (doc == null) return null;
+
+   rslt = tbl.create(this,doc);
+   if (rslt != null) recordObject(rslt);
+
+   return rslt;
+}
+
+
+/**
+ *      Bulk load.  Reads are local so this just loads each object.
+ **/
+
+@Override public List<CatreSavable> loadObjects(Collection<String> uids)
+{
+   List<CatreSavable> rslt = new ArrayList<>();
+   for (String uid : uids) {
+      CatreSavable obj = loadObject(uid);
+      if (obj != null) rslt.add(obj);
+    }
+
+   return rslt;
+}
+
+
+@Override public String saveObject(CatreSavable obj0)
+{
+   String uid = obj0.getDataUID();
+   CatreSavableBase obj = (CatreSavableBase) obj0;
+   write_behind.noteWritten(uid);
+   if (!writeObject(obj)) return null;
+
+   recordObject(obj);
+
+   return uid;
+}
+
+
+@Override public void saveObjectLater(CatreSavable obj)
+{
+   recordObject(obj);
+   write_behind.markDirty(obj);
+}
+
+
+@Override public void saveObjects(List<CatstoreSnapshot> snaps)
+{
+   for (CatstoreSnapshot snap : snaps) {
+      writeSnapshot(snap);
+    }
+}
+
+
+@Override public void flush()
+{
+   write_behind.flushAll();
+
+   synchronized (this) {
+      try {
+	 log_data.getChannel().force(false);
+	 writeIndex();
+       }
+      catch (IOException e) {
+	 CatreLog.logE("CATSTORE","Problem flushing file store",e);
+       }
+    }
+}
+
+
+@Override public JSONObject getStatistics()
+{
+   JSONObject rslt = new JSONObject();
+   rslt.put("WRITEBEHIND",write_behind.getStatistics());
+   rslt.put("CACHE",object_cache.getStatistics());
+
+   JSONObject fstat = new JSONObject();
+   synchronized (this) {
+      fstat.put("RECORDS",record_index.size());
+      fstat.put("LOGBYTES",log_length);
+      fstat.put("LIVEBYTES",live_bytes);
+    }
+   fstat.put("READS",read_count.get());
+   fstat.put("WRITES",write_count.get());
+   fstat.put("COMPACTIONS",compact_count.get());
+   rslt.put("FILE",fstat);
+
+   return rslt;
+}
+
+
+@Override public void recordObject(CatreSavable obj)
+{
+   CatreTable tbl = getTableForObject(obj);
+   object_cache.put(obj,tbl == null || tbl.keepLoaded());
+}
+
+
+@Override public void unloadObject(String uid)
+{
+   if (uid == null) return;
+   object_cache.remove(uid);
+}
+
+
+@Override public void removeObject(String uid)
+{
+   if (uid == null) return;
+   write_behind.cancel(uid);
+   CatreSavableBase os = (CatreSavableBase) object_cache.remove(uid);
+   if (os != null && !os.isStored()) return;
+
+   synchronized (this) {
+      LogRecord lr = record_index.get(uid);
+      if (lr == null) return;
+      try {
+	 appendRecord(OP_DELETE,lr.getCollection(),uid,null);
+       }
+      catch (IOException e) {
+	 CatreLog.logE("CATSTORE","Problem removing " + uid,e);
+       }
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Table management methods						*/
+/*										*/
+/********************************************************************************/
+
+@Override public void register(CatreTable tbl)
+{
+   known_tables.put(tbl.getTablePrefix(),tbl);
+}
+
+
+private CatreTable getTableForObject(CatreSavable cs)
+{
+   CatreTable tbl = getTableForUID(cs.getDataUID());
+   if (tbl != null) return tbl;
+
+   for (CatreTable ct : known_tables.values()) {
+      if (ct.useFor(cs)) return ct;
+    }
+
+   return null;
+}
+
+
+private CatreTable getTableForUID(String uid)
+{
+   int idx = uid.indexOf("_");
+   if (idx > 0) {
+      CatreTable tbl = known_tables.get(uid.substring(0,idx+1));
+      if (tbl != null) return tbl;
+    }
+
+   for (CatreTable ct : known_tables.values()) {
+      if (uid.startsWith(ct.getTablePrefix())) return ct;
+    }
+
+   return null;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Document methods							*/
+/*										*/
+/********************************************************************************/
+
+private boolean writeObject(CatreSavableBase obj)
+{
+   if (getTableForObject(obj) == null || obj.getDataUID() == null) return false;
+
+   return writeSnapshot(CatstoreSnapshot.take(obj));
+}
+
+
+private boolean writeSnapshot(CatstoreSnapshot snap)
+{
+   CatreSavableBase obj = snap.getObject();
+   CatreTable tbl = getTableForObject(obj);
+   if (tbl == null || obj.getDataUID() == null) return false;
+
+   obj.getStoreLock().lock();
+   try {
+      // a newer version was written while this one was being built
+      if (snap.isStale()) return true;
+      if (!writeDocument(tbl.getTableName(),obj.getDataUID(),snap.getData())) return false;
+      snap.noteStored(null);
+    }
+   finally {
+      obj.getStoreLock().unlock();
+    }
+
+   return true;
+}
+
+
+private boolean writeDocument(String coll,String uid,Map<String,Object> doc)
+{
+   JSONObject jo = (JSONObject) encodeValue(doc);
+   byte [] data = jo.toString().getBytes(StandardCharsets.UTF_8);
+
+   synchronized (this) {
+      try {
+	 appendRecord(OP_PUT,coll,uid,data);
+       }
+      catch (IOException e) {
+	 CatreLog.logE("CATSTORE","Problem writing " + uid,e);
+	 return false;
+       }
+    }
+
+   return true;
+}
+
+
+private Map<String,Object> readDocument(String uid)
+{
+   byte [] data;
+   synchronized (this) {
+      LogRecord lr = record_index.get(uid);
+      if (lr == null) return null;
+      try {
+	 data = readData(lr);
+       }
+      catch (IOException e) {
+	 CatreLog.logE("CATSTORE","Problem reading " + uid,e);
+	 return null;
+       }
+    }
+
+   return decodeDocument(data);
+}
+
+
+/**
+ *      Return the documents of a collection where the given field has the
+ *      given value (all documents if fld is null).  This scans the collection.
+ **/
+
+private List<Map<String,Object>> findDocuments(String coll,String fld,String val)
+{
+   List<byte []> datas = new ArrayList<>();
+   synchronized (this) {
+      for (LogRecord lr : record_index.values()) {
+	 if (!lr.getCollection().equals(coll)) continue;
+	 try {
+	    datas.add(readData(lr));
+	  }
+	 catch (IOException e) {
+	    CatreLog.logE("CATSTORE","Problem scanning " + coll,e);
+	  }
+       }
+    }
+
+   List<Map<String,Object>> rslt = new ArrayList<>();
+   for (byte [] data : datas) {
+      Map<String,Object> doc = decodeDocument(data);
+      if (fld != null) {
+	 Object v = doc.get(fld);
+	 if (v == null || !v.toString().equals(val)) continue;
+       }
+      rslt.add(doc);
+    }
+
+   return rslt;
+}
+
+
+private Map<String,Object> decodeDocument(byte [] data)
+{
+   JSONObject jo = new JSONObject(new String(data,StandardCharsets.UTF_8));
+   @SuppressWarnings("unchecked")
+   Map<String,Object> rslt = (Map<String,Object>) decodeValue(jo);
+   return rslt;
+}
+
+
+/**
+ *      Convert a document to JSON.  Dates are saved as {"$date": time} so
+ *      that they come back as dates, matching what Mongo returns.
+ **/
+
+private static Object encodeValue(Object v)
+{
+   if (v instanceof Map) {
+      JSONObject rslt = new JSONObject();
+      for (Map.Entry<?,?> ent : ((Map<?,?>) v).entrySet()) {
+	 if (ent.getValue() == null) continue;
+	 rslt.put(ent.getKey().toString(),encodeValue(ent.getValue()));
+       }
+      return rslt;
+    }
+   else if (v instanceof Collection) {
+      JSONArray rslt = new JSONArray();
+      for (Object o : (Collection<?>) v) rslt.put(encodeValue(o));
+      return rslt;
+    }
+   else if (v instanceof Object []) {
+      JSONArray rslt = new JSONArray();
+      for (Object o : (Object []) v) rslt.put(encodeValue(o));
+      return rslt;
+    }
+   else if (v instanceof Date) {
+      JSONObject rslt = new JSONObject();
+      rslt.put("$date",((Date) v).getTime());
+      return rslt;
+    }
+   else if (v instanceof Enum) {
+      return v.toString();
+    }
+
+   return v;
+}
+
+
+private static Object decodeValue(Object v)
+{
+   if (v instanceof JSONObject) {
+      JSONObject jo = (JSONObject) v;
+      if (jo.length() == 1 && jo.has("$date")) {
+	 return new Date(jo.getLong("$date"));
+       }
+      Map<String,Object> rslt = new HashMap<>();
+      for (String k : jo.keySet()) {
+	 rslt.put(k,decodeValue(jo.get(k)));
+       }
+      return rslt;
+    }
+   else if (v instanceof JSONArray) {
+      JSONArray ja = (JSONArray) v;
+      List<Object> rslt = new ArrayList<>();
+      for (int i = 0; i < ja.length(); ++i) {
+	 rslt.add(decodeValue(ja.get(i)));
+       }
+      return rslt;
+    }
+   else if (v == JSONObject.NULL) {
+      return null;
+    }
+
+   return v;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Log methods								*/
+/*										*/
+/********************************************************************************/
+
+private synchronized void openLog() throws IOException
+{
+   boolean isnew = !log_file.exists() || log_file.length() < HEADER_SIZE;
+   log_data = new RandomAccessFile(log_file,"rw");
+
+   if (isnew) {
+      log_id = System.currentTimeMillis() ^ CatreUtil.randomString(8).hashCode();
+      log_data.setLength(0);
+      log_data.writeLong(FILE_LOG_MAGIC);
+      log_data.writeLong(log_id);
+      log_length = HEADER_SIZE;
+      live_bytes = 0;
+      return;
+    }
+
+   if (log_data.readLong() != FILE_LOG_MAGIC) {
+      throw new IOException("Bad file store log " + log_file);
+    }
+   log_id = log_data.readLong();
+   log_length = HEADER_SIZE;
+   live_bytes = 0;
+
+   long start = readIndex();
+   replayLog(start);
+}
+
+
+/**
+ *      Load the index file if it matches the log.  Returns the position in
+ *      the log up to which the index is valid.
+ **/
+
+private long readIndex()
+{
+   if (!index_file.exists()) return HEADER_SIZE;
+
+   try (FileChannel fc = FileChannel.open(index_file.toPath())) {
+      MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY,0,fc.size());
+      if (buf.getLong() != FILE_LOG_MAGIC) return HEADER_SIZE;
+      if (buf.getLong() != log_id) return HEADER_SIZE;
+      long len = buf.getLong();
+      if (len > log_data.length()) return HEADER_SIZE;
+      long live = buf.getLong();
+      int ct = buf.getInt();
+      Map<String,LogRecord> idx = new HashMap<>();
+      for (int i = 0; i < ct; ++i) {
+	 String coll = getString(buf);
+	 String uid = getString(buf);
+	 long off = buf.getLong();
+	 int dlen = buf.getInt();
+	 int rlen = buf.getInt();
+	 idx.put(uid,new LogRecord(coll,off,dlen,rlen));
+       }
+      record_index = idx;
+      live_bytes = live;
+      return len;
+    }
+   catch (Exception e) {
+      CatreLog.logE("CATSTORE","Problem reading file store index; rescanning",e);
+      record_index = new HashMap<>();
+      live_bytes = 0;
+      return HEADER_SIZE;
+    }
+}
+
+
+private void replayLog(long start) throws IOException
+{
+   long pos = start;
+   long end = log_data.length();
+   FileChannel fc = log_data.getChannel();
+   fc.position(pos);
+   DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(fc)));
+
+   int ct = 0;
+   while (pos < end) {
+      try {
+	 int op = dis.readUnsignedByte();
+	 String coll = dis.readUTF();
+	 String uid = dis.readUTF();
+	 int dlen = dis.readInt();
+	 if (op != OP_PUT && op != OP_DELETE) throw new IOException("Bad op " + op);
+	 if (dlen < 0 || dlen > end) throw new IOException("Bad length " + dlen);
+	 dis.skipNBytes(dlen);
+	 int rlen = recordSize(coll,uid,dlen);
+	 noteRecord(op,coll,uid,pos + rlen - dlen,dlen,rlen);
+	 pos += rlen;
+	 ++ct;
+       }
+      catch (EOFException e) {
+	 break;
+       }
+      catch (IOException e) {
+	 CatreLog.logE("CATSTORE","Bad record in file store log at " + pos,e);
+	 break;
+       }
+    }
+
+   if (pos < end) {
+      CatreLog.logI("CATSTORE","Truncating file store log from " + end + " to " + pos);
+      log_data.setLength(pos);
+    }
+
+   log_length = pos;
+   CatreLog.logD("CATSTORE","Replayed " + ct + " file store records from " + start);
+}
+
+
+private void appendRecord(int op,String coll,String uid,byte [] data) throws IOException
+{
+   int dlen = (data == null ? 0 : data.length);
+   ByteArrayOutputStream bas = new ByteArrayOutputStream(dlen + 64);
+   DataOutputStream dos = new DataOutputStream(bas);
+   dos.writeByte(op);
+   dos.writeUTF(coll);
+   dos.writeUTF(uid);
+   dos.writeInt(dlen);
+   if (data != null) dos.write(data);
+   dos.flush();
+   byte [] rec = bas.toByteArray();
+
+   long pos = log_length;
+   log_data.seek(pos);
+   log_data.write(rec);
+   log_length = pos + rec.length;
+   write_count.incrementAndGet();
+
+   noteRecord(op,coll,uid,pos + rec.length - dlen,dlen,rec.length);
+}
+
+
+private void noteRecord(int op,String coll,String uid,long off,int dlen,int rlen)
+{
+   LogRecord old;
+   if (op == OP_PUT) {
+      old = record_index.put(uid,new LogRecord(coll,off,dlen,rlen));
+      live_bytes += rlen;
+    }
+   else {
+      old = record_index.remove(uid);
+    }
+   if (old != null) live_bytes -= old.getRecordSize();
+}
+
+
+private byte [] readData(LogRecord lr) throws IOException
+{
+   byte [] data = new byte[lr.getDataLength()];
+   log_data.seek(lr.getDataOffset());
+   log_data.readFully(data);
+   read_count.incrementAndGet();
+   return data;
+}
+
+
+private static int recordSize(String coll,String uid,int dlen)
+{
+   return 1 + 2 + utfLength(coll) + 2 + utfLength(uid) + 4 + dlen;
+}
+
+
+private static int utfLength(String s)
+{
+   // modified UTF-8 as written by writeUTF
+   int len = 0;
+   for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      if (c >= 0x0001 && c <= 0x007f) len += 1;
+      else if (c <= 0x07ff) len += 2;
+      else len += 3;
+    }
+   return len;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Index methods								*/
+/*										*/
+/********************************************************************************/
+
+private void writeIndex() throws IOException
+{
+   ByteArrayOutputStream bas = new ByteArrayOutputStream();
+   DataOutputStream dos = new DataOutputStream(bas);
+   dos.writeLong(FILE_LOG_MAGIC);
+   dos.writeLong(log_id);
+   dos.writeLong(log_length);
+   dos.writeLong(live_bytes);
+   dos.writeInt(record_index.size());
+   for (Map.Entry<String,LogRecord> ent : record_index.entrySet()) {
+      LogRecord lr = ent.getValue();
+      putString(dos,lr.getCollection());
+      putString(dos,ent.getKey());
+      dos.writeLong(lr.getDataOffset());
+      dos.writeInt(lr.getDataLength());
+      dos.writeInt(lr.getRecordSize());
+    }
+   dos.flush();
+
+   File tmp = new File(index_file.getPath() + ".tmp");
+   Files.write(tmp.toPath(),bas.toByteArray());
+   Files.move(tmp.toPath(),index_file.toPath(),StandardCopyOption.REPLACE_EXISTING,
+	 StandardCopyOption.ATOMIC_MOVE);
+}
+
+
+private static void putString(DataOutputStream dos,String s) throws IOException
+{
+   byte [] b = s.getBytes(StandardCharsets.UTF_8);
+   dos.writeShort(b.length);
+   dos.write(b);
+}
+
+
+private static String getString(MappedByteBuffer buf)
+{
+   int len = buf.getShort() & 0xffff;
+   byte [] b = new byte[len];
+   buf.get(b);
+   return new String(b,StandardCharsets.UTF_8);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Compaction methods							*/
+/*										*/
+/********************************************************************************/
+
+private void checkCompact()
+{
+   synchronized (this) {
+      long garbage = log_length - HEADER_SIZE - live_bytes;
+      if (garbage < COMPACT_MIN_GARBAGE || garbage < live_bytes) return;
+    }
+
+   write_behind.flushAll();
+
+   try {
+      compact();
+    }
+   catch (Throwable t) {
+      CatreLog.logE("CATSTORE","Problem compacting file store",t);
+    }
+}
+
+
+/**
+ *      Rewrite the log with only the current version of each object
+ **/
+
+private synchronized void compact() throws IOException
+{
+   long oldlen = log_length;
+   File tmp = new File(log_file.getPath() + ".tmp");
+   long nid = log_id + 1;
+   Map<String,LogRecord> nidx = new HashMap<>();
+   long pos = HEADER_SIZE;
+
+   try (RandomAccessFile out = new RandomAccessFile(tmp,"rw")) {
+      out.setLength(0);
+      ByteArrayOutputStream bas = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(bas);
+      dos.writeLong(FILE_LOG_MAGIC);
+      dos.writeLong(nid);
+      for (Map.Entry<String,LogRecord> ent : record_index.entrySet()) {
+	 LogRecord lr = ent.getValue();
+	 byte [] data = readData(lr);
+	 dos.writeByte(OP_PUT);
+	 dos.writeUTF(lr.getCollection());
+	 dos.writeUTF(ent.getKey());
+	 dos.writeInt(data.length);
+	 dos.write(data);
+	 nidx.put(ent.getKey(),new LogRecord(lr.getCollection(),
+	       pos + lr.getRecordSize() - data.length,data.length,lr.getRecordSize()));
+	 pos += lr.getRecordSize();
+	 if (bas.size() > 1024*1024) {
+	    dos.flush();
+	    out.write(bas.toByteArray());
+	    bas.reset();
+	  }
+       }
+      dos.flush();
+      out.write(bas.toByteArray());
+      out.getChannel().force(true);
+    }
+
+   log_data.close();
+   Files.move(tmp.toPath(),log_file.toPath(),StandardCopyOption.REPLACE_EXISTING,
+	 StandardCopyOption.ATOMIC_MOVE);
+   log_data = new RandomAccessFile(log_file,"rw");
+
+   log_id = nid;
+   log_length = pos;
+   live_bytes = pos - HEADER_SIZE;
+   record_index = nidx;
+   compact_count.incrementAndGet();
+   writeIndex();
+
+   CatreLog.logI("CATSTORE","Compacted file store from " + oldlen + " to " + pos);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Log record location							*/
+/*										*/
+/********************************************************************************/
+
+private static final class LogRecord {
+
+   private String collection_name;
+   private long data_offset;
+   private int data_length;
+   private int record_size;
+
+   LogRecord(String coll,long off,int dlen,int rlen) {
+      collection_name = coll;
+      data_offset = off;
+      data_length = dlen;
+      record_size = rlen;
+    }
+
+   String getCollection()			{ return collection_name; }
+   long getDataOffset() 			{ return data_offset; }
+   int getDataLength()				{ return data_length; }
+   int getRecordSize()				{ return record_size; }
+
+}	// end of inner class LogRecord
+
+
+
+}	// end of class CatstoreFile
+
+
+
+
+/* end of CatstoreFile.java */
@@ -37,12 +37,19 @@
 package edu.brown.cs.catre.catstore;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bson.BsonArray;
 import org.bson.BsonDateTime;
@@ -50,12 +57,19 @@ import org.bson.BsonInt64;
 import org.bson.BsonString;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.json.JSONObject;
 
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.ClientSession;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreException;
@@ -63,12 +77,10 @@ import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreOauth;
 import edu.brown.cs.catre.catre.CatreSavable;
 import edu.brown.cs.catre.catre.CatreSavableBase;
-import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreTable;
 import edu.brown.cs.catre.catre.CatreUser;
-import edu.brown.cs.catre.catre.CatreUtil;
 
-public class CatstoreMongo implements CatstoreConstants, CatreStore
+public class CatstoreMongo implements CatstoreConstants, CatstoreConstants.StoreAccess
 {
 
 
@@ -84,7 +96,26 @@ private MongoClient	mongo_client;
 private MongoDatabase	catre_database;
 private Map<String,CatreTable> known_tables;
 
-private Map<String,CatreSavable> object_cache;
+private CatstoreCache	object_cache;
+private CatstoreWriteBehind write_behind;
+private AtomicLong	full_writes;
+private AtomicLong	delta_writes;
+private AtomicLong	skipped_writes;
+private long		index_time;
+private AtomicLong	scan_time;
+private AtomicLong	fetch_time;
+private AtomicLong	build_time;
+private AtomicLong	fetch_queries;
+private AtomicLong	fetch_objects;
+
+private static final String [][] STORE_INDEXES = {
+   { "CatreUsers", "USERNAME" },
+   { "CatreUsers", "EMAIL" },
+   { "CatreOauthTokens", "accessToken" },
+   { "CatreOauthTokens", "refreshToken" },
+   { "CatreOauthCodes", "authorizationCode" },
+   { "CatreCalendars", "ID" },
+};
 
 
 
@@ -114,13 +145,51 @@ public CatstoreMongo(CatreController cc)
    mongo_client = MongoClients.create(con);
    catre_database = mongo_client.getDatabase(dbname);
 
-   object_cache = new WeakHashMap<>();
+   int csz = CACHE_SIZE;
+   try {
+      csz = Integer.parseInt(p.getProperty("cachesize",Integer.toString(CACHE_SIZE)));
+    }
+   catch (NumberFormatException e) { }
+   object_cache = new CatstoreCache(csz);
 
    known_tables = new HashMap<>();
 
    oauth_control = new CatstoreOauth(this);
+   write_behind = new CatstoreWriteBehind(this,cc);
+   full_writes = new AtomicLong();
+   delta_writes = new AtomicLong();
+   skipped_writes = new AtomicLong();
+   scan_time = new AtomicLong();
+   fetch_time = new AtomicLong();
+   build_time = new AtomicLong();
+   fetch_queries = new AtomicLong();
+   fetch_objects = new AtomicLong();
    
    CatreLog.logD("CATSTORE","OPEN " + dbname + " " + con);
+
+   ensureIndexes();
+}
+
+
+/**
+ *      Make sure the fields used for lookups are indexed
+ **/
+
+private void ensureIndexes()
+{
+   long start = System.currentTimeMillis();
+
+   for (String [] idx : STORE_INDEXES) {
+      try {
+	 MongoCollection<Document> uc = catre_database.getCollection(idx[0]);
+	 uc.createIndex(Indexes.ascending(idx[1]));
+       }
+      catch (Throwable t) {
+	 CatreLog.logE("CATSTORE","Problem creating index " + idx[0] + "." + idx[1],t);
+       }
+    }
+
+   index_time = System.currentTimeMillis() - start;
 }
 
 
@@ -148,8 +217,6 @@ public CatstoreMongo(CatreController cc)
 {
    CatreLog.logD("CATSTORE","CREATE USER " + name + " " + email + " " + pwd);
 
-   ClientSession sess = mongo_client.startSession();
-
    try {
       MongoCollection<Document> uc = catre_database.getCollection("CatreUsers");
       Document userdoc = new Document();
@@ -158,7 +225,7 @@ public CatstoreMongo(CatreController cc)
       if (u1 != null) {
          throw new CatreException("Duplicate user/email/universe");
        }
-      for (Document doc : uc.find(sess,(Bson) userdoc)) {
+      for (Document doc : uc.find((Bson) userdoc)) {
          CatreLog.logD("CATSTORE","Duplicate user found " + doc.getString("_id"));
 	 throw new CatreException("Duplicate user/email/universe");
        }
@@ -174,9 +241,6 @@ public CatstoreMongo(CatreController cc)
       CatreLog.logE("CATSTORE","Problem creating user",t);
       throw new CatreException("Problem creating user",t);
     }
-   finally {
-      sess.close();
-    }
 }
 
 
@@ -185,37 +249,15 @@ public CatstoreMongo(CatreController cc)
    MongoCollection<Document> uc = catre_database.getCollection("CatreUsers");
    Document userdoc = new Document();
    
-   ClientSession sess = mongo_client.startSession();
-   try {
-      userdoc.put("USERNAME",name);
-      for (Document doc : uc.find(sess,userdoc)) {
-         String p0 = doc.getString("PASSWORD");
-         p0 = p0.replace(' ','+');
-         String p1 = p0 + salt;
-         String p2 = CatreUtil.secureHash(p1);
-         CatreLog.logD("CATSTORE","Password check: " + p0 + " " + p1 + " " +
-               p2 + " " + salt);
-         CatreLog.logD("CATSTORE","MATCH " + pwd + " " + p2);
-         if (p2.equals(pwd)) {
-            CatreUser cu = (CatreUser) loadObject(sess,doc.getString("_id"));
-            cu.setTemporary(false);
-            return cu;
-          }
-         p0 = doc.getString("TEMP_PASSWORD");
-         if (p0 != null) {
-            p1 = p0 + salt;
-            p2 = CatreUtil.secureHash(p1);
-            if (p2.equals(pwd)) {
-               CatreUser cu = (CatreUser) loadObject(sess,doc.getString("_id"));
-               cu.setTemporary(true);
-               return cu;
-             }
-          }
+   userdoc.put("USERNAME",name);
+   for (Document doc : uc.find(userdoc)) {
+      Boolean temp = CatstoreUser.checkPassword(doc,pwd,salt);
+      if (temp != null) {
+         CatreUser cu = (CatreUser) loadObject(doc.getString("_id"));
+         cu.setTemporary(temp);
+         return cu;
        }
     }
-   finally {
-      sess.close();
-    }
 
    return null;
 }
@@ -228,16 +270,10 @@ public CatstoreMongo(CatreController cc)
    Document userdoc = new Document();
    email = email.toLowerCase();
    
-   ClientSession sess = mongo_client.startSession();
-   try {
-      userdoc.put("EMAIL",email);
-      for (Document doc : uc.find(sess,userdoc)) {
-         CatreUser cu = (CatreUser) loadObject(sess,doc.getString("_id"));
-         return cu;
-       }
-    }
-   finally {
-      sess.close();
+   userdoc.put("EMAIL",email);
+   for (Document doc : uc.find(userdoc)) {
+      CatreUser cu = (CatreUser) loadObject(doc.getString("_id"));
+      return cu;
     }
    
    return null;
@@ -245,53 +281,52 @@ public CatstoreMongo(CatreController cc)
 
 
 @SuppressWarnings("unchecked")
-<T extends CatreSavable> T findOne(String collection,String fld,String val,T dflt)
+@Override public <T extends CatreSavable> T findOne(String collection,String fld,String val,T dflt)
 {
    MongoCollection<Document> uc = catre_database.getCollection(collection);
    Document querydoc = new Document();
-   ClientSession sess = mongo_client.startSession();
    T rslt = dflt;
 
    querydoc.put(fld,val);
-   for (Document doc : uc.find(sess,querydoc)) {
-      rslt = (T) loadObject(sess,doc.getString("_id"));
+   for (Document doc : uc.find(querydoc)) {
+      rslt = (T) loadObject(doc.getString("_id"));
       break;
     }
 
-   sess.close();
 
    return rslt;
 }
 
 
-void deleteFrom(String collection,String fld,String val)
+@Override public void deleteFrom(String collection,String fld,String val)
 {
    MongoCollection<Document> uc = catre_database.getCollection(collection);
    Document querydoc = new Document();
-   ClientSession sess = mongo_client.startSession();
 
    querydoc.put(fld,val);
-   uc.deleteMany(sess,querydoc);
+   uc.deleteMany(querydoc);
 
-   sess.close();
 }
 
 @Override public List<CatreUser> findAllUsers()
 {
-   List<CatreUser> rslt = new ArrayList<>();
+   long start = System.currentTimeMillis();
 
+   // only fetch the ids of users with a universe, then load them in bulk
    MongoCollection<Document> uc = catre_database.getCollection("CatreUsers");
-   ClientSession sess = mongo_client.startSession();
-
-   for (Document doc : uc.find(sess)) {
+   List<String> ids = new ArrayList<>();
+   Bson query = Filters.ne("UNIVERSE_ID",null);
+   for (Document doc : uc.find(query).projection(Projections.include("_id"))) {
       String id = doc.getString("_id");
       if (id.contains("XXXXXXXX")) continue;
-      CatreUser cu = (CatreUser) loadObject(sess,id);
-      if (cu.getUniverse() == null) continue;
-      rslt.add(cu);
+      ids.add(id);
     }
+   scan_time.addAndGet(System.currentTimeMillis() - start);
 
-   sess.close();
+   List<CatreUser> rslt = new ArrayList<>();
+   for (CatreSavable obj : loadObjects(ids)) {
+      if (obj instanceof CatreUser) rslt.add((CatreUser) obj);
+    }
 
    return rslt;
 }
@@ -308,7 +343,6 @@ void deleteFrom(String collection,String fld,String val)
 {
    MongoCollection<Document> cc = catre_database.getCollection("CatreCalendars");
    Document userdoc = new Document();
-   ClientSession sess = mongo_client.startSession();
    
    // Consider sending email to the calendar's owner if it doesn't match
    // the current user's email.   This can be problematic with shared calendars
@@ -318,52 +352,24 @@ void deleteFrom(String collection,String fld,String val)
    // Could make sure that for shared calendars, you have the actual calendar ID
    // and then do not require a password.
    
-   try {
-      userdoc.put("ID",id);
-      for (Document doc : cc.find(sess,userdoc)) {
-         Boolean fg = validateKey(cu,id,pwd,doc);
-         if (fg == Boolean.TRUE) return true;
-         if (fg == Boolean.FALSE) return false;
-       }
-      // entry for user not found in database 
-      
-      userdoc.put("KEY",computeKeyPasscode(cu,id,pwd));
-      userdoc.put("USERNAME",cu.getUserName());
-      userdoc.put("USER",cu.getDataUID());
-      cc.insertOne(sess,userdoc);
-    }
-   finally {
-      sess.close();
+   userdoc.put("ID",id);
+   for (Document doc : cc.find(userdoc)) {
+      Boolean fg = CatstoreUser.validateKey(cu,id,pwd,doc);
+      if (fg == Boolean.TRUE) return true;
+      if (fg == Boolean.FALSE) return false;
     }
+   // entry for user not found in database 
 
-   return true;
-}
-
+   userdoc.put("KEY",CatstoreUser.computeKeyPasscode(cu,id,pwd));
+   userdoc.put("USERNAME",cu.getUserName());
+   userdoc.put("USER",cu.getDataUID());
+   cc.insertOne(userdoc);
 
-private Boolean validateKey(CatreUser cu,String id,String pwd,Document ent) 
-{
-   String pw = computeKeyPasscode(cu,id,pwd);
-   
-   String key = ent.getString("KEY");
-   
-   if (key != null) {
-      if (key.equals("*")) return true;
-      if (key.equals(pw)) return true;
-      return false;
-    }
-   
    return true;
 }
 
 
 
-private String computeKeyPasscode(CatreUser cu,String id,String pwd)
-{
-   String k = CatreUtil.secureHash(CatreUtil.secureHash(pwd) + id);
-   
-   return k;
-}
-
 
 /********************************************************************************/
 /*                                                                              */
@@ -376,45 +382,156 @@ private String computeKeyPasscode(CatreUser cu,String id,String pwd)
    CatreSavable rslt = object_cache.get(uid);
    if (rslt != null) return rslt;
 
-   ClientSession sess = mongo_client.startSession();
-   rslt = loadObject(sess,uid);
-   sess.close();
+   CatreTable tbl = getTableForUID(uid);
+   if (tbl == null) return null;
+
+   Document finddoc = new Document();
+   finddoc.put("_id",uid);
 
-   return rslt;
+   MongoCollection<Document> uc = catre_database.getCollection(tbl.getTableName());
+   for (Document doc : uc.find((Bson) finddoc)) {
+      CatreSavable obj = tbl.create(this,doc);
+      if (obj != null) {
+	 recordObject(obj);
+	 return obj;
+       }
+    }
+
+   return null;
 }
 
 
 
+/**
+ *      Load a set of objects.  Those not already loaded are fetched with one
+ *      $in query per table for each LOAD_BATCH_SIZE ids and then built on a
+ *      small pool of threads.
+ **/
 
-@Override public String saveObject(CatreSavable obj)
+@Override public List<CatreSavable> loadObjects(Collection<String> uids)
 {
-   ClientSession sess = mongo_client.startSession();
-   String rslt = saveObject(sess,(CatreSavableBase) obj);
-   sess.close();
+   Map<String,CatreSavable> found = new HashMap<>();
+   Map<CatreTable,List<String>> missing = new HashMap<>();
+   for (String uid : uids) {
+      if (uid == null || found.containsKey(uid)) continue;
+      CatreSavable obj = object_cache.get(uid);
+      if (obj != null) {
+	 found.put(uid,obj);
+	 continue;
+       }
+      CatreTable tbl = getTableForUID(uid);
+      if (tbl == null) continue;
+      List<String> ids = missing.get(tbl);
+      if (ids == null) {
+	 ids = new ArrayList<>();
+	 missing.put(tbl,ids);
+       }
+      if (!ids.contains(uid)) ids.add(uid);
+    }
+
+   long start = System.currentTimeMillis();
+   List<LoadItem> items = new ArrayList<>();
+   for (Map.Entry<CatreTable,List<String>> ent : missing.entrySet()) {
+      CatreTable tbl = ent.getKey();
+      List<String> ids = ent.getValue();
+      MongoCollection<Document> uc = catre_database.getCollection(tbl.getTableName());
+      for (int i = 0; i < ids.size(); i += LOAD_BATCH_SIZE) {
+	 List<String> batch = ids.subList(i,Math.min(ids.size(),i+LOAD_BATCH_SIZE));
+	 fetch_queries.incrementAndGet();
+	 for (Document doc : uc.find(Filters.in("_id",batch))) {
+	    items.add(new LoadItem(tbl,doc));
+	  }
+       }
+    }
+   long built = System.currentTimeMillis();
+   fetch_time.addAndGet(built - start);
+
+   if (items.size() <= 1) {
+      for (LoadItem li : items) {
+	 CatreSavable obj = li.call();
+	 if (obj != null) found.put(obj.getDataUID(),obj);
+       }
+    }
+   else {
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(LOAD_THREADS,items.size()));
+      try {
+	 List<Future<CatreSavable>> rslts = pool.invokeAll(items);
+	 for (Future<CatreSavable> fut : rslts) {
+	    try {
+	       CatreSavable obj = fut.get();
+	       if (obj != null) found.put(obj.getDataUID(),obj);
+	     }
+	    catch (ExecutionException e) {
+	       CatreLog.logE("CATSTORE","Problem building loaded object",e.getCause());
+	     }
+	  }
+       }
+      catch (InterruptedException e) {
+	 Thread.currentThread().interrupt();
+       }
+      finally {
+	 pool.shutdown();
+       }
+    }
+   build_time.addAndGet(System.currentTimeMillis() - built);
+   fetch_objects.addAndGet(items.size());
+
+   List<CatreSavable> rslt = new ArrayList<>();
+   for (String uid : uids) {
+      CatreSavable obj = found.remove(uid);
+      if (obj != null) rslt.add(obj);
+    }
 
    return rslt;
 }
 
 
 
-private String saveObject(ClientSession sess,CatreSavable obj0)
+@Override public String saveObject(CatreSavable obj0)
 {
     String uid = obj0.getDataUID();
     CatreSavableBase obj = (CatreSavableBase) obj0;
+    write_behind.noteWritten(uid);
     CatreTable tbl = getTableForObject(obj0);
     if (tbl == null) return null;
 
     MongoCollection<Document> uc = catre_database.getCollection(tbl.getTableName());
-    Document userdoc = createDocument(obj);
-
-    if (obj.isStored()) {
-       Document finddoc = new Document();
-       finddoc.put("_id",uid);
-       uc.replaceOne(sess,finddoc,userdoc);
+    CatstoreSnapshot snap = CatstoreSnapshot.take(obj);
+    Document userdoc = createDocument(obj,snap.getData());
+    if (userdoc == null) return null;
+    CatstoreDelta delta = new CatstoreDelta(userdoc);
+
+    obj.getStoreLock().lock();
+    try {
+       if (snap.isStale()) {
+	  // a newer version was written while this one was being built
+	  skipped_writes.incrementAndGet();
+	}
+       else if (obj.isStored()) {
+	  Document finddoc = new Document();
+	  finddoc.put("_id",uid);
+	  Document upd = delta.getUpdate(obj.getStoredState());
+	  if (upd == null) {
+	     uc.replaceOne(finddoc,userdoc);
+	     full_writes.incrementAndGet();
+	   }
+	  else if (upd.isEmpty()) {
+	     skipped_writes.incrementAndGet();
+	   }
+	  else {
+	     uc.updateOne(finddoc,upd);
+	     delta_writes.incrementAndGet();
+	   }
+	  snap.noteStored(delta.getNewState(upd));
+	}
+       else {
+	  uc.insertOne(userdoc);
+	  snap.noteStored(delta.getNewState(null));
+	  full_writes.incrementAndGet();
+	}
      }
-    else {
-       uc.insertOne(sess,userdoc);
-       obj.setStored();
+    finally {
+       obj.getStoreLock().unlock();
      }
 
     recordObject(obj);
@@ -424,52 +541,150 @@ private String saveObject(ClientSession sess,CatreSavable obj0)
 
 
 
-private CatreSavable loadObject(ClientSession sess,String uid)
+@Override public void saveObjectLater(CatreSavable obj)
 {
-   CatreSavable rslt = object_cache.get(uid);
-   if (rslt != null) return rslt;
+   recordObject(obj);
+   write_behind.markDirty(obj);
+}
 
-   CatreTable tbl = getTableForUID(uid);
-   if (tbl == null) return null;
 
-   Document finddoc = new Document();
-   finddoc.put("_id",uid);
+@Override public void flush()
+{
+   write_behind.flushAll();
+}
 
-   MongoCollection<Document> uc = catre_database.getCollection(tbl.getTableName());
-   for (Document doc : uc.find(sess,(Bson) finddoc)) {
-      CatreSavable obj = tbl.create(this,doc);
-      recordObject(obj);
-      if (obj != null) return obj;
+
+@Override public JSONObject getStatistics()
+{
+   JSONObject rslt = new JSONObject();
+   rslt.put("WRITEBEHIND",write_behind.getStatistics());
+   rslt.put("CACHE",object_cache.getStatistics());
+   JSONObject dstat = new JSONObject();
+   dstat.put("FULL",full_writes.get());
+   dstat.put("DELTA",delta_writes.get());
+   dstat.put("SKIPPED",skipped_writes.get());
+   rslt.put("UPDATES",dstat);
+   JSONObject lstat = new JSONObject();
+   lstat.put("INDEX_MS",index_time);
+   lstat.put("SCAN_MS",scan_time.get());
+   lstat.put("FETCH_MS",fetch_time.get());
+   lstat.put("BUILD_MS",build_time.get());
+   lstat.put("QUERIES",fetch_queries.get());
+   lstat.put("OBJECTS",fetch_objects.get());
+   rslt.put("LOAD",lstat);
+
+   return rslt;
+}
+
+
+/**
+ *      Write a set of objects using one bulk operation per collection
+ **/
+
+@Override public void saveObjects(List<CatstoreSnapshot> snaps)
+{
+   // lock in a fixed order so concurrent batches cannot deadlock
+   List<CatstoreSnapshot> locked = new ArrayList<>(snaps);
+   locked.sort(Comparator.comparing(CatstoreSnapshot::getDataUID));
+   int nlock = 0;
+   try {
+      for (CatstoreSnapshot snap : locked) {
+	 snap.getObject().getStoreLock().lock();
+	 ++nlock;
+       }
+      writeSnapshots(locked);
+    }
+   finally {
+      for (int i = 0; i < nlock; ++i) {
+	 locked.get(i).getObject().getStoreLock().unlock();
+       }
     }
+}
 
-   return null;
+
+private void writeSnapshots(List<CatstoreSnapshot> snaps)
+{
+   Map<String,List<WriteModel<Document>>> updates = new HashMap<>();
+   List<CatstoreSnapshot> saved = new ArrayList<>();
+   List<Object> states = new ArrayList<>();
+   ReplaceOptions upsert = new ReplaceOptions().upsert(true);
+
+   for (CatstoreSnapshot snap : snaps) {
+      if (snap.isStale()) {
+	 skipped_writes.incrementAndGet();
+	 continue;
+       }
+      CatreSavableBase obj = snap.getObject();
+      CatreTable tbl = getTableForObject(obj);
+      if (tbl == null) continue;
+      Document doc = createDocument(obj,snap.getData());
+      if (doc == null) continue;
+      Document finddoc = new Document();
+      finddoc.put("_id",obj.getDataUID());
+      List<WriteModel<Document>> ops = updates.get(tbl.getTableName());
+      if (ops == null) {
+	 ops = new ArrayList<>();
+	 updates.put(tbl.getTableName(),ops);
+       }
+      CatstoreDelta delta = new CatstoreDelta(doc);
+      Document upd = null;
+      if (obj.isStored()) upd = delta.getUpdate(obj.getStoredState());
+      if (upd == null) {
+	 ops.add(new ReplaceOneModel<>(finddoc,doc,upsert));
+	 full_writes.incrementAndGet();
+       }
+      else if (upd.isEmpty()) {
+	 skipped_writes.incrementAndGet();
+       }
+      else {
+	 ops.add(new UpdateOneModel<>(finddoc,upd));
+	 delta_writes.incrementAndGet();
+       }
+      saved.add(snap);
+      states.add(delta.getNewState(upd));
+    }
+
+   for (Map.Entry<String,List<WriteModel<Document>>> ent : updates.entrySet()) {
+      if (ent.getValue().isEmpty()) continue;
+      MongoCollection<Document> uc = catre_database.getCollection(ent.getKey());
+      uc.bulkWrite(ent.getValue());
+    }
+
+   for (int i = 0; i < saved.size(); ++i) {
+      saved.get(i).noteStored(states.get(i));
+    }
 }
 
 
+
 @Override public void recordObject(CatreSavable obj)
 {
-   String uid = obj.getDataUID();
-   object_cache.put(uid,obj);
+   CatreTable tbl = getTableForObject(obj);
+   object_cache.put(obj,tbl == null || tbl.keepLoaded());
+}
+
+
+@Override public void unloadObject(String uid)
+{
+   if (uid == null) return;
+   object_cache.remove(uid);
 }
 
 
 @Override public void removeObject(String uid)
 {
    if (uid == null) return;
+   write_behind.cancel(uid);
    CatreSavableBase os = (CatreSavableBase) object_cache.remove(uid);
    if (os != null && !os.isStored()) return;
 
-   ClientSession sess = mongo_client.startSession();
-
    CatreTable tbl = getTableForUID(uid);
    if (tbl == null) return;
 
    MongoCollection<Document> uc = catre_database.getCollection(tbl.getTableName());
    Document finddoc = new Document();
    finddoc.put("_id",uid);
-   uc.deleteOne(sess,finddoc);
-
-   sess.close();
+   uc.deleteOne(finddoc);
 }
 
 
@@ -532,9 +747,8 @@ private CatreTable getTableForUID(String uid)
 /*										*/
 /********************************************************************************/
 
-private Document createDocument(CatreSavableBase obj)
+private Document createDocument(CatreSavableBase obj,Map<String,Object> jobj)
 {
-   Map<String,Object> jobj = obj.toJson();
    String uid = obj.getDataUID();
    if (uid == null) return null;
    for (Map.Entry<String,Object> ent : jobj.entrySet()) {
@@ -567,6 +781,32 @@ private Document createDocument(CatreSavableBase obj)
 
 
 
+/********************************************************************************/
+/*										*/
+/*	Bulk load task								*/
+/*										*/
+/********************************************************************************/
+
+private final class LoadItem implements Callable<CatreSavable> {
+
+   private CatreTable for_table;
+   private Document load_doc;
+
+   LoadItem(CatreTable tbl,Document doc) {
+      for_table = tbl;
+      load_doc = doc;
+    }
+
+   @Override public CatreSavable call() {
+      CatreSavable obj = for_table.create(CatstoreMongo.this,load_doc);
+      if (obj != null) recordObject(obj);
+      return obj;
+    }
+
+}	// end of inner class LoadItem
+
+
+
 
 
 }	// end of class CatstoreMongo
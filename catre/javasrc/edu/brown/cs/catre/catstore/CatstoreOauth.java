@@ -62,7 +62,7 @@ class CatstoreOauth implements CatreOauth, CatstoreConstants, CatreJson
 /*                                                                              */
 /********************************************************************************/
 
-private CatstoreMongo   use_store;
+private StoreAccess     use_store;
 
 
 
@@ -72,7 +72,7 @@ private CatstoreMongo   use_store;
 /*                                                                              */
 /********************************************************************************/
 
-CatstoreOauth(CatstoreMongo store)
+CatstoreOauth(StoreAccess store)
 {
    use_store = store;
    use_store.register(new TokensTable());
@@ -365,6 +365,8 @@ private static final class TokensTable implements CatreTable {
       return new OauthTokenData(store,data);
     }
    
+   @Override public boolean keepLoaded()        { return false; }
+   
 }       // end of inner class TokensTable
 
 
@@ -384,6 +386,8 @@ private static final class CodesTable implements CatreTable {
    return new OauthCodeData(store,data);
 }
 
+@Override public boolean keepLoaded()        { return false; }
+
 }       // end of inner class TokensTable
 
 
@@ -0,0 +1,139 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatstoreSnapshot.java                                           */
+/*                                                                              */
+/*      JSON of an object as of a given save version                            */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.util.Map;
+
+import edu.brown.cs.catre.catre.CatreSavableBase;
+
+/**
+ *      The JSON of an object together with the save version it was taken
+ *      at.  Writes of the same object are done under its store lock, and a
+ *      snapshot older than what was last written is dropped so that a slow
+ *      deferred write never replaces a newer direct one.
+ **/
+
+class CatstoreSnapshot
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatreSavableBase for_object;
+private Map<String,Object> object_data;
+private long	save_version;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *      Take a snapshot of an object now.  The version is taken before the
+ *      JSON so a concurrent snapshot never gets an older version for a
+ *      newer state.
+ **/
+
+static CatstoreSnapshot take(CatreSavableBase obj)
+{
+   long v = obj.nextSaveVersion();
+   return new CatstoreSnapshot(obj,obj.toJson(),v);
+}
+
+
+private CatstoreSnapshot(CatreSavableBase obj,Map<String,Object> data,long v)
+{
+   for_object = obj;
+   object_data = data;
+   save_version = v;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+CatreSavableBase getObject()			{ return for_object; }
+
+String getDataUID()				{ return for_object.getDataUID(); }
+
+Map<String,Object> getData()			{ return object_data; }
+
+
+/**
+ *      Check if a newer snapshot of the object has already been written.
+ *      Only valid while the object's store lock is held.
+ **/
+
+boolean isStale()
+{
+   return save_version <= for_object.getStoredVersion();
+}
+
+
+/**
+ *      Note that this snapshot has been written.  Only valid while the
+ *      object's store lock is held.
+ **/
+
+void noteStored(Object state)
+{
+   for_object.setStored();
+   for_object.setStoredState(state);
+   for_object.setStoredVersion(save_version);
+}
+
+
+
+}	// end of class CatstoreSnapshot
+
+
+
+
+/* end of CatstoreSnapshot.java */
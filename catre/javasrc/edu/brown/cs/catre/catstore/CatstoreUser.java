@@ -70,6 +70,7 @@ private String		user_password;
 private String          temp_password;
 private String		universe_id;
 private CatreUniverse	user_universe;
+private long            wake_time;
 private boolean         is_temporary;
 private String          email_verifier;
 private Map<String,CatreBridgeAuthorization> bridge_auths;
@@ -95,6 +96,7 @@ CatstoreUser(CatreStore cs,String name,String email,String pwd)
    user_password = pwd;
    user_universe = null;
    universe_id = null;
+   wake_time = 0;
    bridge_auths = new HashMap<>();
    is_temporary = false;
    email_verifier = null;
@@ -110,6 +112,72 @@ CatstoreUser(CatreStore store,Map<String,Object> doc)
 }
 
 
+/********************************************************************************/
+/*										*/
+/*	Password checking							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *      Check a salted password against the stored form of a user.  Returns
+ *      FALSE if it matches the regular password, TRUE if it matches the
+ *      temporary password, and null if it matches neither.
+ **/
+
+static Boolean checkPassword(Map<String,Object> doc,String pwd,String salt)
+{
+   String p0 = (String) doc.get("PASSWORD");
+   if (p0 != null) {
+      p0 = p0.replace(' ','+');
+      String p1 = p0 + salt;
+      String p2 = CatreUtil.secureHash(p1);
+      CatreLog.logD("CATSTORE","Password check: " + p0 + " " + p1 + " " +
+            p2 + " " + salt);
+      CatreLog.logD("CATSTORE","MATCH " + pwd + " " + p2);
+      if (p2.equals(pwd)) return Boolean.FALSE;
+    }
+
+   p0 = (String) doc.get("TEMP_PASSWORD");
+   if (p0 != null) {
+      String p1 = p0 + salt;
+      String p2 = CatreUtil.secureHash(p1);
+      if (p2.equals(pwd)) return Boolean.TRUE;
+    }
+
+   return null;
+}
+
+
+/**
+ *      Check a calendar password against a stored calendar entry
+ **/
+
+static Boolean validateKey(CatreUser cu,String id,String pwd,Map<String,Object> ent) 
+{
+   String pw = computeKeyPasscode(cu,id,pwd);
+   
+   String key = (String) ent.get("KEY");
+   
+   if (key != null) {
+      if (key.equals("*")) return true;
+      if (key.equals(pw)) return true;
+      return false;
+    }
+   
+   return true;
+}
+
+
+
+static String computeKeyPasscode(CatreUser cu,String id,String pwd)
+{
+   String k = CatreUtil.secureHash(CatreUtil.secureHash(pwd) + id);
+   
+   return k;
+}
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Access methods								*/
@@ -125,6 +193,22 @@ CatstoreUser(CatreStore store,Map<String,Object> doc)
    return user_universe;
 }
 
+
+@Override public String getUniverseId()		{ return universe_id; }
+
+
+@Override public void unloadUniverse()
+{
+   if (user_universe == null) return;
+   catre_store.unloadObject(universe_id);
+   user_universe = null;
+}
+
+
+@Override public long getWakeTime()			{ return wake_time; }
+
+@Override public void setWakeTime(long when)		{ wake_time = when; }
+
 @Override public void setUniverse(CatreUniverse cu)
 {
    if (universe_id == null) {
@@ -243,6 +327,7 @@ CatstoreUser(CatreStore store,Map<String,Object> doc)
    rslt.put("PASSWORD",user_password);
    if (temp_password != null) rslt.put("TEMP_PASSWORD",temp_password);
    rslt.put("UNIVERSE_ID",universe_id);
+   rslt.put("WAKE_TIME",wake_time);
    rslt.put("AUTHORIZATIONS",getSubObjectArrayToSave(bridge_auths.values()));
 
    return rslt;
@@ -259,7 +344,8 @@ CatstoreUser(CatreStore store,Map<String,Object> doc)
    user_password = getSavedString(map,"PASSWORD",user_password);
    universe_id = getSavedString(map,"UNIVERSE_ID",universe_id);
    temp_password = getSavedString(map,"TEMP_PASSWORD",null);
-   user_universe = getUniverse();
+   wake_time = getSavedLong(map,"WAKE_TIME",0);
+   // the universe is loaded on demand
 
    bridge_auths = new HashMap<>();
    List<BridgeAuth> bal = new ArrayList<>();
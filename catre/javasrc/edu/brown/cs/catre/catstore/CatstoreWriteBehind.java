@@ -0,0 +1,364 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CatstoreWriteBehind.java                                        */
+/*                                                                              */
+/*      Deferred, coalesced saving of objects to the store                      */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreSavable;
+import edu.brown.cs.catre.catre.CatreSavableBase;
+import edu.brown.cs.catre.catre.CatreUniverse;
+
+/**
+ *      Write-behind queue for objects that change often (e.g. universes during
+ *      device discovery).  Marking an object dirty is cheap; the object is
+ *      converted to JSON and written once, WRITE_DELAY after it first became
+ *      dirty, no matter how many times it was marked in between.  Ready
+ *      objects are written in batches by a periodic task and everything
+ *      pending is written when the server shuts down.  A universe's JSON is
+ *      taken on its own mailbox, where REST requests and bridge device
+ *      updates that change it also run; the flush thread only writes the
+ *      finished documents.  Removing an object
+ *      cancels its pending write and keeps it from being queued again.
+ **/
+
+class CatstoreWriteBehind implements CatstoreConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private StoreAccess	for_store;
+private Map<String,PendingWrite> pending_writes;
+private Map<String,Long> removed_objects;
+private Object		write_lock;
+private AtomicLong	request_count;
+private AtomicLong	coalesced_count;
+private AtomicLong	written_count;
+private AtomicLong	batch_count;
+private AtomicLong	error_count;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatstoreWriteBehind(StoreAccess store,CatreController cc)
+{
+   for_store = store;
+   pending_writes = new ConcurrentHashMap<>();
+   removed_objects = new ConcurrentHashMap<>();
+   write_lock = new Object();
+   request_count = new AtomicLong();
+   coalesced_count = new AtomicLong();
+   written_count = new AtomicLong();
+   batch_count = new AtomicLong();
+   error_count = new AtomicLong();
+
+   cc.schedule(this::flushReady,WRITE_FLUSH_INTERVAL,WRITE_FLUSH_INTERVAL);
+   Runtime.getRuntime().addShutdownHook(new Thread(this::flushAll,"CatstoreFlush"));
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Queue methods								*/
+/*										*/
+/********************************************************************************/
+
+void markDirty(CatreSavable obj)
+{
+   String uid = obj.getDataUID();
+   if (uid == null) return;
+   if (removed_objects.containsKey(uid)) return;
+
+   request_count.incrementAndGet();
+   PendingWrite pw = new PendingWrite(obj);
+   if (pending_writes.putIfAbsent(uid,pw) != null) coalesced_count.incrementAndGet();
+}
+
+
+/**
+ *      Note that an object has been written directly
+ **/
+
+void noteWritten(String uid)
+{
+   if (uid == null) return;
+   pending_writes.remove(uid);
+}
+
+
+/**
+ *      Note that an object is being removed.  Its pending write is dropped
+ *      and later requests are ignored.  This waits for a batch that is
+ *      being written so the caller's delete comes after it.
+ **/
+
+void cancel(String uid)
+{
+   if (uid == null) return;
+
+   synchronized (write_lock) {
+      removed_objects.put(uid,System.currentTimeMillis());
+      pending_writes.remove(uid);
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Flush methods								*/
+/*										*/
+/********************************************************************************/
+
+private void flushReady()
+{
+   try {
+      long now = System.currentTimeMillis();
+      flush(now - WRITE_DELAY);
+      removed_objects.values().removeIf((t) -> t < now - WRITE_REMOVED_TIME);
+    }
+   catch (Throwable t) {
+      CatreLog.logE("CATSTORE","Problem with deferred writes",t);
+    }
+}
+
+
+void flushAll()
+{
+   flush(Long.MAX_VALUE);
+}
+
+
+private void flush(long cutoff)
+{
+   List<CatreSavable> ready = new ArrayList<>();
+   List<Future<CatstoreSnapshot>> snaps = new ArrayList<>();
+
+   for (Map.Entry<String,PendingWrite> ent : pending_writes.entrySet()) {
+      PendingWrite pw = ent.getValue();
+      if (pw.getDirtyTime() > cutoff) continue;
+      // changes made after this point will queue a new write
+      if (!pending_writes.remove(ent.getKey(),pw)) continue;
+      ready.add(pw.getObject());
+      snaps.add(requestSnapshot(pw.getObject()));
+    }
+
+   List<CatstoreSnapshot> batch = new ArrayList<>();
+   long deadline = System.currentTimeMillis() + WRITE_SNAPSHOT_WAIT;
+   for (int i = 0; i < ready.size(); ++i) {
+      CatreSavable obj = ready.get(i);
+      CatstoreSnapshot snap = getSnapshot(obj,snaps.get(i),deadline,cutoff == Long.MAX_VALUE);
+      if (snap == null) {
+	 pending_writes.putIfAbsent(obj.getDataUID(),new PendingWrite(obj));
+	 continue;
+       }
+      batch.add(snap);
+      if (batch.size() >= WRITE_BATCH_SIZE) {
+	 writeBatch(batch);
+	 batch = new ArrayList<>();
+       }
+    }
+
+   if (!batch.isEmpty()) writeBatch(batch);
+}
+
+
+private void writeBatch(List<CatstoreSnapshot> batch)
+{
+   synchronized (write_lock) {
+      // skip objects removed since they were queued
+      batch.removeIf((snap) -> removed_objects.containsKey(snap.getDataUID()));
+      if (batch.isEmpty()) return;
+      try {
+	 for_store.saveObjects(batch);
+	 written_count.addAndGet(batch.size());
+	 batch_count.incrementAndGet();
+       }
+      catch (Throwable t) {
+	 CatreLog.logE("CATSTORE","Problem writing " + batch.size() + " objects",t);
+	 error_count.incrementAndGet();
+	 // leave them to be retried unless they have been queued again
+	 for (CatstoreSnapshot snap : batch) {
+	    pending_writes.putIfAbsent(snap.getDataUID(),new PendingWrite(snap.getObject()));
+	  }
+       }
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Snapshot methods							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *      Start taking the JSON for an object.  Requests that change a universe
+ *      are run on its mailbox, so its snapshot is queued there too.
+ **/
+
+private Future<CatstoreSnapshot> requestSnapshot(CatreSavable obj0)
+{
+   CatreSavableBase obj = (CatreSavableBase) obj0;
+   if (obj instanceof CatreUniverse) {
+      Executor mbox = ((CatreUniverse) obj).getMailbox();
+      if (mbox != null) {
+	 try {
+	    return CompletableFuture.supplyAsync(() -> CatstoreSnapshot.take(obj),mbox);
+	  }
+	 catch (RejectedExecutionException e) {
+	    // mailbox pool is gone; nothing else can change the universe
+	  }
+       }
+    }
+
+   CompletableFuture<CatstoreSnapshot> rslt = new CompletableFuture<>();
+   try {
+      rslt.complete(CatstoreSnapshot.take(obj));
+    }
+   catch (Throwable t) {
+      rslt.completeExceptionally(t);
+    }
+   return rslt;
+}
+
+
+private CatstoreSnapshot getSnapshot(CatreSavable obj,Future<CatstoreSnapshot> snap,
+      long deadline,boolean force)
+{
+   try {
+      long wait = Math.max(deadline - System.currentTimeMillis(),0);
+      return snap.get(wait,TimeUnit.MILLISECONDS);
+    }
+   catch (TimeoutException e) {
+      CatreLog.logI("CATSTORE","Snapshot of " + obj.getDataUID() + " timed out");
+      if (force) {
+	 // shutting down: write what is there rather than lose it
+	 snap.cancel(false);
+	 return CatstoreSnapshot.take((CatreSavableBase) obj);
+       }
+    }
+   catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+   catch (ExecutionException e) {
+      CatreLog.logE("CATSTORE","Problem creating snapshot of " + obj.getDataUID(),e.getCause());
+      error_count.incrementAndGet();
+    }
+
+   return null;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Statistics methods							*/
+/*										*/
+/********************************************************************************/
+
+JSONObject getStatistics()
+{
+   JSONObject rslt = new JSONObject();
+   rslt.put("PENDING",pending_writes.size());
+   rslt.put("REQUESTED",request_count.get());
+   rslt.put("COALESCED",coalesced_count.get());
+   rslt.put("WRITTEN",written_count.get());
+   rslt.put("BATCHES",batch_count.get());
+   rslt.put("ERRORS",error_count.get());
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Pending write information						*/
+/*										*/
+/********************************************************************************/
+
+private static final class PendingWrite {
+
+   private CatreSavable for_object;
+   private long dirty_time;
+
+   PendingWrite(CatreSavable obj) {
+      for_object = obj;
+      dirty_time = System.currentTimeMillis();
+    }
+
+   CatreSavable getObject()			{ return for_object; }
+   long getDirtyTime()				{ return dirty_time; }
+
+}	// end of inner class PendingWrite
+
+
+
+}	// end of class CatstoreWriteBehind
+
+
+
+
+/* end of CatstoreWriteBehind.java */
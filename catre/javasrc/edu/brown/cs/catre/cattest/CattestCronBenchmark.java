@@ -0,0 +1,330 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CattestCronBenchmark.java                                       */
+/*                                                                              */
+/*      Benchmark next fire computation for trigger time specifications         */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.cattest;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.StringTokenizer;
+
+import edu.brown.cs.catre.catprog.CatprogCronSchedule;
+
+/**
+ *      Compare the field-jumping next fire computation used by trigger time
+ *      conditions with the calendar stepping loop it replaced.  The legacy
+ *      loop is kept here only as a baseline.  Run with optional arguments
+ *      -n <iterations> and -s <spec> (repeatable).
+ **/
+
+public final class CattestCronBenchmark implements CattestConstants
+{
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Main program                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+public static void main(String [] args)
+{
+   CattestCronBenchmark ccb = new CattestCronBenchmark(args);
+   
+   ccb.process();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private int             iteration_count;
+private String []       test_specs;
+
+private static final String [] DEFAULT_SPECS = {
+   "0 8 1-7 1,4,7,10 MON",              // first monday of a quarter
+   "30 6 29 2 *",                       // leap day
+   "0 0 13 * FRI",                      // friday the 13th
+   "15 2 * 3 SUN",                      // inside spring forward gap
+   "0-59/15 * * * *",                   // dense
+};
+
+private static final int WARMUP_COUNT = 2000;
+private static final long START_STEP = 7919 * 60000L;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private CattestCronBenchmark(String [] args)
+{
+   iteration_count = 20000;
+   test_specs = DEFAULT_SPECS;
+   
+   scanArgs(args);
+}
+
+
+
+private void scanArgs(String [] args)
+{
+   int nspec = 0;
+   for (int i = 0; i < args.length; ++i) {
+      if (args[i].startsWith("-n") && i+1 < args.length) {             // -n <iterations>
+         try {
+            iteration_count = Integer.parseInt(args[++i]);
+          }
+         catch (NumberFormatException e) {
+            badArgs();
+          }
+       }
+      else if (args[i].startsWith("-s") && i+1 < args.length) {        // -s <spec>
+         if (nspec == 0) test_specs = new String[args.length];
+         test_specs[nspec++] = args[++i];
+       }
+      else badArgs();
+    }
+   
+   if (nspec > 0) {
+      String [] specs = new String[nspec];
+      System.arraycopy(test_specs,0,specs,0,nspec);
+      test_specs = specs;
+    }
+}
+
+
+
+private void badArgs()
+{
+   System.err.println("CATTESTCRONBENCHMARK -n <iterations> -s <spec>");
+   System.exit(1);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Processing methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+private void process()
+{
+   long base = System.currentTimeMillis();
+   
+   for (String spec : test_specs) {
+      CatprogCronSchedule sched = new CatprogCronSchedule(spec);
+      LegacySchedule legacy = new LegacySchedule(spec);
+      
+      int mismatch = 0;
+      for (int i = 0; i < WARMUP_COUNT; ++i) {
+         long start = base + i * START_STEP;
+         long t0 = sched.nextFire(start);
+         long t1 = legacy.computeNext(start);
+         if (t0 != t1) ++mismatch;
+       }
+      
+      long sum = 0;
+      long now = System.nanoTime();
+      for (int i = 0; i < iteration_count; ++i) {
+         sum += sched.nextFire(base + i * START_STEP);
+       }
+      long tnew = System.nanoTime() - now;
+      
+      now = System.nanoTime();
+      for (int i = 0; i < iteration_count; ++i) {
+         sum += legacy.computeNext(base + i * START_STEP);
+       }
+      long told = System.nanoTime() - now;
+      
+      System.out.printf("%-24s new %8.2f us  legacy %10.2f us  speedup %7.1fx  mismatch %d/%d  (%d)%n",
+            spec,tnew / 1000.0 / iteration_count,told / 1000.0 / iteration_count,
+            ((double) told) / Math.max(tnew,1),mismatch,WARMUP_COUNT,sum & 0xff);
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Legacy calendar stepping computation                                    */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class LegacySchedule {
+
+   private BitSet minute_check;
+   private BitSet hour_check;
+   private BitSet day_check;
+   private BitSet month_check;
+   private BitSet weekday_check;
+   
+   LegacySchedule(String spec) {
+      StringTokenizer tok = new StringTokenizer(spec);
+      minute_check = decodeField(tok.nextToken(),0,59);
+      hour_check = decodeField(tok.nextToken(),0,23);
+      day_check = decodeField(tok.nextToken(),1,31);
+      month_check = decodeField(tok.nextToken(),1,12);
+      weekday_check = decodeField(tok.nextToken(),0,7);
+      if (weekday_check.get(7)) {
+         weekday_check.set(0);
+         weekday_check.clear(7);
+       }
+    }
+   
+   long computeNext(long start) {
+      Calendar c = Calendar.getInstance();
+      c.setTimeInMillis(start);
+      c.set(Calendar.SECOND,0);
+      c.set(Calendar.MILLISECOND,0);
+      c.add(Calendar.MINUTE,1);
+      
+      for ( ; ; ) {
+         if (checkMonth(c)) continue;
+         if (checkDay(c)) continue;
+         if (checkHour(c)) continue;
+         if (!checkMinute(c)) break;
+       }
+      
+      return c.getTimeInMillis();
+    }
+   
+   private boolean checkMonth(Calendar c) {
+      int mon = c.get(Calendar.MONTH) + 1;
+      if (month_check.get(mon)) return false;
+      c.add(Calendar.MONTH,1);
+      c.set(Calendar.DAY_OF_MONTH,1);
+      c.set(Calendar.HOUR_OF_DAY,0);
+      c.set(Calendar.MINUTE,0);
+      return true;
+    }
+   
+   private boolean checkDay(Calendar c) {
+      int ctr = 0;
+      while (!weekday_check.get(c.get(Calendar.DAY_OF_WEEK) - 1) ||
+            !day_check.get(c.get(Calendar.DAY_OF_MONTH))) {
+         c.add(Calendar.DAY_OF_YEAR,1);
+         c.set(Calendar.HOUR_OF_DAY,0);
+         c.set(Calendar.MINUTE,0);
+         if (++ctr > 366 * 8) break;
+       }
+      return ctr > 0;
+    }
+   
+   private boolean checkHour(Calendar c) {
+      int ctr = 0;
+      while (!hour_check.get(c.get(Calendar.HOUR_OF_DAY))) {
+         c.add(Calendar.HOUR_OF_DAY,1);
+         c.set(Calendar.MINUTE,0);
+         if (++ctr > 24) return true;
+       }
+      return ctr > 0;
+    }
+   
+   private boolean checkMinute(Calendar c) {
+      int ctr = 0;
+      while (!minute_check.get(c.get(Calendar.MINUTE))) {
+         c.add(Calendar.MINUTE,1);
+         if (++ctr > 60) return true;
+       }
+      return ctr > 0;
+    }
+   
+   private static BitSet decodeField(String what,int min,int max) {
+      BitSet rslt = new BitSet();
+      if (what.equals("*")) {
+         rslt.set(min,max+1);
+         return rslt;
+       }
+      int step = 1;
+      int idx = what.indexOf("/");
+      if (idx > 0) {
+         step = Integer.parseInt(what.substring(idx+1));
+         what = what.substring(0,idx);
+       }
+      for (String s : what.split(",")) {
+         int from;
+         int to;
+         if (s.equals("*")) {
+            from = min;
+            to = max;
+          }
+         else if (s.contains("-")) {
+            from = fieldValue(s.substring(0,s.indexOf("-")));
+            to = fieldValue(s.substring(s.indexOf("-")+1));
+          }
+         else {
+            from = fieldValue(s);
+            to = from;
+          }
+         for (int i = from; i <= to; i += step) rslt.set(i);
+       }
+      return rslt;
+    }
+   
+   private static int fieldValue(String s) {
+      switch (s.toUpperCase()) {
+         case "SUN" : return 0;
+         case "MON" : return 1;
+         case "TUE" : return 2;
+         case "WED" : return 3;
+         case "THU" : return 4;
+         case "FRI" : return 5;
+         case "SAT" : return 6;
+         default :
+            return Integer.parseInt(s);
+       }
+    }
+
+}       // end of inner class LegacySchedule
+
+
+
+}       // end of class CattestCronBenchmark
+
+
+
+
+/* end of CattestCronBenchmark.java */
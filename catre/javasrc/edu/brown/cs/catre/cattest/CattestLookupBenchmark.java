@@ -0,0 +1,301 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CattestLookupBenchmark.java                                     */
+/*                                                                              */
+/*      Benchmark device and parameter lookup                                   */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.cattest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.brown.cs.catre.catdev.CatdevDevice;
+import edu.brown.cs.catre.catre.CatreDevice;
+import edu.brown.cs.catre.catre.CatreParameter;
+import edu.brown.cs.catre.catre.CatreUniverse;
+
+/**
+ *      Time universe device lookup and device parameter lookup against the
+ *      linear scans they replaced.  The universe is built in memory on a
+ *      controller that does nothing.  Run with optional arguments
+ *      -d <devices> -p <parameters> -n <lookups>.
+ **/
+
+public final class CattestLookupBenchmark implements CattestConstants
+{
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Main program                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+public static void main(String [] args)
+{
+   CattestLookupBenchmark clb = new CattestLookupBenchmark(args);
+   
+   clb.process();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private int             device_count;
+private int             parameter_count;
+private int             lookup_count;
+private CatreUniverse   for_universe;
+private List<CatreDevice> all_devices;
+
+private static final int WARMUP_COUNT = 3;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private CattestLookupBenchmark(String [] args)
+{
+   device_count = 500;
+   parameter_count = 30;
+   lookup_count = 1000000;
+   all_devices = new ArrayList<>();
+   
+   scanArgs(args);
+}
+
+
+
+private void scanArgs(String [] args)
+{
+   for (int i = 0; i < args.length; ++i) {
+      if (args[i].startsWith("-") && i+1 < args.length) {
+         int v = 0;
+         try {
+            v = Integer.parseInt(args[i+1]);
+          }
+         catch (NumberFormatException e) {
+            badArgs();
+          }
+         if (args[i].startsWith("-d")) device_count = v;                // -d <devices>
+         else if (args[i].startsWith("-p")) parameter_count = v;        // -p <parameters>
+         else if (args[i].startsWith("-n")) lookup_count = v;           // -n <lookups>
+         else badArgs();
+         ++i;
+       }
+      else badArgs();
+    }
+}
+
+
+
+private void badArgs()
+{
+   System.err.println("CATTESTLOOKUPBENCHMARK -d <devices> -p <parameters> -n <lookups>");
+   System.exit(1);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Processing methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+private void process()
+{
+   setupUniverse();
+   
+   Random r = new Random(1);
+   int nkey = 4096;
+   String [] dkeys = new String[nkey];
+   String [] pkeys = new String[nkey];
+   CatreDevice [] pdevs = new CatreDevice[nkey];
+   for (int i = 0; i < nkey; ++i) {
+      CatreDevice cd = all_devices.get(r.nextInt(all_devices.size()));
+      switch (i % 4) {
+         case 0 :
+            dkeys[i] = cd.getDataUID();
+            break;
+         case 1 :
+            dkeys[i] = cd.getDeviceId();
+            break;
+         case 2 :
+            dkeys[i] = cd.getName().toUpperCase();
+            break;
+         default :
+            dkeys[i] = "Missing_" + i;
+            break;
+       }
+      pdevs[i] = cd;
+      int pidx = r.nextInt(parameter_count);
+      pkeys[i] = (i % 2 == 0 ? "Param_" + pidx : "Label " + pidx);
+    }
+   
+   int mismatch = 0;
+   for (int i = 0; i < nkey; ++i) {
+      if (for_universe.findDevice(dkeys[i]) != legacyFindDevice(dkeys[i])) ++mismatch;
+      if (pdevs[i].findParameter(pkeys[i]) != legacyFindParameter(pdevs[i],pkeys[i])) ++mismatch;
+    }
+   
+   long tnew = 0;
+   long told = 0;
+   long pnew = 0;
+   long pold = 0;
+   int sum = 0;
+   int legacycount = Math.max(lookup_count / 100,1);
+   for (int pass = 0; pass <= WARMUP_COUNT; ++pass) {
+      long now = System.nanoTime();
+      for (int i = 0; i < lookup_count; ++i) {
+         if (for_universe.findDevice(dkeys[i & (nkey-1)]) != null) ++sum;
+       }
+      tnew = System.nanoTime() - now;
+      
+      now = System.nanoTime();
+      for (int i = 0; i < legacycount; ++i) {
+         if (legacyFindDevice(dkeys[i & (nkey-1)]) != null) ++sum;
+       }
+      told = System.nanoTime() - now;
+      
+      now = System.nanoTime();
+      for (int i = 0; i < lookup_count; ++i) {
+         int k = i & (nkey-1);
+         if (pdevs[k].findParameter(pkeys[k]) != null) ++sum;
+       }
+      pnew = System.nanoTime() - now;
+      
+      now = System.nanoTime();
+      for (int i = 0; i < lookup_count; ++i) {
+         int k = i & (nkey-1);
+         if (legacyFindParameter(pdevs[k],pkeys[k]) != null) ++sum;
+       }
+      pold = System.nanoTime() - now;
+    }
+   
+   double dn = tnew / (double) lookup_count;
+   double dl = told / (double) legacycount;
+   double pn = pnew / (double) lookup_count;
+   double pl = pold / (double) lookup_count;
+   
+   System.out.printf("%d devices x %d parameters, mismatches %d (%d)%n",
+         device_count,parameter_count,mismatch,sum & 0xff);
+   System.out.printf("findDevice     indexed %8.1f ns  scan %10.1f ns  speedup %7.1fx%n",
+         dn,dl,dl / dn);
+   System.out.printf("findParameter  indexed %8.1f ns  scan %10.1f ns  speedup %7.1fx%n",
+         pn,pl,pl / pn);
+}
+
+
+
+private void setupUniverse()
+{
+   for_universe = CattestUtil.createLocalUniverse("LookupBenchmark");
+   
+   for (int i = 0; i < device_count; ++i) {
+      BenchDevice bd = new BenchDevice(for_universe,i,parameter_count);
+      for_universe.addDevice(bd);
+      all_devices.add(bd);
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Legacy linear lookups                                                   */
+/*                                                                              */
+/********************************************************************************/
+
+private CatreDevice legacyFindDevice(String id)
+{
+   for (CatreDevice cd : all_devices) {
+      if (cd.getDataUID().equals(id) ||
+            cd.getName().equalsIgnoreCase(id) ||
+            cd.getDeviceId().equals(id))
+         return cd;
+    }
+   return null;
+}
+
+
+private static CatreParameter legacyFindParameter(CatreDevice cd,String id)
+{
+   for (CatreParameter up : cd.getParameters()) {
+      if (up.getName().equals(id)) return up;
+      if (up.getLabel().equals(id)) return up;
+    }
+   return null;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Device with synthetic parameters                                        */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class BenchDevice extends CatdevDevice {
+
+   BenchDevice(CatreUniverse cu,int idx,int nparam) {
+      super(cu);
+      setName("Device_" + idx);
+      for (int i = 0; i < nparam; ++i) {
+         CatreParameter cp = cu.createRealParameter("Param_" + i);
+         cp.setLabel("Label " + i);
+         addParameter(cp);
+       }
+    }
+
+}       // end of inner class BenchDevice
+
+
+
+}       // end of class CattestLookupBenchmark
+
+
+
+
+/* end of CattestLookupBenchmark.java */
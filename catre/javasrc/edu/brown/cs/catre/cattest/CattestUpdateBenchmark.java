@@ -0,0 +1,338 @@
+/********************************************************************************/
+/*                                                                              */
+/*              CattestUpdateBenchmark.java                                     */
+/*                                                                              */
+/*      Benchmark concurrent universe update bracketing                         */
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+package edu.brown.cs.catre.cattest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.brown.cs.catre.catre.CatreCondition;
+import edu.brown.cs.catre.catre.CatrePropertySet;
+import edu.brown.cs.catre.catre.CatreUniverse;
+
+/**
+ *      Time many event threads bracketing updates (as device and condition
+ *      events do) and adding triggers on one universe while a program
+ *      updater waits for quiet points.  The lock and counter it replaced are
+ *      kept here as a baseline.  Run with optional arguments -t <threads>
+ *      and -n <events per thread>.
+ **/
+
+public final class CattestUpdateBenchmark implements CattestConstants
+{
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Main program                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+public static void main(String [] args)
+{
+   CattestUpdateBenchmark cub = new CattestUpdateBenchmark(args);
+   
+   cub.process();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private int             thread_count;
+private int             event_count;
+private CatreUniverse   for_universe;
+private CatreCondition [] trigger_conditions;
+
+private static final int TRIGGER_EVERY = 8;
+private static final int CONDITION_COUNT = 64;
+private static final int WARMUP_COUNT = 2;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private CattestUpdateBenchmark(String [] args)
+{
+   thread_count = 32;
+   event_count = 200000;
+   
+   scanArgs(args);
+}
+
+
+
+private void scanArgs(String [] args)
+{
+   for (int i = 0; i < args.length; ++i) {
+      if (args[i].startsWith("-") && i+1 < args.length) {
+         int v = 0;
+         try {
+            v = Integer.parseInt(args[i+1]);
+          }
+         catch (NumberFormatException e) {
+            badArgs();
+          }
+         if (args[i].startsWith("-t")) thread_count = v;                // -t <threads>
+         else if (args[i].startsWith("-n")) event_count = v;            // -n <events>
+         else badArgs();
+         ++i;
+       }
+      else badArgs();
+    }
+}
+
+
+
+private void badArgs()
+{
+   System.err.println("CATTESTUPDATEBENCHMARK -t <threads> -n <events per thread>");
+   System.exit(1);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Processing methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+private void process()
+{
+   for_universe = CattestUtil.createLocalUniverse("UpdateBenchmark");
+   trigger_conditions = new CatreCondition[CONDITION_COUNT];
+   for (int i = 0; i < CONDITION_COUNT; ++i) {
+      trigger_conditions[i] = CattestUtil.nullObject(CatreCondition.class);
+    }
+   
+   UpdateTarget striped = new UniverseTarget(for_universe);
+   UpdateTarget legacy = new LegacyTarget();
+   
+   double tnew = 0;
+   double told = 0;
+   for (int i = 0; i <= WARMUP_COUNT; ++i) {
+      tnew = runEvents(striped);
+      told = runEvents(legacy);
+    }
+   
+   long total = ((long) thread_count) * event_count;
+   System.out.printf("%d threads x %d events, trigger every %d%n",
+         thread_count,event_count,TRIGGER_EVERY);
+   System.out.printf("striped %10.0f events/s   locked %10.0f events/s   speedup %5.1fx%n",
+         total / tnew,total / told,told / tnew);
+}
+
+
+
+private double runEvents(UpdateTarget tgt)
+{
+   CountDownLatch start = new CountDownLatch(1);
+   CountDownLatch done = new CountDownLatch(thread_count);
+   AtomicBoolean running = new AtomicBoolean(true);
+   
+   Thread drain = new Thread(() -> {
+      while (running.get()) {
+         tgt.drain();
+         try {
+            Thread.sleep(1);
+          }
+         catch (InterruptedException e) { }
+       }
+    });
+   drain.start();
+   
+   for (int i = 0; i < thread_count; ++i) {
+      int tid = i;
+      CatrePropertySet ps = for_universe.createPropertySet();
+      Thread t = new Thread(() -> {
+         try {
+            start.await();
+          }
+         catch (InterruptedException e) { }
+         for (int j = 0; j < event_count; ++j) {
+            tgt.begin();
+            try {
+               if (j % TRIGGER_EVERY == 0) {
+                  tgt.trigger(trigger_conditions[(tid + j) % CONDITION_COUNT],ps);
+                }
+             }
+            finally {
+               tgt.end();
+             }
+          }
+         done.countDown();
+       });
+      t.start();
+    }
+   
+   long now = System.nanoTime();
+   start.countDown();
+   try {
+      done.await();
+    }
+   catch (InterruptedException e) { }
+   double secs = (System.nanoTime() - now) / 1.0e9;
+   
+   running.set(false);
+   try {
+      drain.join();
+    }
+   catch (InterruptedException e) { }
+   
+   return secs;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Targets                                                                 */
+/*                                                                              */
+/********************************************************************************/
+
+private interface UpdateTarget {
+   void begin();
+   void end();
+   void trigger(CatreCondition c,CatrePropertySet ps);
+   void drain();
+}
+
+
+private static final class UniverseTarget implements UpdateTarget {
+
+   private CatreUniverse for_universe;
+   
+   UniverseTarget(CatreUniverse cu) {
+      for_universe = cu;
+    }
+   
+   @Override public void begin()                { for_universe.startUpdate(); }
+   @Override public void end()                  { for_universe.endUpdate(); }
+   
+   @Override public void trigger(CatreCondition c,CatrePropertySet ps) {
+      for_universe.addTrigger(c,ps);
+    }
+   
+   @Override public void drain() {
+      if (!for_universe.isUpdating()) for_universe.waitForUpdate();
+    }
+
+}       // end of inner class UniverseTarget
+
+
+
+private static final class LegacyTarget implements UpdateTarget {
+
+   private ReentrantLock update_lock;
+   private Condition update_condition;
+   private int update_counter;
+   private Map<CatreCondition,CatrePropertySet> trigger_context;
+   
+   LegacyTarget() {
+      update_lock = new ReentrantLock();
+      update_condition = update_lock.newCondition();
+      update_counter = 0;
+      trigger_context = null;
+    }
+   
+   @Override public void begin() {
+      update_lock.lock();
+      try {
+         ++update_counter;
+       }
+      finally {
+         update_lock.unlock();
+       }
+    }
+   
+   @Override public void end() {
+      update_lock.lock();
+      try {
+         --update_counter;
+         if (update_counter == 0) update_condition.signalAll();
+       }
+      finally {
+         update_lock.unlock();
+       }
+    }
+   
+   @Override public void trigger(CatreCondition c,CatrePropertySet ps) {
+      update_lock.lock();
+      try {
+         if (trigger_context == null) trigger_context = new ConcurrentHashMap<>();
+         trigger_context.put(c,ps);
+       }
+      finally {
+         update_lock.unlock();
+       }
+    }
+   
+   @Override public void drain() {
+      update_lock.lock();
+      try {
+         if (update_counter > 0) return;
+         trigger_context = null;
+       }
+      finally {
+         update_lock.unlock();
+       }
+    }
+
+}       // end of inner class LegacyTarget
+
+
+
+}       // end of class CattestUpdateBenchmark
+
+
+
+
+/* end of CattestUpdateBenchmark.java */
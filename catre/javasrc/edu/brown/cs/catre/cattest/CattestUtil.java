@@ -37,7 +37,11 @@
 package edu.brown.cs.catre.cattest;
 
 import edu.brown.cs.catre.catmain.CatmainMain;
+import edu.brown.cs.catre.catmodel.CatmodelFactory;
+import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreUniverse;
+import edu.brown.cs.catre.catre.CatreUser;
 import edu.brown.cs.ivy.file.IvyFile;
 
 import org.json.JSONObject;
@@ -54,6 +58,9 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.io.OutputStream;
 import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 
 class CattestUtil implements CattestConstants
 {
@@ -262,6 +269,68 @@ private static class CatreRunner extends Thread {
 
 
 
+/********************************************************************************/
+/*                                                                              */
+/*      In-memory universe for benchmarks                                       */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Create a universe on a controller that does nothing (no database,
+ *      bridges or web server) for timing model code in process.
+ **/
+
+static CatreUniverse createLocalUniverse(String name)
+{
+   CatreController cc = nullObject(CatreController.class);
+   CatmodelFactory cf = new CatmodelFactory(cc);
+   
+   return cf.createUniverse(cc,name,nullObject(CatreUser.class));
+}
+
+
+/**
+ *      Create an object whose methods do nothing.  Methods returning an
+ *      interface return another such object (or this one if it is of that
+ *      type and the method takes no arguments).
+ **/
+
+static <T> T nullObject(Class<T> c)
+{
+   Object o = Proxy.newProxyInstance(c.getClassLoader(),new Class<?> [] { c },
+         new NullHandler());
+   return c.cast(o);
+}
+
+
+private static final class NullHandler implements InvocationHandler {
+
+   @Override public Object invoke(Object proxy,Method m,Object [] args) {
+      Class<?> rt = m.getReturnType();
+      switch (m.getName()) {
+         case "hashCode" :
+            return System.identityHashCode(proxy);
+         case "equals" :
+            return proxy == args[0];
+         case "toString" :
+            return "NULL_" + rt.getSimpleName();
+         default :
+            break;
+       }
+      if (rt == Boolean.TYPE) return Boolean.FALSE;
+      if (rt == Integer.TYPE) return 0;
+      if (rt == Long.TYPE) return 0L;
+      if (rt == Double.TYPE) return 0.0;
+      if (rt.isInstance(proxy) && args == null) return proxy;
+      if (rt.isInterface()) return nullObject(rt);
+      return null;
+    }
+
+}       // end of inner class NullHandler
+
+
+
+
 /********************************************************************************/
 /*                                                                              */
 /*      Random number generator                                                 */
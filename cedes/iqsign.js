@@ -176,7 +176,9 @@ async function getDevices(user)
 	       PARAMETERS :  [
 		  { NAME: "savedValues", TYPE: "STRINGLIST", ISSENSOR: false, VOLATILE: true,
                      SORT: true,
-                     VALUES: names }
+                     VALUES: names },
+		  { NAME: "currentSign", TYPE: "STRING", ISSENSOR: false },
+		  { NAME: "currentText", TYPE: "STRING", ISSENSOR: false }
 	       ],
 	       TRANSITIONS: [
 		  { NAME : "setSign",
@@ -190,7 +192,8 @@ async function getDevices(user)
 			 },
 			 { NAME: "otherText", LABEL: "Other Text", TYPE: "STRING" }
 		     ]
-		   }
+		   },
+		     EFFECTS : { currentSign: "setTo", currentText: "otherText" }
 		   }
 	       ]
 	  };
@@ -251,13 +254,17 @@ async function handleCommand(bid,uid,devid,command,values)
       if (dev.UID == devid) {
 	  switch (command) {
 	     case "setSign" :
-		await sendToIQsign("POST","sign/setto",{
+		let resp = await sendToIQsign("POST","sign/setto",{
 		   session: user.session,
 		   signid: dev.ID,
 		   value: values.setTo,
 		   other: values.otherText,
 		   sets: sets,
 		 });
+		if (resp.status == 'OK') {
+		   await sendParameter(user,dev,"currentSign",values.setTo);
+		   await sendParameter(user,dev,"currentText",values.otherText);
+		 }
 		break;
 	   }
 	  break;
@@ -266,6 +273,21 @@ async function handleCommand(bid,uid,devid,command,values)
 }
 
 
+async function sendParameter(user,dev,param,value)
+{
+   if (value == null) return;
+   let event = {
+	 TYPE: "PARAMETER",
+	 DEVICE: dev.UID,
+	 PARAMETER: param,
+	 VALUE: value
+    }
+   await catre.sendToCatre({ command: "EVENT",
+      bid: user.bridgeid,
+      event : event });
+}
+
+
 async function handleParameters(bid,uid,devid,params)
 {
    // not needed
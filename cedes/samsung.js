@@ -731,9 +731,31 @@ class SamsungDevice {
       cattrans.DEFAULTS = { PARAMETERS: params };
       cattrans.COMPONENTID = cmd.componentid;
       cattrans.CAPABILITYID = cmd.capabilityid;
+      let effects = this.findEffects(cmdname, cmd, params);
+      if (effects != null) cattrans.EFFECTS = effects;
       return cattrans;
    }
 
+   // a single-argument command that is the declared setter of an attribute
+   // we expose as a parameter just sets that parameter to its argument
+   findEffects(cmdname, cmd, params) {
+      if (params.length != 1) return null;
+      let cap = this.capability_map[cmd.capabilityid];
+      if (cap == null) return null;
+      for (let attrname in cap.attributes) {
+         let attr = cap.attributes[attrname];
+         if (attr.setter != cmdname) continue;
+         for (let p of this.cat_dev.PARAMETERS) {
+            if (p.NAME == attrname) {
+               let effects = {};
+               effects[attrname] = params[0].NAME;
+               return effects;
+            }
+         }
+      }
+      return null;
+   }
+
    processCommandParameter(arg, cmd) {
       let param = { NAME: arg.name };
       let schema = arg.schema;